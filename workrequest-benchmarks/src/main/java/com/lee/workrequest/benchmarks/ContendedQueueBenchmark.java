@@ -0,0 +1,121 @@
+package com.lee.workrequest.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Producers, consumers and readers sharing one {@link WorkRequestQueue}. Each group is scored per thread role, so the
+ * cost of an enqueue can be read while dequeues and position reads contend for the same locks
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class ContendedQueueBenchmark {
+
+    /** Id space of each producer thread, a multiple of 15 so an id keeps the class it would have had at zero */
+    private static final long PRODUCER_ID_SPACE = 15L << 40;
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    @Param({"NATURAL", "EVEN"})
+    public WorkRequestMix mix;
+
+    private WorkRequestQueue queue;
+    private long[] queuedIds;
+    private final AtomicInteger producers = new AtomicInteger();
+
+    /**
+     * Ids of one producer thread, offset so producers never share an id
+     */
+    @State(Scope.Thread)
+    public static class Producer {
+        WorkRequestMix.Ids ids;
+        long base;
+
+        @Setup(Level.Trial)
+        public void start(final ContendedQueueBenchmark benchmark) {
+            final int producer = benchmark.producers.incrementAndGet();
+            ids = benchmark.mix.ids(producer);
+            base = producer * PRODUCER_ID_SPACE;
+        }
+    }
+
+    /**
+     * Position of the queued id each reader looks up next
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+        int nextLookup;
+    }
+
+    @Setup(Level.Trial)
+    public void fill() {
+        queue = new WorkRequestQueue();
+        queuedIds = QueueFixture.fill(queue, size, mix.ids(42), LocalDateTime.now());
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(2)
+    public WorkRequest produce(final Producer producer) {
+        return enqueue(producer);
+    }
+
+    @Benchmark
+    @Group("producerConsumer")
+    @GroupThreads(2)
+    public WorkRequest consume() {
+        return queue.dequeueTop();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public WorkRequest writeProduce(final Producer producer) {
+        return enqueue(producer);
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public WorkRequest writeConsume() {
+        return queue.dequeueTop();
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(2)
+    public int read(final Reader reader) {
+        reader.nextLookup = (reader.nextLookup + 7919) % queuedIds.length;
+        // Ids already consumed are found missing, which is still a full lookup
+        return queue.getPosition(queuedIds[reader.nextLookup]);
+    }
+
+    private WorkRequest enqueue(final Producer producer) {
+        final long id = producer.base + producer.ids.next();
+        return queue.enqueue(WorkRequestMix.typeOf(id).newWorkRequest(id, LocalDateTime.now()));
+    }
+}
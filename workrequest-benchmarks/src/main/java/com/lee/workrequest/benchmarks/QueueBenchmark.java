@@ -0,0 +1,99 @@
+package com.lee.workrequest.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.queue.LongList;
+import com.lee.workrequest.queue.WaitTimePercentiles;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded cost of the {@link WorkRequestQueue} operations against a queue filled to each size and class mix.
+ * Changes are measured in pairs that leave the queue as it was, so its size holds through the run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+public class QueueBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"NATURAL", "NORMAL_ONLY", "EVEN"})
+    public WorkRequestMix mix;
+
+    private WorkRequestQueue queue;
+    private WorkRequestMix.Ids ids;
+    private long[] queuedIds;
+    private int nextLookup;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        queue = new WorkRequestQueue();
+        ids = mix.ids(42);
+        queuedIds = QueueFixture.fill(queue, size, ids, LocalDateTime.now());
+    }
+
+    @Benchmark
+    public LongList getSortedIds() {
+        return queue.getSortedIds();
+    }
+
+    @Benchmark
+    public int getPosition() {
+        return queue.getPosition(nextQueuedId());
+    }
+
+    @Benchmark
+    public long getAverageWaitTime() {
+        return queue.getAverageWaitTime();
+    }
+
+    @Benchmark
+    public WaitTimePercentiles getCurrentWaitTimes() {
+        return queue.getCurrentWaitTimes();
+    }
+
+    /**
+     * Enqueue a new id at the back of its class then remove it again by id
+     */
+    @Benchmark
+    public WorkRequest enqueueThenDequeue() {
+        final long id = ids.next();
+        queue.enqueue(WorkRequestMix.typeOf(id).newWorkRequest(id, LocalDateTime.now()));
+        return queue.dequeue(id);
+    }
+
+    /**
+     * Remove the top then put it back as it was, so the next call removes the same one
+     */
+    @Benchmark
+    public WorkRequest dequeueTopThenRequeue() {
+        final WorkRequest top = queue.dequeueTop();
+        queue.enqueue(top);
+        return top;
+    }
+
+    private long nextQueuedId() {
+        // Stride through the ids so successive lookups land far apart in the index
+        nextLookup = (nextLookup + 7919) % queuedIds.length;
+        return queuedIds[nextLookup];
+    }
+}
@@ -0,0 +1,41 @@
+package com.lee.workrequest.benchmarks;
+
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fills a {@link WorkRequestQueue} to a size before measuring
+ */
+final class QueueFixture {
+
+    /** Queued work requests are spread over this much time before now */
+    private static final long SPAN_MILLIS = 8 * 60 * 60 * 1000;
+    private static final int BATCH_SIZE = 100000;
+
+    private QueueFixture() {
+    }
+
+    /**
+     * Enqueue work requests taken from the ids, enqueued times evenly spread over the last few hours
+     * @return ids enqueued, in the order taken
+     */
+    static long[] fill(final WorkRequestQueue queue, final int size, final WorkRequestMix.Ids ids,
+            final LocalDateTime now) {
+        final long stepMillis = Math.max(1, SPAN_MILLIS / Math.max(size, 1));
+        final long[] queued = new long[size];
+        for (int first = 0; first < size; first += BATCH_SIZE) {
+            final List<WorkRequest> batch = new ArrayList<>(Math.min(BATCH_SIZE, size - first));
+            for (int i = first; i < Math.min(first + BATCH_SIZE, size); i++) {
+                queued[i] = ids.next();
+                final LocalDateTime enqueuedTime = now.minusNanos((size - i) * stepMillis * 1000000);
+                batch.add(WorkRequestMix.typeOf(queued[i]).newWorkRequest(queued[i], enqueuedTime));
+            }
+            queue.enqueueAll(batch);
+        }
+        return queued;
+    }
+}
@@ -0,0 +1,65 @@
+package com.lee.workrequest.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestFactory;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating a {@link WorkRequest} from an id, with and without reading the clock
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkRequestFactoryBenchmark {
+
+    private static final int ID_COUNT = 4096;
+
+    @Param({"NATURAL", "NORMAL_ONLY", "EVEN"})
+    public WorkRequestMix mix;
+
+    private final WorkRequestFactory factory = new WorkRequestFactory();
+    private final LocalDateTime enqueuedTime = LocalDateTime.now();
+    private final long[] ids = new long[ID_COUNT];
+    private int next;
+
+    @Setup(Level.Trial)
+    public void drawIds() {
+        final WorkRequestMix.Ids source = mix.ids(42);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = source.next();
+        }
+    }
+
+    @Benchmark
+    public WorkRequest getWorkRequest() {
+        return factory.getWorkRequest(nextId());
+    }
+
+    @Benchmark
+    public WorkRequest getWorkRequestAtTime() {
+        return factory.getWorkRequest(nextId(), enqueuedTime);
+    }
+
+    private long nextId() {
+        next = (next + 1) & ID_COUNT - 1;
+        return ids[next];
+    }
+}
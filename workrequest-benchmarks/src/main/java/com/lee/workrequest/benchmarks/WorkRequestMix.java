@@ -0,0 +1,87 @@
+package com.lee.workrequest.benchmarks;
+
+import com.lee.workrequest.model.WorkRequestFactory;
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.util.Random;
+
+/**
+ * Share of ids falling in each class. {@link WorkRequestFactory} decides the class of a work request by whether its id
+ * divides by 3, 5 or 15, so a mix is made by drawing each id from the ids of a class picked at random
+ */
+public enum WorkRequestMix {
+    /** Shares of consecutive ids, 8/15 normal, 4/15 priority, 2/15 VIP and 1/15 management override */
+    NATURAL(8, 4, 2, 1),
+    /** No id divides by 3 or 5 */
+    NORMAL_ONLY(1, 0, 0, 0),
+    /** Each class equally */
+    EVEN(1, 1, 1, 1);
+
+    private static final WorkRequestType[] TYPES = {
+        WorkRequestType.NORMAL, WorkRequestType.PRIORITY, WorkRequestType.VIP, WorkRequestType.MANAGEMENT_OVERRIDE };
+
+    /** Weight of each of {@link #TYPES} */
+    private final int[] weights;
+
+    WorkRequestMix(final int normal, final int priority, final int vip, final int managementOverride) {
+        weights = new int[] {normal, priority, vip, managementOverride};
+    }
+
+    /**
+     * @param seed for the class draws, the same seed gives the same ids
+     * @return new source of unique ids in this mix
+     */
+    public Ids ids(final long seed) {
+        return new Ids(weights, seed);
+    }
+
+    /**
+     * @return class {@link WorkRequestFactory} gives the id
+     */
+    public static WorkRequestType typeOf(final long id) {
+        if(id % 15 == 0) {
+            return WorkRequestType.MANAGEMENT_OVERRIDE;
+        } else if(id % 5 == 0) {
+            return WorkRequestType.VIP;
+        } else if(id % 3 == 0) {
+            return WorkRequestType.PRIORITY;
+        }
+        return WorkRequestType.NORMAL;
+    }
+
+    /**
+     * Unique ids, each class walking up its own ids. Not thread safe
+     */
+    public static final class Ids {
+        private final int[] weights;
+        private final int totalWeight;
+        private final Random random;
+        /** Last id handed out of each class */
+        private final long[] last = new long[TYPES.length];
+
+        private Ids(final int[] weights, final long seed) {
+            this.weights = weights;
+            int total = 0;
+            for (final int weight : weights) {
+                total += weight;
+            }
+            totalWeight = total;
+            random = new Random(seed);
+        }
+
+        public long next() {
+            int draw = random.nextInt(totalWeight);
+            int type = 0;
+            while (draw >= weights[type]) {
+                draw -= weights[type++];
+            }
+
+            long id = last[type];
+            do {
+                id++;
+            } while (typeOf(id) != TYPES[type]);
+            last[type] = id;
+            return id;
+        }
+    }
+}
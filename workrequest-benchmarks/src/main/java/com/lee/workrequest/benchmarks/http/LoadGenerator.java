@@ -0,0 +1,311 @@
+package com.lee.workrequest.benchmarks.http;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lee.workrequest.Application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End to end load test of the work request api, through Tomcat, the controllers and Jackson. Boots the application on
+ * a free local port unless given the url of one already running, enqueues a starting set of ids, then sends a weighted
+ * mix of requests for a warm up and a measured run.
+ * <p>
+ * Requests are sent open loop: request n is due at n / rate seconds after the start whatever happened to the ones
+ * before it, and its latency is measured from when it was due. A server that stalls therefore shows the stall in the
+ * latency of every request that should have been sent meanwhile, rather than the load quietly waiting for it
+ * (coordinated omission)
+ * <p>
+ * Run with: java -cp benchmarks.jar com.lee.workrequest.benchmarks.http.LoadGenerator --rate=2000 --duration=60
+ */
+public final class LoadGenerator {
+
+    private static final String CONTEXT_PATH = "/workrequestsapi";
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    /**
+     * Logging off on the measured path unless the application arguments set it, the console would otherwise dominate.
+     * Not Found is logged with a stack trace and failures are counted by status anyway
+     */
+    private static final String[] QUIET_LOGGING = {
+        "--logging.level.com.lee.workrequest=OFF", "--logging.level.org.springframework=WARN" };
+
+    private final LoadOptions options;
+    private final String base;
+    /** Operation ordinals, each repeated by its weight, drawn from at random */
+    private final Operation[] draws;
+    /** Next id to enqueue, ids below it have been enqueued and some since removed */
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private LoadGenerator(final LoadOptions options, final String base) {
+        this.options = options;
+        this.base = base;
+        final List<Operation> weighted = new ArrayList<>();
+        for (final Map.Entry<Operation, Integer> share : options.mix.entrySet()) {
+            for (int i = 0; i < share.getValue(); i++) {
+                weighted.add(share.getKey());
+            }
+        }
+        if(weighted.isEmpty()) {
+            throw new IllegalArgumentException("mix has no weight");
+        }
+        draws = weighted.toArray(new Operation[0]);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LoadOptions options = LoadOptions.parse(args);
+        // Otherwise the JDK only keeps 5 idle connections per host and the rest reconnect every request
+        System.setProperty("http.maxConnections", Integer.toString(options.connections));
+
+        ConfigurableApplicationContext application = null;
+        String base = options.url;
+        if(base == null) {
+            application = boot(options.applicationArgs);
+            final int port = ((EmbeddedWebApplicationContext) application).getEmbeddedServletContainer().getPort();
+            base = "http://localhost:" + port + CONTEXT_PATH + "/workrequests";
+        }
+
+        try {
+            final LoadGenerator generator = new LoadGenerator(options, base);
+            System.out.printf("Enqueuing %d ids at %s%n", options.prefill, base);
+            generator.prefill();
+            if(options.warmupSeconds > 0) {
+                System.out.printf("Warming up for %d s%n", options.warmupSeconds);
+                generator.run(options.warmupSeconds);
+            }
+            System.out.printf("Measuring for %d s at %d requests/s%n", options.durationSeconds, options.rate);
+            final Run run = generator.run(options.durationSeconds);
+
+            System.out.println(run.toText(options));
+            if(options.json != null) {
+                new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(options.json.toFile(),
+                    run.toJson(options));
+                System.out.println("Results written to " + options.json);
+            }
+        } finally {
+            if(application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext boot(final List<String> applicationArgs) {
+        final List<String> args = new ArrayList<>();
+        args.add("--server.port=0");
+        for (final String quiet : QUIET_LOGGING) {
+            final String name = quiet.substring(0, quiet.indexOf('=') + 1);
+            if(applicationArgs.stream().noneMatch(arg -> arg.startsWith(name))) {
+                args.add(quiet);
+            }
+        }
+        args.addAll(applicationArgs);
+        return SpringApplication.run(Application.class, args.toArray(new String[0]));
+    }
+
+    /**
+     * Enqueue the starting ids as fast as the connections allow, not measured
+     */
+    private void prefill() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(options.connections);
+        try {
+            final List<Future<?>> sent = new ArrayList<>();
+            for (int thread = 0; thread < options.connections; thread++) {
+                sent.add(executor.submit(() -> {
+                    long id;
+                    while ((id = nextId.getAndIncrement()) <= options.prefill) {
+                        send(Operation.ENQUEUE, id);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> result : sent) {
+                result.get();
+            }
+            // Threads overshoot by one each, those ids were never enqueued
+            nextId.set(options.prefill + 1L);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Run run(final int seconds) throws Exception {
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        final long requests = (long) options.rate * seconds;
+        final AtomicLong nextRequest = new AtomicLong();
+        final long start = System.nanoTime();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(options.connections);
+        final List<Future<OperationResults[]>> threads = new ArrayList<>();
+        for (int thread = 0; thread < options.connections; thread++) {
+            threads.add(executor.submit(() -> {
+                final OperationResults[] results = newResults();
+                long request;
+                while ((request = nextRequest.getAndIncrement()) < requests) {
+                    final long due = start + request * intervalNanos;
+                    for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    final Operation operation = draws[ThreadLocalRandom.current().nextInt(draws.length)];
+                    final int status = send(operation, idFor(operation));
+                    results[operation.ordinal()].record(System.nanoTime() - due, status);
+                }
+                return results;
+            }));
+        }
+
+        final OperationResults[] total = newResults();
+        for (final Future<OperationResults[]> thread : threads) {
+            final OperationResults[] results = thread.get();
+            for (int i = 0; i < total.length; i++) {
+                total[i].add(results[i]);
+            }
+        }
+        executor.shutdown();
+        return new Run(total, System.nanoTime() - start);
+    }
+
+    private long idFor(final Operation operation) {
+        if(operation == Operation.ENQUEUE) {
+            return nextId.getAndIncrement();
+        }
+        // Any id enqueued so far, those already removed are answered Not Found
+        return ThreadLocalRandom.current().nextLong(1, Math.max(2, nextId.get()));
+    }
+
+    /**
+     * @return response status or 0 if the request failed without one
+     */
+    private int send(final Operation operation, final long id) {
+        try {
+            final HttpURLConnection connection = (HttpURLConnection) new URL(operation.url(base, id)).openConnection();
+            connection.setRequestMethod(operation.getMethod());
+            if(operation == Operation.ENQUEUE) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(0);
+                connection.getOutputStream().close();
+            }
+            final int status = connection.getResponseCode();
+            // Read to the end so the connection goes back to the pool
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            return status;
+        } catch (final IOException e) {
+            return 0;
+        }
+    }
+
+    private static void drain(final InputStream body) throws IOException {
+        if(body == null) {
+            return;
+        }
+        try (final InputStream in = body) {
+            final byte[] buffer = new byte[8192];
+            while (in.read(buffer) != -1) {
+                // Discard
+            }
+        }
+    }
+
+    private static OperationResults[] newResults() {
+        final OperationResults[] results = new OperationResults[OPERATIONS.length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new OperationResults();
+        }
+        return results;
+    }
+
+    /**
+     * Results of one measured run
+     */
+    private static final class Run {
+        private final OperationResults[] results;
+        private final long elapsedNanos;
+
+        Run(final OperationResults[] results, final long elapsedNanos) {
+            this.results = results;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double getElapsedSeconds() {
+            return elapsedNanos / 1e9;
+        }
+
+        OperationResults getTotal() {
+            final OperationResults total = new OperationResults();
+            for (final OperationResults operation : results) {
+                total.add(operation);
+            }
+            return total;
+        }
+
+        String toText(final LoadOptions options) {
+            final StringBuilder text = new StringBuilder();
+            text.append(String.format("%nTarget %d requests/s for %d s with %d connections, sent %.1f requests/s over %.2f s%n%n",
+                options.rate, options.durationSeconds, options.connections, getTotal().getCount() / getElapsedSeconds(),
+                getElapsedSeconds()));
+            text.append(String.format("%-12s %9s %10s %9s %9s %9s %9s  %s%n", "Operation", "Count", "Rate/s",
+                "p50 ms", "p99 ms", "p99.9 ms", "Max ms", "Statuses"));
+            for (final Operation operation : OPERATIONS) {
+                appendRow(text, operation.name(), results[operation.ordinal()]);
+            }
+            appendRow(text, "ALL", getTotal());
+            return text.toString();
+        }
+
+        private void appendRow(final StringBuilder text, final String name, final OperationResults row) {
+            if(row.getCount() == 0) {
+                return;
+            }
+            text.append(String.format("%-12s %9d %10.1f %9.3f %9.3f %9.3f %9.3f  %s%n", name, row.getCount(),
+                row.getCount() / getElapsedSeconds(), row.getLatencyMillis(50), row.getLatencyMillis(99),
+                row.getLatencyMillis(99.9), row.getMaxLatencyMillis(), row.getStatuses()));
+        }
+
+        Map<String, Object> toJson(final LoadOptions options) {
+            final Map<String, Object> json = new LinkedHashMap<>();
+            json.put("targetRate", options.rate);
+            json.put("durationSeconds", options.durationSeconds);
+            json.put("connections", options.connections);
+            json.put("elapsedSeconds", getElapsedSeconds());
+            final Map<String, Object> operations = new LinkedHashMap<>();
+            for (final Operation operation : OPERATIONS) {
+                if(results[operation.ordinal()].getCount() > 0) {
+                    operations.put(operation.name(), toJson(results[operation.ordinal()]));
+                }
+            }
+            json.put("operations", operations);
+            json.put("total", toJson(getTotal()));
+            return json;
+        }
+
+        private Map<String, Object> toJson(final OperationResults row) {
+            final Map<String, Object> json = new LinkedHashMap<>();
+            json.put("count", row.getCount());
+            json.put("ratePerSecond", row.getCount() / getElapsedSeconds());
+            final Map<String, Double> latency = new LinkedHashMap<>();
+            latency.put("p50", row.getLatencyMillis(50));
+            latency.put("p99", row.getLatencyMillis(99));
+            latency.put("p99.9", row.getLatencyMillis(99.9));
+            latency.put("max", row.getMaxLatencyMillis());
+            json.put("latencyMillis", latency);
+            json.put("statuses", row.getStatuses());
+            return json;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.lee.workrequest.benchmarks.http;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a load run read from --name=value arguments. Arguments it does not know are passed on to the
+ * application it boots
+ */
+final class LoadOptions {
+
+    /** Requests per second sent across all operations, to a fixed schedule */
+    int rate = 1000;
+    int durationSeconds = 30;
+    /** Run before the measured one and discarded, lets the server warm up */
+    int warmupSeconds = 10;
+    /** Requests in flight at most, each thread keeps one connection */
+    int connections = 32;
+    /** Ids enqueued before the warm up */
+    int prefill = 10000;
+    /** Relative weight of each operation */
+    final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+    /** Work requests resource of a server already running, null to boot one */
+    String url;
+    /** File to write the results to as JSON, null for text only */
+    Path json;
+    final List<String> applicationArgs = new ArrayList<>();
+
+    private LoadOptions() {
+        mix.put(Operation.ENQUEUE, 30);
+        mix.put(Operation.GET, 20);
+        mix.put(Operation.POSITION, 20);
+        mix.put(Operation.LIST, 5);
+        mix.put(Operation.DEQUEUE_TOP, 25);
+    }
+
+    /**
+     * @throws IllegalArgumentException if an option has a bad value
+     */
+    static LoadOptions parse(final String[] args) {
+        final LoadOptions options = new LoadOptions();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            final String name = arg.startsWith("--") && equals > 2 ? arg.substring(2, equals) : "";
+            final String value = equals == -1 ? "" : arg.substring(equals + 1);
+            switch (name) {
+            case "rate":
+                options.rate = positive(name, value);
+                break;
+            case "duration":
+                options.durationSeconds = positive(name, value);
+                break;
+            case "warmup":
+                options.warmupSeconds = Integer.parseInt(value);
+                break;
+            case "connections":
+                options.connections = positive(name, value);
+                break;
+            case "prefill":
+                options.prefill = Integer.parseInt(value);
+                break;
+            case "mix":
+                options.mix.clear();
+                for (final String share : value.split(",")) {
+                    final String[] parts = share.split(":");
+                    options.mix.put(Operation.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+                }
+                break;
+            case "url":
+                options.url = value;
+                break;
+            case "json":
+                options.json = Paths.get(value);
+                break;
+            default:
+                options.applicationArgs.add(arg);
+            }
+        }
+        return options;
+    }
+
+    private static int positive(final String name, final String value) {
+        final int parsed = Integer.parseInt(value);
+        if(parsed <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return parsed;
+    }
+}
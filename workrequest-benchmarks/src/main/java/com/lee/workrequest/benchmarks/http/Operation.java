@@ -0,0 +1,49 @@
+package com.lee.workrequest.benchmarks.http;
+
+/**
+ * Kinds of request the load generator sends, each to one endpoint of the work request api
+ */
+public enum Operation {
+    /** Submit a new id */
+    ENQUEUE("POST"),
+    /** Read one work request */
+    GET("GET"),
+    /** Read the position of one work request */
+    POSITION("GET"),
+    /** Read a page of ids from the top of the queue */
+    LIST("GET"),
+    /** Remove the top of the queue */
+    DEQUEUE_TOP("DELETE");
+
+    /** Ids a list request reads */
+    static final int LIST_LIMIT = 100;
+
+    private final String method;
+
+    Operation(final String method) {
+        this.method = method;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @param base url of the work requests resource
+     * @param id requester id, ignored by operations that do not take one
+     * @return url of the request
+     */
+    public String url(final String base, final long id) {
+        switch (this) {
+        case ENQUEUE:
+        case GET:
+            return base + "/" + id;
+        case POSITION:
+            return base + "/" + id + "?operation=POSITION";
+        case LIST:
+            return base + "?operation=IDS&limit=" + LIST_LIMIT;
+        default:
+            return base + "?operation=TOP";
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.lee.workrequest.benchmarks.http;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencies and response statuses of one {@link Operation}. Each load thread keeps its own and they are added together
+ * once the run ends, so recording takes no lock
+ */
+class OperationResults {
+
+    /** Highest latency tracked, longer ones are recorded as this */
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Histogram latencies = new Histogram(MAX_LATENCY_NANOS, 3);
+    /** Responses by status class, 1xx to 5xx at index 1 to 5. Index 0 counts requests that got no response */
+    private final long[] statuses = new long[6];
+
+    /**
+     * @param latencyNanos from when the request was due to be sent, not when it was sent
+     * @param status of the response or 0 if none was received
+     */
+    void record(final long latencyNanos, final int status) {
+        latencies.recordValue(Math.min(latencyNanos, MAX_LATENCY_NANOS));
+        statuses[status / 100 < statuses.length ? status / 100 : 0]++;
+    }
+
+    void add(final OperationResults other) {
+        latencies.add(other.latencies);
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] += other.statuses[i];
+        }
+    }
+
+    long getCount() {
+        return latencies.getTotalCount();
+    }
+
+    /**
+     * @return latency at the percentile in milliseconds
+     */
+    double getLatencyMillis(final double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    double getMaxLatencyMillis() {
+        return latencies.getMaxValue() / 1e6;
+    }
+
+    /**
+     * @return count of responses in each status class that had any, "error" for requests with no response
+     */
+    Map<String, Long> getStatuses() {
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 1; i < statuses.length; i++) {
+            if(statuses[i] > 0) {
+                counts.put(i + "xx", statuses[i]);
+            }
+        }
+        if(statuses[0] > 0) {
+            counts.put("error", statuses[0]);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,252 @@
+package com.lee.workrequest.benchmarks.tcp;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.lee.workrequest.Application;
+import com.lee.workrequest.binary.BinaryProtocol;
+import com.lee.workrequest.binary.BinaryProtocolClient;
+import com.lee.workrequest.binary.BinaryProtocolServer;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput test of the binary protocol listener over loopback. Boots the application with the listener on a free
+ * port unless given the address of one already listening, enqueues a starting set of ids in batches, then each
+ * connection sends a weighted mix of requests for a warm up and a measured run.
+ * <p>
+ * Requests are sent closed loop in pipelined rounds: a connection writes a round of requests, flushes them together
+ * and reads all their responses before the next round. The round trip of a round is the latency of every request in
+ * it, so throughput is traded for latency by the pipeline depth
+ * <p>
+ * Run with: java -cp benchmarks.jar com.lee.workrequest.benchmarks.tcp.TcpLoadGenerator --connections=8 --pipeline=256
+ */
+public final class TcpLoadGenerator {
+
+    private static final TcpOperation[] OPERATIONS = TcpOperation.values();
+    private static final String[] STATUSES = {"OK", "NOT_FOUND", "EXISTS", "EMPTY", "INVALID", "UNAVAILABLE", "ERROR"};
+    private static final long MAX_ROUND_TRIP_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Logging off on the measured path unless the application arguments set it, the console would otherwise dominate
+     */
+    private static final String[] QUIET_LOGGING = {
+        "--logging.level.com.lee.workrequest=OFF", "--logging.level.org.springframework=WARN" };
+
+    private final TcpLoadOptions options;
+    private final InetSocketAddress address;
+    /** Operations, each repeated by its weight, drawn from at random */
+    private final TcpOperation[] draws;
+    /** Next id to enqueue, ids below it have been enqueued and some since removed */
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private TcpLoadGenerator(final TcpLoadOptions options, final InetSocketAddress address) {
+        this.options = options;
+        this.address = address;
+        final List<TcpOperation> weighted = new ArrayList<>();
+        for (final Map.Entry<TcpOperation, Integer> share : options.mix.entrySet()) {
+            for (int i = 0; i < share.getValue(); i++) {
+                weighted.add(share.getKey());
+            }
+        }
+        if(weighted.isEmpty()) {
+            throw new IllegalArgumentException("mix has no weight");
+        }
+        draws = weighted.toArray(new TcpOperation[0]);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final TcpLoadOptions options = TcpLoadOptions.parse(args);
+
+        ConfigurableApplicationContext application = null;
+        InetSocketAddress address;
+        if(options.host == null) {
+            application = boot(options.applicationArgs);
+            address = new InetSocketAddress("localhost", application.getBean(BinaryProtocolServer.class).getPort());
+        } else {
+            address = new InetSocketAddress(options.host, options.port);
+        }
+
+        try {
+            final TcpLoadGenerator generator = new TcpLoadGenerator(options, address);
+            System.out.printf("Enqueuing %d ids at %s%n", options.prefill, address);
+            generator.prefill();
+            if(options.warmupSeconds > 0) {
+                System.out.printf("Warming up for %d s%n", options.warmupSeconds);
+                generator.run(options.warmupSeconds);
+            }
+            System.out.printf("Measuring for %d s with %d connections pipelining %d requests%n",
+                options.durationSeconds, options.connections, options.pipeline);
+            System.out.println(generator.run(options.durationSeconds).toText());
+        } finally {
+            if(application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext boot(final List<String> applicationArgs) {
+        final List<String> args = new ArrayList<>();
+        args.add("--server.port=0");
+        args.add("--workrequest.binary.port=0");
+        for (final String quiet : QUIET_LOGGING) {
+            final String name = quiet.substring(0, quiet.indexOf('=') + 1);
+            if(applicationArgs.stream().noneMatch(arg -> arg.startsWith(name))) {
+                args.add(quiet);
+            }
+        }
+        args.addAll(applicationArgs);
+        return SpringApplication.run(Application.class, args.toArray(new String[0]));
+    }
+
+    /**
+     * Enqueue the starting ids in full batches, not measured
+     */
+    private void prefill() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(options.connections);
+        try {
+            final List<Future<?>> sent = new ArrayList<>();
+            for (int thread = 0; thread < options.connections; thread++) {
+                sent.add(executor.submit(() -> {
+                    try (BinaryProtocolClient client = new BinaryProtocolClient(address)) {
+                        long first;
+                        while ((first = nextId.getAndAdd(BinaryProtocol.MAX_COUNT)) <= options.prefill) {
+                            final int count = (int) Math.min(BinaryProtocol.MAX_COUNT, options.prefill - first + 1);
+                            final long[] ids = new long[count];
+                            final long[] times = new long[count];
+                            for (int i = 0; i < count; i++) {
+                                ids[i] = first + i;
+                                times[i] = BinaryProtocol.NOW;
+                            }
+                            client.writeEnqueueBatch(ids, times);
+                            client.call();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> result : sent) {
+                result.get();
+            }
+            // Threads overshoot by a batch each, those ids were never enqueued
+            nextId.set(options.prefill + 1L);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Run run(final int seconds) throws Exception {
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(options.connections);
+        final List<Future<Run>> threads = new ArrayList<>();
+        for (int thread = 0; thread < options.connections; thread++) {
+            threads.add(executor.submit(() -> {
+                final Run run = new Run();
+                final TcpOperation[] round = new TcpOperation[options.pipeline];
+                try (BinaryProtocolClient client = new BinaryProtocolClient(address)) {
+                    while (System.nanoTime() < deadline) {
+                        final long sent = System.nanoTime();
+                        for (int i = 0; i < round.length; i++) {
+                            round[i] = draws[ThreadLocalRandom.current().nextInt(draws.length)];
+                            write(client, round[i]);
+                        }
+                        client.flush();
+                        for (final TcpOperation operation : round) {
+                            run.record(operation, client.read());
+                        }
+                        run.roundTrips.recordValue(Math.min(System.nanoTime() - sent, MAX_ROUND_TRIP_NANOS));
+                    }
+                }
+                return run;
+            }));
+        }
+
+        final Run total = new Run();
+        for (final Future<Run> thread : threads) {
+            total.add(thread.get());
+        }
+        executor.shutdown();
+        total.elapsedNanos = System.nanoTime() - start;
+        return total;
+    }
+
+    private void write(final BinaryProtocolClient client, final TcpOperation operation) throws Exception {
+        switch (operation) {
+        case ENQUEUE:
+            client.writeEnqueue(nextId.getAndIncrement(), BinaryProtocol.NOW);
+            break;
+        case POSITION:
+            // Any id enqueued so far, those already removed are answered not found
+            client.writePosition(ThreadLocalRandom.current().nextLong(1, Math.max(2, nextId.get())));
+            break;
+        default:
+            client.writeDequeueTop();
+        }
+    }
+
+    /**
+     * Counts and round trips of one run, each thread keeps its own and they are added together once it ends
+     */
+    private final class Run {
+        final long[] operations = new long[OPERATIONS.length];
+        final long[] statuses = new long[STATUSES.length];
+        final Histogram roundTrips = new Histogram(MAX_ROUND_TRIP_NANOS, 3);
+        long elapsedNanos;
+
+        void record(final TcpOperation operation, final byte status) {
+            operations[operation.ordinal()]++;
+            statuses[status]++;
+        }
+
+        void add(final Run other) {
+            for (int i = 0; i < operations.length; i++) {
+                operations[i] += other.operations[i];
+            }
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] += other.statuses[i];
+            }
+            roundTrips.add(other.roundTrips);
+        }
+
+        String toText() {
+            final double seconds = elapsedNanos / 1e9;
+            long count = 0;
+            for (final long operation : operations) {
+                count += operation;
+            }
+            final StringBuilder text = new StringBuilder();
+            text.append(String.format("%n%d requests over %.2f s, %.0f requests/s%n%n", count, seconds,
+                count / seconds));
+            text.append(String.format("%-12s %12s %12s%n", "Operation", "Count", "Rate/s"));
+            for (final TcpOperation operation : OPERATIONS) {
+                if(operations[operation.ordinal()] > 0) {
+                    text.append(String.format("%-12s %12d %12.0f%n", operation, operations[operation.ordinal()],
+                        operations[operation.ordinal()] / seconds));
+                }
+            }
+            text.append(String.format("%nStatuses:"));
+            for (int i = 0; i < statuses.length; i++) {
+                if(statuses[i] > 0) {
+                    text.append(' ').append(STATUSES[i]).append('=').append(statuses[i]);
+                }
+            }
+            text.append(String.format("%nRound trip of %d requests: p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms,"
+                + " max %.3f ms%n", options.pipeline, roundTrips.getValueAtPercentile(50) / 1e6,
+                roundTrips.getValueAtPercentile(99) / 1e6, roundTrips.getValueAtPercentile(99.9) / 1e6,
+                roundTrips.getMaxValue() / 1e6));
+            return text.toString();
+        }
+    }
+}
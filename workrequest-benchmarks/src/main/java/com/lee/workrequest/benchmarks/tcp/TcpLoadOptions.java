@@ -0,0 +1,86 @@
+package com.lee.workrequest.benchmarks.tcp;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a binary protocol load run read from --name=value arguments. Arguments it does not know are passed on
+ * to the application it boots
+ */
+final class TcpLoadOptions {
+
+    int durationSeconds = 30;
+    /** Run before the measured one and discarded, lets the server warm up */
+    int warmupSeconds = 10;
+    /** Each thread keeps one connection */
+    int connections = 8;
+    /** Requests each connection sends before reading their responses */
+    int pipeline = 256;
+    /** Ids enqueued before the warm up */
+    int prefill = 100000;
+    /** Relative weight of each operation */
+    final Map<TcpOperation, Integer> mix = new EnumMap<>(TcpOperation.class);
+    /** Host and port of a server already listening, null to boot one */
+    String host;
+    int port;
+    final List<String> applicationArgs = new ArrayList<>();
+
+    private TcpLoadOptions() {
+        mix.put(TcpOperation.ENQUEUE, 40);
+        mix.put(TcpOperation.POSITION, 30);
+        mix.put(TcpOperation.DEQUEUE_TOP, 30);
+    }
+
+    /**
+     * @throws IllegalArgumentException if an option has a bad value
+     */
+    static TcpLoadOptions parse(final String[] args) {
+        final TcpLoadOptions options = new TcpLoadOptions();
+        for (final String arg : args) {
+            final int equals = arg.indexOf('=');
+            final String name = arg.startsWith("--") && equals > 2 ? arg.substring(2, equals) : "";
+            final String value = equals == -1 ? "" : arg.substring(equals + 1);
+            switch (name) {
+            case "duration":
+                options.durationSeconds = positive(name, value);
+                break;
+            case "warmup":
+                options.warmupSeconds = Integer.parseInt(value);
+                break;
+            case "connections":
+                options.connections = positive(name, value);
+                break;
+            case "pipeline":
+                options.pipeline = positive(name, value);
+                break;
+            case "prefill":
+                options.prefill = Integer.parseInt(value);
+                break;
+            case "mix":
+                options.mix.clear();
+                for (final String share : value.split(",")) {
+                    final String[] parts = share.split(":");
+                    options.mix.put(TcpOperation.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+                }
+                break;
+            case "target":
+                options.host = value.substring(0, value.lastIndexOf(':'));
+                options.port = Integer.parseInt(value.substring(value.lastIndexOf(':') + 1));
+                break;
+            default:
+                options.applicationArgs.add(arg);
+            }
+        }
+        return options;
+    }
+
+    private static int positive(final String name, final String value) {
+        final int parsed = Integer.parseInt(value);
+        if(parsed <= 0) {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return parsed;
+    }
+}
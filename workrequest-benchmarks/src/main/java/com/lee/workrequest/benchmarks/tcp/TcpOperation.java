@@ -0,0 +1,13 @@
+package com.lee.workrequest.benchmarks.tcp;
+
+/**
+ * Kinds of request the binary protocol load generator sends
+ */
+public enum TcpOperation {
+    /** Submit a new id */
+    ENQUEUE,
+    /** Read the position of one work request */
+    POSITION,
+    /** Remove the top of the queue */
+    DEQUEUE_TOP
+}
@@ -1,15 +1,56 @@
 package com.lee.workrequest;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
+import com.lee.workrequest.binary.BinaryProtocolServer;
+import com.lee.workrequest.binary.BinaryRequestHandler;
+import com.lee.workrequest.journal.EventJournal;
+import com.lee.workrequest.journal.JournalFileAppender;
+import com.lee.workrequest.metrics.EndpointMetrics;
+import com.lee.workrequest.metrics.PrometheusEndpoint;
+import com.lee.workrequest.metrics.PrometheusMetrics;
+import com.lee.workrequest.metrics.QueueMetrics;
 import com.lee.workrequest.model.WorkRequestFactory;
+import com.lee.workrequest.persistence.QueueCheckpointer;
+import com.lee.workrequest.persistence.WriteAheadLog;
+import com.lee.workrequest.queue.QueueLog;
 import com.lee.workrequest.queue.WorkRequestQueue;
+import com.lee.workrequest.rest.ReadCoalescingMetrics;
+import com.lee.workrequest.rest.WorkRequestDispatcher;
+import com.lee.workrequest.rest.WorkRequestPositionStreams;
 import com.lee.workrequest.rest.WorkRequestService;
+import com.lee.workrequest.rest.WorkRequestSnapshotRefresher;
 import com.lee.workrequest.rest.WorkRequestValidation;
 
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.List;
+
 @Configuration
-public class AppConfig {
+public class AppConfig extends WebMvcConfigurerAdapter {
+
+    /** Directory of the write-ahead log, the queue is only kept in memory if empty */
+    @Value("${workrequest.log.directory:}")
+    private String logDirectory;
+
+    /** File the event journal appends every change to, nothing is appended if empty */
+    @Value("${workrequest.journal.file:}")
+    private String journalFile;
+
+    /** Rings of the event journal, producer threads are spread over them by thread id */
+    @Value("${workrequest.journal.stripes:4}")
+    private int journalStripes;
+
+    /** Events each ring of the event journal holds before producers wait for the slowest subscriber */
+    @Value("${workrequest.journal.capacity:8192}")
+    private int journalCapacity;
 
     @Bean
     public WorkRequestValidation workRequestValidation() {
@@ -21,13 +62,90 @@ public class AppConfig {
         return new WorkRequestService(workRequestFactory(), workRequestQueue());
     }
 
+    @Bean
+    public ReadCoalescingMetrics readCoalescingMetrics() {
+        return new ReadCoalescingMetrics(workRequestService());
+    }
+
+    @Bean
+    public QueueMetrics queueMetrics() {
+        return new QueueMetrics(workRequestQueue());
+    }
+
+    @Bean
+    public EndpointMetrics endpointMetrics() {
+        return new EndpointMetrics();
+    }
+
+    @Bean
+    public PrometheusEndpoint prometheusEndpoint(final List<PublicMetrics> publicMetrics,
+            final List<PrometheusMetrics> prometheusMetrics) {
+        return new PrometheusEndpoint(publicMetrics, prometheusMetrics);
+    }
+
+    @Override
+    public void addInterceptors(final InterceptorRegistry registry) {
+        registry.addInterceptor(endpointMetrics()).addPathPatterns("/workrequests", "/workrequests/**");
+    }
+
+    @Bean
+    @ConditionalOnProperty("workrequest.binary.port")
+    public BinaryProtocolServer binaryProtocolServer(@Value("${workrequest.binary.port}") final int port,
+            @Value("${workrequest.binary.threads:2}") final int threads) {
+        return new BinaryProtocolServer(new BinaryRequestHandler(workRequestService(), workRequestValidation()),
+            new InetSocketAddress(port), threads);
+    }
+
+    @Bean
+    public WorkRequestDispatcher workRequestDispatcher() {
+        return new WorkRequestDispatcher(workRequestQueue());
+    }
+
+    @Bean
+    public WorkRequestSnapshotRefresher workRequestSnapshotRefresher(
+            @Value("${workrequest.snapshot.refreshMillis:200}") final long refreshMillis) {
+        return new WorkRequestSnapshotRefresher(workRequestQueue(), refreshMillis);
+    }
+
+    @Bean
+    public WorkRequestPositionStreams workRequestPositionStreams(
+            @Value("${workrequest.positionStream.refreshMillis:100}") final long refreshMillis,
+            @Value("${workrequest.positionStream.timeoutSeconds:300}") final long timeoutSeconds) {
+        return new WorkRequestPositionStreams(workRequestQueue(), eventJournal(), refreshMillis, timeoutSeconds);
+    }
+
     @Bean
     public WorkRequestFactory workRequestFactory() {
-        return new WorkRequestFactory();
+        return new WorkRequestFactory(clock());
     }
 
     @Bean
     public WorkRequestQueue workRequestQueue() {
-        return new WorkRequestQueue();
+        return new WorkRequestQueue(clock(), queueLog(), eventJournal());
+    }
+
+    @Bean
+    public EventJournal eventJournal() {
+        final EventJournal eventJournal = new EventJournal(journalStripes, journalCapacity);
+        if(!journalFile.isEmpty()) {
+            eventJournal.subscribe("file", new JournalFileAppender(Paths.get(journalFile)));
+        }
+        return eventJournal;
+    }
+
+    @Bean
+    public QueueLog queueLog() {
+        return logDirectory.isEmpty() ? QueueLog.NONE : new WriteAheadLog(Paths.get(logDirectory));
+    }
+
+    @Bean
+    public QueueCheckpointer queueCheckpointer(
+            @Value("${workrequest.checkpoint.intervalSeconds:300}") final long intervalSeconds) {
+        return new QueueCheckpointer(workRequestQueue(), queueLog(), intervalSeconds);
+    }
+
+    @Bean
+    public Clock clock() {
+        return Clock.systemDefaultZone();
     }
 }
@@ -0,0 +1,65 @@
+package com.lee.workrequest.binary;
+
+/**
+ * Length prefixed binary protocol spoken by {@link BinaryProtocolServer}. All numbers are big endian.
+ * <p>
+ * A request frame is an int length of the rest of the frame, a byte opcode then the opcode's fields. A response frame
+ * is an int length of the rest of the frame, a byte status then the opcode's result if the status is {@link #OK}, or a
+ * UTF-8 message otherwise. Requests may be pipelined on a connection, responses come back in request order.
+ * <p>
+ * Times are epoch milliseconds of the enqueued local date time taken at UTC, {@link #NOW} for the server's time
+ * <pre>
+ * opcode              request fields                    result
+ * ENQUEUE             long id, long time                -
+ * DEQUEUE             long id                           -
+ * DEQUEUE_TOP         -                                 long id
+ * DEQUEUE_TOP_COUNT   int count                         int n, n longs ids in priority order
+ * POSITION            long id                           int position
+ * POSITIONS           int n, n longs ids                int n, n ints positions, -1 if not queued
+ * ENQUEUE_BATCH       int n, n (long id, long time)     int n, n bytes outcome ACCEPTED, DUPLICATE or INVALID
+ * </pre>
+ */
+public final class BinaryProtocol {
+
+    public static final byte ENQUEUE = 1;
+    public static final byte DEQUEUE = 2;
+    public static final byte DEQUEUE_TOP = 3;
+    public static final byte DEQUEUE_TOP_COUNT = 4;
+    public static final byte POSITION = 5;
+    public static final byte POSITIONS = 6;
+    public static final byte ENQUEUE_BATCH = 7;
+
+    public static final byte OK = 0;
+    public static final byte NOT_FOUND = 1;
+    public static final byte EXISTS = 2;
+    public static final byte EMPTY = 3;
+    public static final byte INVALID = 4;
+    /** The log failed, changes can no longer be made durable */
+    public static final byte UNAVAILABLE = 5;
+    public static final byte ERROR = 6;
+
+    public static final byte ACCEPTED = 0;
+    public static final byte DUPLICATE = 1;
+    public static final byte REJECTED_INVALID = 2;
+
+    /** Enqueue time meaning the server's current time */
+    public static final long NOW = Long.MIN_VALUE;
+
+    /** Most ids in one batch, positions or dequeue top request, matches the REST api */
+    public static final int MAX_COUNT = 1000;
+
+    /** Length field of a frame */
+    static final int LENGTH_BYTES = 4;
+
+    /** Longest frame after its length field, a full enqueue batch fits */
+    public static final int MAX_FRAME_LENGTH = 1 + 4 + MAX_COUNT * 16;
+
+    /** Longest response frame including its length field, a full dequeue top count fits */
+    static final int MAX_RESPONSE_LENGTH = LENGTH_BYTES + 1 + 4 + MAX_COUNT * 8;
+
+    /** Longest message in an error response */
+    static final int MAX_MESSAGE_BYTES = 256;
+
+    private BinaryProtocol() {
+    }
+}
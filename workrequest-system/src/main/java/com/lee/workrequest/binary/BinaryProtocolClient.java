@@ -0,0 +1,157 @@
+package com.lee.workrequest.binary;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking client of a {@link BinaryProtocolServer} over one connection, not thread safe. Requests are written into a
+ * buffer and sent by {@link #flush()}, so any number can be pipelined before reading their responses in the same
+ * order with {@link #read()}. The result of the response last read is taken with the get methods in the order of its
+ * fields
+ */
+public class BinaryProtocolClient implements Closeable {
+
+    private static final int BUFFER_CAPACITY = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+    /** Left in read mode, holding responses received and not yet read */
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+    private int responseEnd;
+
+    /**
+     * @param address of the server
+     * @throws IOException if the connection cannot be made
+     */
+    public BinaryProtocolClient(final InetSocketAddress address) throws IOException {
+        channel = SocketChannel.open(address);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        in.flip();
+    }
+
+    /**
+     * @param enqueuedMillis epoch milliseconds of the local date time at UTC, or {@link BinaryProtocol#NOW}
+     */
+    public void writeEnqueue(final long id, final long enqueuedMillis) throws IOException {
+        frame(1 + 16).put(BinaryProtocol.ENQUEUE).putLong(id).putLong(enqueuedMillis);
+    }
+
+    public void writeDequeue(final long id) throws IOException {
+        frame(1 + 8).put(BinaryProtocol.DEQUEUE).putLong(id);
+    }
+
+    public void writeDequeueTop() throws IOException {
+        frame(1).put(BinaryProtocol.DEQUEUE_TOP);
+    }
+
+    public void writeDequeueTop(final int count) throws IOException {
+        frame(1 + 4).put(BinaryProtocol.DEQUEUE_TOP_COUNT).putInt(count);
+    }
+
+    public void writePosition(final long id) throws IOException {
+        frame(1 + 8).put(BinaryProtocol.POSITION).putLong(id);
+    }
+
+    public void writePositions(final long[] ids) throws IOException {
+        final ByteBuffer frame = frame(1 + 4 + ids.length * 8).put(BinaryProtocol.POSITIONS).putInt(ids.length);
+        for (final long id : ids) {
+            frame.putLong(id);
+        }
+    }
+
+    /**
+     * @param enqueuedMillis of each id in the same order, see {@link #writeEnqueue(long, long)}
+     */
+    public void writeEnqueueBatch(final long[] ids, final long[] enqueuedMillis) throws IOException {
+        final ByteBuffer frame = frame(1 + 4 + ids.length * 16).put(BinaryProtocol.ENQUEUE_BATCH).putInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            frame.putLong(ids[i]).putLong(enqueuedMillis[i]);
+        }
+    }
+
+    private ByteBuffer frame(final int length) throws IOException {
+        if(out.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+            flush();
+        }
+        return out.putInt(length);
+    }
+
+    /**
+     * Send every request written so far
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Send every request written so far and read the first response
+     * @return status of the response
+     */
+    public byte call() throws IOException {
+        flush();
+        return read();
+    }
+
+    /**
+     * Read the next response, skipping whatever was not taken of the one before
+     * @return status of the response
+     * @throws EOFException if the server closed the connection
+     */
+    public byte read() throws IOException {
+        in.position(responseEnd);
+        fill(BinaryProtocol.LENGTH_BYTES);
+        final int length = in.getInt();
+        fill(length);
+        responseEnd = in.position() + length;
+        return in.get();
+    }
+
+    private void fill(final int bytes) throws IOException {
+        if(in.remaining() >= bytes) {
+            return;
+        }
+        in.compact();
+        while (in.position() < bytes) {
+            if(channel.read(in) == -1) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+        in.flip();
+    }
+
+    public byte getByte() {
+        return in.get();
+    }
+
+    public int getInt() {
+        return in.getInt();
+    }
+
+    public long getLong() {
+        return in.getLong();
+    }
+
+    /**
+     * @return message of a response whose status is not {@link BinaryProtocol#OK}
+     */
+    public String getMessage() {
+        final byte[] message = new byte[responseEnd - in.position()];
+        in.get(message);
+        return new String(message, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
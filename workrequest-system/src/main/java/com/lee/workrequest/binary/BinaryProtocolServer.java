@@ -0,0 +1,275 @@
+package com.lee.workrequest.binary;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listens for {@link BinaryProtocol} connections next to the REST api. An acceptor thread hands each connection to one
+ * of a fixed set of worker threads, each running its own selector. A worker reads whatever has arrived, executes every
+ * complete request in it in order and writes all their responses back together, so pipelined requests cost one read
+ * and one write between them. A connection is not read while its responses cannot be written.
+ * <p>
+ * Requests run on the worker thread, so with a write-ahead log the connections of a worker wait for each force in
+ * turn. Producers that need throughput with a log send batches
+ */
+public class BinaryProtocolServer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryProtocolServer.class);
+
+    private static final int READ_CAPACITY = 64 * 1024;
+    private static final int WRITE_CAPACITY = 64 * 1024;
+
+    private final BinaryRequestHandler handler;
+    private final ServerSocketChannel serverChannel;
+    private final Worker[] workers;
+    private final Thread acceptor;
+
+    /**
+     * Bind and start accepting
+     * @param handler to execute requests
+     * @param address to listen on, port 0 for any free port
+     * @param threads worker threads
+     * @throws UncheckedIOException if the address cannot be bound
+     */
+    public BinaryProtocolServer(final BinaryRequestHandler handler, final InetSocketAddress address,
+            final int threads) {
+        this.handler = handler;
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address);
+            workers = new Worker[threads];
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker("work-request-binary-" + i);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("cannot listen on " + address, e);
+        }
+        for (final Worker worker : workers) {
+            worker.thread.start();
+        }
+        acceptor = new Thread(this::accept, "work-request-binary-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOG.info("Binary protocol listening on port {} with {} workers", getPort(), threads);
+    }
+
+    /**
+     * @return port listened on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stop accepting and close every connection, requests in progress finish first
+     */
+    @Override
+    public void close() {
+        try {
+            serverChannel.close();
+        } catch (final IOException e) {
+            LOG.warn("Cannot close binary protocol listener", e);
+        }
+        for (final Worker worker : workers) {
+            worker.running = false;
+            worker.selector.wakeup();
+        }
+        try {
+            acceptor.join(TimeUnit.SECONDS.toMillis(10));
+            for (final Worker worker : workers) {
+                worker.thread.join(TimeUnit.SECONDS.toMillis(10));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void accept() {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            try {
+                final SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                workers[next++ % workers.length].add(channel);
+            } catch (final ClosedChannelException e) {
+                break;
+            } catch (final IOException e) {
+                LOG.warn("Cannot accept binary protocol connection", e);
+            }
+        }
+    }
+
+    private final class Worker {
+        final Selector selector;
+        final Thread thread;
+        final Queue<SocketChannel> added = new ConcurrentLinkedQueue<>();
+        volatile boolean running = true;
+
+        Worker(final String name) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+        }
+
+        void add(final SocketChannel channel) {
+            added.add(channel);
+            selector.wakeup();
+        }
+
+        private void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = added.poll()) != null) {
+                        register(channel);
+                    }
+                    final Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                    while (selected.hasNext()) {
+                        final SelectionKey key = selected.next();
+                        selected.remove();
+                        ready(key);
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.error("Binary protocol worker failed", e);
+            } finally {
+                for (final SelectionKey key : selector.keys()) {
+                    closeQuietly(key);
+                }
+                try {
+                    selector.close();
+                } catch (final IOException e) {
+                    LOG.warn("Cannot close binary protocol selector", e);
+                }
+            }
+        }
+
+        private void register(final SocketChannel channel) {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+            } catch (final IOException e) {
+                LOG.warn("Cannot register binary protocol connection", e);
+            }
+        }
+
+        private void ready(final SelectionKey key) {
+            final Connection connection = (Connection) key.attachment();
+            try {
+                if(key.isWritable()) {
+                    connection.writable(key);
+                } else if(key.isReadable()) {
+                    connection.readable(key);
+                }
+            } catch (final IOException | RuntimeException e) {
+                // The peer went away or broke the protocol, either way the stream cannot be trusted
+                LOG.debug("Binary protocol connection closed", e);
+                closeQuietly(key);
+            }
+        }
+    }
+
+    private static void closeQuietly(final SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (final IOException e) {
+            LOG.debug("Cannot close binary protocol connection", e);
+        }
+    }
+
+    /**
+     * Buffers of one connection, only used by its worker
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        /** Left in write mode between events */
+        final ByteBuffer in = ByteBuffer.allocateDirect(READ_CAPACITY);
+        final ByteBuffer out = ByteBuffer.allocateDirect(WRITE_CAPACITY);
+
+        Connection(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void readable(final SelectionKey key) throws IOException {
+            if(channel.read(in) == -1) {
+                closeQuietly(key);
+                return;
+            }
+            serve(key);
+        }
+
+        void writable(final SelectionKey key) throws IOException {
+            flush(key);
+            if(out.position() == 0) {
+                // Requests may have been left waiting for room in the output
+                serve(key);
+            }
+        }
+
+        private void serve(final SelectionKey key) throws IOException {
+            boolean waiting;
+            do {
+                waiting = execute();
+                flush(key);
+            } while (waiting && out.position() == 0);
+        }
+
+        /**
+         * Execute each complete request while there is room for its response
+         * @return true if a complete request was left for lack of room
+         */
+        private boolean execute() {
+            in.flip();
+            boolean waiting = false;
+            while (in.remaining() >= BinaryProtocol.LENGTH_BYTES) {
+                final int length = in.getInt(in.position());
+                if(length < 1 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+                    throw new IllegalStateException("Frame length out of range: " + length);
+                }
+                if(in.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+                    break;
+                }
+                if(out.remaining() < BinaryProtocol.MAX_RESPONSE_LENGTH) {
+                    waiting = true;
+                    break;
+                }
+
+                final int limit = in.limit();
+                final int end = in.position() + BinaryProtocol.LENGTH_BYTES + length;
+                in.position(in.position() + BinaryProtocol.LENGTH_BYTES).limit(end);
+                handler.handle(in, out);
+                in.limit(limit).position(end);
+            }
+            in.compact();
+            return waiting;
+        }
+
+        /**
+         * Write what the socket takes, reading is paused until the rest is written
+         */
+        private void flush(final SelectionKey key) throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            key.interestOps(out.position() == 0 ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+        }
+    }
+}
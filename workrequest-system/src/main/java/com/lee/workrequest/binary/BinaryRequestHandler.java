@@ -0,0 +1,173 @@
+package com.lee.workrequest.binary;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
+import com.lee.workrequest.exception.WorkRequestExistsException;
+import com.lee.workrequest.exception.WorkRequestInvalidCountException;
+import com.lee.workrequest.exception.WorkRequestInvalidIdException;
+import com.lee.workrequest.exception.WorkRequestInvalidTimeException;
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
+import com.lee.workrequest.exception.WorkRequestQueueEmptyException;
+import com.lee.workrequest.queue.LongList;
+import com.lee.workrequest.rest.WorkRequestService;
+import com.lee.workrequest.rest.WorkRequestValidation;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Executes one {@link BinaryProtocol} request against the {@link WorkRequestService} and writes its response, the
+ * binary counterpart of the REST controllers. Outcomes the REST api answers with an error status are answered with
+ * the matching protocol status rather than thrown
+ */
+public class BinaryRequestHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryRequestHandler.class);
+
+    private final WorkRequestService workRequestService;
+    private final WorkRequestValidation workRequestValidation;
+
+    public BinaryRequestHandler(final WorkRequestService workRequestService,
+            final WorkRequestValidation workRequestValidation) {
+        this.workRequestService = workRequestService;
+        this.workRequestValidation = workRequestValidation;
+    }
+
+    /**
+     * @param request from the opcode to the end of the frame, read to its limit or less
+     * @param response written with the whole response frame, must have room for
+     * {@link BinaryProtocol#MAX_RESPONSE_LENGTH}
+     */
+    void handle(final ByteBuffer request, final ByteBuffer response) {
+        final int start = response.position();
+        response.putInt(0).put(BinaryProtocol.OK);
+        try {
+            execute(request, response);
+        } catch (final WorkRequestDoesNotExistException e) {
+            error(response, start, BinaryProtocol.NOT_FOUND, e);
+        } catch (final WorkRequestExistsException e) {
+            error(response, start, BinaryProtocol.EXISTS, e);
+        } catch (final WorkRequestQueueEmptyException e) {
+            error(response, start, BinaryProtocol.EMPTY, e);
+        } catch (final WorkRequestInvalidIdException | WorkRequestInvalidTimeException | WorkRequestInvalidCountException
+                | IllegalArgumentException | BufferUnderflowException e) {
+            error(response, start, BinaryProtocol.INVALID, e);
+        } catch (final WorkRequestPersistenceException e) {
+            error(response, start, BinaryProtocol.UNAVAILABLE, e);
+        } catch (final RuntimeException e) {
+            LOG.error("Binary request failed", e);
+            error(response, start, BinaryProtocol.ERROR, e);
+        }
+        response.putInt(start, response.position() - start - BinaryProtocol.LENGTH_BYTES);
+    }
+
+    private void execute(final ByteBuffer request, final ByteBuffer response) {
+        final byte opcode = request.get();
+        switch (opcode) {
+        case BinaryProtocol.ENQUEUE: {
+            final long id = request.getLong();
+            final LocalDateTime time = toTime(request.getLong());
+            workRequestValidation.idInRange(id);
+            workRequestValidation.timeInRange(time);
+            workRequestService.enqueue(id, time);
+            break;
+        }
+        case BinaryProtocol.DEQUEUE: {
+            final long id = request.getLong();
+            workRequestValidation.idInRange(id);
+            workRequestService.dequeue(id);
+            break;
+        }
+        case BinaryProtocol.DEQUEUE_TOP:
+            response.putLong(workRequestService.dequeueTop());
+            break;
+        case BinaryProtocol.DEQUEUE_TOP_COUNT: {
+            final int count = request.getInt();
+            workRequestValidation.countInRange(count);
+            final LongList ids = workRequestService.dequeueTop(count);
+            response.putInt(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                response.putLong(ids.getLong(i));
+            }
+            break;
+        }
+        case BinaryProtocol.POSITION:
+            response.putInt(workRequestService.getPosition(request.getLong()));
+            break;
+        case BinaryProtocol.POSITIONS: {
+            final int count = request.getInt();
+            workRequestValidation.countInRange(count);
+            final long[] ids = new long[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = request.getLong();
+            }
+            final int[] positions = workRequestService.getPositions(ids);
+            response.putInt(count);
+            for (final int position : positions) {
+                response.putInt(position);
+            }
+            break;
+        }
+        case BinaryProtocol.ENQUEUE_BATCH:
+            enqueueBatch(request, response);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Enqueue the records with a valid id as one operation, the rest are answered invalid
+     */
+    private void enqueueBatch(final ByteBuffer request, final ByteBuffer response) {
+        final int count = request.getInt();
+        workRequestValidation.countInRange(count);
+        final byte[] outcomes = new byte[count];
+        final long[] ids = new long[count];
+        final LocalDateTime[] times = new LocalDateTime[count];
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            final long id = request.getLong();
+            final LocalDateTime time = toTime(request.getLong());
+            if(workRequestValidation.isIdInRange(id) && workRequestValidation.isTimeInRange(time)) {
+                ids[valid] = id;
+                times[valid++] = time;
+            } else {
+                outcomes[i] = BinaryProtocol.REJECTED_INVALID;
+            }
+        }
+
+        final boolean[] added = valid == 0 ? new boolean[0]
+            : workRequestService.enqueueAll(Arrays.copyOf(ids, valid), Arrays.copyOf(times, valid));
+        response.putInt(count);
+        for (int i = 0, next = 0; i < count; i++) {
+            if(outcomes[i] != BinaryProtocol.REJECTED_INVALID) {
+                outcomes[i] = added[next++] ? BinaryProtocol.ACCEPTED : BinaryProtocol.DUPLICATE;
+            }
+            response.put(outcomes[i]);
+        }
+    }
+
+    private static LocalDateTime toTime(final long millis) {
+        return millis == BinaryProtocol.NOW ? null
+            : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    /**
+     * Replace whatever was written of the result with the status and message
+     */
+    private static void error(final ByteBuffer response, final int start, final byte status, final Exception e) {
+        response.position(start + BinaryProtocol.LENGTH_BYTES);
+        response.put(status);
+        final String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        final byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        response.put(bytes, 0, Math.min(bytes.length, BinaryProtocol.MAX_MESSAGE_BYTES));
+    }
+}
@@ -18,7 +18,7 @@ public class WorkRequestExceptionHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkRequestExceptionHandler.class);
 
-    @ExceptionHandler({WorkRequestExistsException.class, WorkRequestQueueEmptyException.class, WorkRequestInvalidIdException.class})
+    @ExceptionHandler({WorkRequestExistsException.class, WorkRequestQueueEmptyException.class, WorkRequestInvalidIdException.class, WorkRequestInvalidTimeoutException.class, WorkRequestInvalidCountException.class, WorkRequestInvalidTimeException.class, WorkRequestInvalidBatchException.class, WorkRequestInvalidLimitException.class, WorkRequestInvalidCursorException.class})
     void handleBadRequest(HttpServletResponse response, Exception e) throws IOException {
         LOG.error("Mapping to BAD_REQUEST", e);
         response.sendError(HttpStatus.BAD_REQUEST.value());
@@ -29,4 +29,10 @@ public class WorkRequestExceptionHandler {
         LOG.error("Mapping to NOT_FOUND", e);
         response.sendError(HttpStatus.NOT_FOUND.value());
     }
+
+    @ExceptionHandler({WorkRequestPersistenceException.class})
+    void handleServiceUnavailable(HttpServletResponse response, Exception e) throws IOException {
+        LOG.error("Mapping to SERVICE_UNAVAILABLE", e);
+        response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+    }
 }
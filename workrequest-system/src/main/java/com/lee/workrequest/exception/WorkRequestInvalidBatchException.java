@@ -0,0 +1,13 @@
+package com.lee.workrequest.exception;
+
+/**
+ * Indicates that a batch of work requests could not be read, records before the fault have been applied
+ */
+public class WorkRequestInvalidBatchException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestInvalidBatchException(String reason, Throwable cause) {
+        super("WorkRequest batch is not valid JSON: " + reason, cause);
+    }
+}
@@ -0,0 +1,13 @@
+package com.lee.workrequest.exception;
+
+/**
+ * Indicates that the number of work requests asked for is out of range
+ */
+public class WorkRequestInvalidCountException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestInvalidCountException(int count, int maxCount) {
+        super("WorkRequest count must be between 1 and " + maxCount + ", supplied count: " + count);
+    }
+}
@@ -0,0 +1,13 @@
+package com.lee.workrequest.exception;
+
+/**
+ * Indicates that the cursor supplied to page through work requests was not one returned by the api
+ */
+public class WorkRequestInvalidCursorException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestInvalidCursorException(String cursor, Throwable cause) {
+        super("WorkRequest cursor is not valid, supplied cursor: " + cursor, cause);
+    }
+}
@@ -0,0 +1,13 @@
+package com.lee.workrequest.exception;
+
+/**
+ * Indicates that the number of work requests to return on a page is out of range
+ */
+public class WorkRequestInvalidLimitException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestInvalidLimitException(int limit, int maxLimit) {
+        super("WorkRequest limit must be between 1 and " + maxLimit + ", supplied limit: " + limit);
+    }
+}
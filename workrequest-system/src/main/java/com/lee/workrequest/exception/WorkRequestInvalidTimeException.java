@@ -0,0 +1,15 @@
+package com.lee.workrequest.exception;
+
+import java.time.LocalDateTime;
+
+/**
+ * Indicates that the time a work request is enqueued at is out of range
+ */
+public class WorkRequestInvalidTimeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestInvalidTimeException(LocalDateTime time, LocalDateTime minTime, LocalDateTime maxTime) {
+        super("WorkRequest time must be between " + minTime + " and " + maxTime + ", supplied time: " + time);
+    }
+}
@@ -0,0 +1,13 @@
+package com.lee.workrequest.exception;
+
+/**
+ * Indicates that the time to wait for a work request is out of range
+ */
+public class WorkRequestInvalidTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestInvalidTimeoutException(long timeout, long maxTimeout) {
+        super("WorkRequest timeout must be between 1 and " + maxTimeout + " seconds, supplied timeout: " + timeout);
+    }
+}
@@ -0,0 +1,13 @@
+package com.lee.workrequest.exception;
+
+/**
+ * Indicates that the work request log could not be read or written, changes can no longer be made durable
+ */
+public class WorkRequestPersistenceException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public WorkRequestPersistenceException(String reason, Throwable cause) {
+        super("WorkRequest log failed: " + reason, cause);
+    }
+}
@@ -0,0 +1,301 @@
+package com.lee.workrequest.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lee.workrequest.journal.JournalEvent.Kind;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.QueueEvents;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link QueueEvents} kept in preallocated rings and read by subscribed {@link JournalConsumer}s, each on its own
+ * thread. Producers are spread over the stripes by thread id and claim a sequence in their stripe with one atomic
+ * increment, write the event into the slot's columns and publish it with an ordered store, so nothing is allocated or
+ * locked on the path of a queue change. A producer only waits when the slowest subscriber is a whole ring behind, and
+ * events are not kept at all while there are no subscribers.
+ * <p>
+ * Events are ordered within a stripe, a consumer reads each stripe in turn so events from different threads can arrive
+ * out of order
+ */
+public class EventJournal implements QueueEvents, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventJournal.class);
+
+    private static final long STALL_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MIN_IDLE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private final int capacity;
+    private final int slotMask;
+    private final LongAdder stalls = new LongAdder();
+
+    /** Copied on every change so producers walk it without locking or allocating */
+    private volatile Subscription[] subscriptions = NO_SUBSCRIPTIONS;
+    private final Object subscriptionsLock = new Object();
+
+    /**
+     * @param stripes number of rings, rounded up to a power of two
+     * @param capacity events per ring, rounded up to a power of two
+     * @throws IllegalArgumentException if either is less than 1
+     */
+    public EventJournal(final int stripes, final int capacity) {
+        if(stripes < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Journal needs at least one stripe and slot, was " + stripes + " and "
+                + capacity);
+        }
+        this.capacity = powerOfTwo(capacity);
+        slotMask = this.capacity - 1;
+        this.stripes = new Stripe[powerOfTwo(stripes)];
+        stripeMask = this.stripes.length - 1;
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe(this.capacity);
+        }
+    }
+
+    static int powerOfTwo(final int value) {
+        return value == 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    @Override
+    public void enqueued(final long id, final WorkRequestType type, final long enqueuedMillis) {
+        publish(Kind.ENQUEUED, id, type, enqueuedMillis, 0);
+    }
+
+    @Override
+    public void dequeued(final long id, final WorkRequestType type, final long enqueuedMillis, final long waitMillis,
+            final boolean top) {
+        publish(top ? Kind.DEQUEUED_TOP : Kind.DEQUEUED, id, type, enqueuedMillis, waitMillis);
+    }
+
+    private void publish(final Kind kind, final long id, final WorkRequestType type, final long enqueuedMillis,
+            final long waitMillis) {
+        if(subscriptions.length == 0) {
+            return;
+        }
+
+        final int stripeIndex = (int) Thread.currentThread().getId() & stripeMask;
+        final Stripe stripe = stripes[stripeIndex];
+        final long sequence = stripe.claimed.getAndIncrement();
+        final long wrap = sequence - capacity;
+        if(wrap >= 0 && wrap >= slowest(stripeIndex)) {
+            stalls.increment();
+            while (wrap >= slowest(stripeIndex)) {
+                LockSupport.parkNanos(STALL_NANOS);
+            }
+        }
+
+        final int slot = (int) sequence & slotMask;
+        stripe.kinds[slot] = (byte) kind.ordinal();
+        stripe.ids[slot] = id;
+        stripe.types[slot] = (byte) type.ordinal();
+        stripe.enqueuedMillis[slot] = enqueuedMillis;
+        stripe.waitMillis[slot] = waitMillis;
+        stripe.published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Read after claiming, so a subscriber that took its start after the claim is always seen
+     */
+    private long slowest(final int stripeIndex) {
+        long slowest = Long.MAX_VALUE;
+        for (final Subscription subscription : subscriptions) {
+            slowest = Math.min(slowest, subscription.next.get(stripeIndex));
+        }
+        return slowest;
+    }
+
+    /**
+     * Start reading every event published from now on into the consumer on a new thread
+     * @param name of the subscription and its thread
+     * @param consumer to read into
+     * @return subscription to close once no more events are wanted
+     */
+    public Subscription subscribe(final String name, final JournalConsumer consumer) {
+        final Subscription subscription = new Subscription(name, consumer);
+        synchronized (subscriptionsLock) {
+            final Subscription[] current = subscriptions;
+            final Subscription[] added = Arrays.copyOf(current, current.length + 1);
+            added[current.length] = subscription;
+            subscriptions = added;
+        }
+        // Producers that see the subscription hold at its start of 0 until it is moved up to the current claims
+        for (int i = 0; i < stripes.length; i++) {
+            subscription.next.set(i, stripes[i].claimed.get());
+        }
+        subscription.thread.start();
+        LOG.debug("Journal subscription {} started", name);
+        return subscription;
+    }
+
+    private void unsubscribe(final Subscription subscription) {
+        synchronized (subscriptionsLock) {
+            final Subscription[] current = subscriptions;
+            final Subscription[] removed = new Subscription[current.length - 1];
+            int count = 0;
+            for (final Subscription other : current) {
+                if(other != subscription) {
+                    removed[count++] = other;
+                }
+            }
+            subscriptions = removed;
+        }
+    }
+
+    /**
+     * @return times a producer waited for a subscriber to make room
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * Close every subscription, each reading what was published before it stops
+     */
+    @Override
+    public void close() {
+        for (final Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    private static final class Stripe {
+        final AtomicLong claimed = new AtomicLong();
+        /** Sequence last published into each slot, a reader waits for its own sequence to appear */
+        final AtomicLongArray published;
+        final byte[] kinds;
+        final long[] ids;
+        final byte[] types;
+        final long[] enqueuedMillis;
+        final long[] waitMillis;
+
+        Stripe(final int capacity) {
+            published = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                published.set(i, -1);
+            }
+            kinds = new byte[capacity];
+            ids = new long[capacity];
+            types = new byte[capacity];
+            enqueuedMillis = new long[capacity];
+            waitMillis = new long[capacity];
+        }
+    }
+
+    /**
+     * One consumer reading the journal on its own daemon thread
+     */
+    public final class Subscription implements Closeable {
+
+        private final String name;
+        private final JournalConsumer consumer;
+        /** Next sequence to read in each stripe, producers may overwrite everything before it */
+        private final AtomicLongArray next = new AtomicLongArray(stripes.length);
+        private final JournalEvent event = new JournalEvent();
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private Subscription(final String name, final JournalConsumer consumer) {
+            this.name = name;
+            this.consumer = consumer;
+            thread = new Thread(this::run, "work-request-journal-" + name);
+            thread.setDaemon(true);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private void run() {
+            long idleNanos = 0;
+            try {
+                while (true) {
+                    final boolean stopping = !running;
+                    final int read = readPublished();
+                    if(read > 0) {
+                        batchEnd();
+                        idleNanos = 0;
+                    }
+                    if(stopping) {
+                        break;
+                    }
+                    if(read == 0) {
+                        idleNanos = Math.min(Math.max(idleNanos * 2, MIN_IDLE_NANOS), MAX_IDLE_NANOS);
+                        LockSupport.parkNanos(this, idleNanos);
+                    }
+                }
+            } finally {
+                unsubscribe(this);
+                try {
+                    consumer.close();
+                } catch (final RuntimeException e) {
+                    LOG.error("Journal consumer {} failed to close", name, e);
+                }
+                LOG.debug("Journal subscription {} stopped", name);
+            }
+        }
+
+        /**
+         * Read every stripe up to its first unpublished slot, at most one ring of each
+         * @return events read
+         */
+        private int readPublished() {
+            int read = 0;
+            for (int i = 0; i < stripes.length; i++) {
+                final Stripe stripe = stripes[i];
+                long sequence = next.get(i);
+                for (int inStripe = 0; inStripe < capacity; inStripe++) {
+                    final int slot = (int) sequence & slotMask;
+                    if(stripe.published.get(slot) != sequence) {
+                        break;
+                    }
+                    event.set(stripe.kinds[slot], stripe.ids[slot], stripe.types[slot], stripe.enqueuedMillis[slot],
+                        stripe.waitMillis[slot]);
+                    try {
+                        consumer.onEvent(event);
+                    } catch (final RuntimeException e) {
+                        LOG.error("Journal consumer {} failed on event {}", name, event, e);
+                    }
+                    next.lazySet(i, ++sequence);
+                    read++;
+                }
+            }
+            return read;
+        }
+
+        private void batchEnd() {
+            try {
+                consumer.onBatchEnd();
+            } catch (final RuntimeException e) {
+                LOG.error("Journal consumer {} failed to end batch", name, e);
+            }
+        }
+
+        /**
+         * Stop reading once what is already published has been read, then close the consumer. Waits for the consumer
+         * unless called from it
+         */
+        @Override
+        public void close() {
+            running = false;
+            LockSupport.unpark(thread);
+            if(Thread.currentThread() != thread) {
+                try {
+                    thread.join(TimeUnit.MINUTES.toMillis(1));
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
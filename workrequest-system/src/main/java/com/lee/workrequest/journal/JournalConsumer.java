@@ -0,0 +1,24 @@
+package com.lee.workrequest.journal;
+
+/**
+ * Reads the events of an {@link EventJournal} on its own thread, in order within each stripe of the journal
+ */
+public interface JournalConsumer {
+
+    /**
+     * @param event reused for the next event once this returns
+     */
+    void onEvent(JournalEvent event);
+
+    /**
+     * Every event published so far has been read, a chance to flush what was buffered
+     */
+    default void onBatchEnd() {
+    }
+
+    /**
+     * The subscription ended, no more events follow
+     */
+    default void close() {
+    }
+}
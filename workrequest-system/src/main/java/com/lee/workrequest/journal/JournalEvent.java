@@ -0,0 +1,88 @@
+package com.lee.workrequest.journal;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * One change read from an {@link EventJournal}. A consumer is handed the same instance for every event it reads, so it
+ * must copy out what it keeps before returning. Times are the queue's millis, local date time taken at UTC
+ */
+public final class JournalEvent {
+
+    /**
+     * What happened to the id
+     */
+    public enum Kind {
+        ENQUEUED, DEQUEUED, DEQUEUED_TOP
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final WorkRequestType[] TYPES = WorkRequestType.values();
+
+    private Kind kind;
+    private long id;
+    private WorkRequestType type;
+    private long enqueuedMillis;
+    private long waitMillis;
+
+    JournalEvent() {
+    }
+
+    void set(final byte kind, final long id, final byte type, final long enqueuedMillis, final long waitMillis) {
+        this.kind = KINDS[kind];
+        this.id = id;
+        this.type = TYPES[type];
+        this.enqueuedMillis = enqueuedMillis;
+        this.waitMillis = waitMillis;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public WorkRequestType getType() {
+        return type;
+    }
+
+    public long getEnqueuedMillis() {
+        return enqueuedMillis;
+    }
+
+    public LocalDateTime getEnqueuedTime() {
+        return toTime(enqueuedMillis);
+    }
+
+    /**
+     * @return time from enqueue to removal, 0 for an enqueue
+     */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+
+    /**
+     * @return when the change was made, the enqueue time for an enqueue and the removal time otherwise
+     */
+    public long getEventMillis() {
+        return enqueuedMillis + waitMillis;
+    }
+
+    public LocalDateTime getEventTime() {
+        return toTime(getEventMillis());
+    }
+
+    private static LocalDateTime toTime(final long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    @Override
+    public String toString() {
+        return getEventTime() + " " + kind + " " + id + " " + type + " " + getEnqueuedTime() + " " + waitMillis;
+    }
+}
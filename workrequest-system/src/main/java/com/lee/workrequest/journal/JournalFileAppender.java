@@ -0,0 +1,62 @@
+package com.lee.workrequest.journal;
+
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends one line per journal event to a text file, the audit trail of every change to the queue. Lines are buffered
+ * and written at the end of each batch. A line is the event time, kind, id, type, enqueued time and wait in
+ * milliseconds separated by spaces
+ */
+public class JournalFileAppender implements JournalConsumer {
+
+    private final Path file;
+    private final Writer writer;
+
+    /**
+     * @param file appended to, created if missing
+     * @throws WorkRequestPersistenceException if the file cannot be opened
+     */
+    public JournalFileAppender(final Path file) {
+        this.file = file;
+        try {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot open journal file " + file, e);
+        }
+    }
+
+    @Override
+    public void onEvent(final JournalEvent event) {
+        try {
+            writer.append(event.toString()).append('\n');
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot append to journal file " + file, e);
+        }
+    }
+
+    @Override
+    public void onBatchEnd() {
+        try {
+            writer.flush();
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot flush journal file " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot close journal file " + file, e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.lee.workrequest.metrics;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.lee.workrequest.queue.WindowedTimer;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Times every request to the handler methods it intercepts, one {@link WindowedTimer} per method. A request handled
+ * asynchronously is timed from its first dispatch to the end of the dispatch that writes its result
+ */
+public class EndpointMetrics extends HandlerInterceptorAdapter implements PublicMetrics, PrometheusMetrics {
+
+    private static final String PREFIX = "workrequests.http.";
+    private static final String START_ATTRIBUTE = EndpointMetrics.class.getName() + ".start";
+
+    /** Keyed by method rather than name so the lookup on each request builds nothing */
+    private final Map<Method, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Timer of one handler method, named as Controller.method. An overloaded method is named with its parameter types,
+     * as Controller.method(long), so each handler has its own timer
+     */
+    private static final class Endpoint {
+        final String name;
+        final WindowedTimer timer = new WindowedTimer();
+
+        Endpoint(final Method method) {
+            name = method.getDeclaringClass().getSimpleName() + "." + method.getName()
+                + (isOverloaded(method) ? parameterTypes(method) : "");
+        }
+
+        private static boolean isOverloaded(final Method method) {
+            for (final Method other : method.getDeclaringClass().getDeclaredMethods()) {
+                if(other.getName().equals(method.getName()) && !other.equals(method)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String parameterTypes(final Method method) {
+            final StringJoiner types = new StringJoiner(",", "(", ")");
+            for (final Class<?> type : method.getParameterTypes()) {
+                types.add(type.getSimpleName());
+            }
+            return types.toString();
+        }
+    }
+
+    @Override
+    public boolean preHandle(final HttpServletRequest request, final HttpServletResponse response, final Object handler) {
+        // Already set if this is the dispatch of an asynchronous result
+        if(request.getAttribute(START_ATTRIBUTE) == null) {
+            request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(final HttpServletRequest request, final HttpServletResponse response,
+            final Object handler, final Exception ex) {
+        final Object start = request.getAttribute(START_ATTRIBUTE);
+        if(start == null || !(handler instanceof HandlerMethod)) {
+            return;
+        }
+        final Method method = ((HandlerMethod) handler).getMethod();
+        Endpoint endpoint = endpoints.get(method);
+        if(endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(method, Endpoint::new);
+        }
+        endpoint.timer.recordSince((Long) start);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        for (final Map.Entry<String, WindowedTimer> timer : timers().entrySet()) {
+            QueueMetrics.addTimer(metrics, PREFIX + timer.getKey(), timer.getValue().snapshot());
+        }
+        return metrics;
+    }
+
+    @Override
+    public void writeTo(final PrometheusWriter writer) {
+        writer.family("workrequests_http_request_seconds", "summary", "Time to handle a request by endpoint");
+        for (final Map.Entry<String, WindowedTimer> timer : timers().entrySet()) {
+            writer.summary("workrequests_http_request_seconds", timer.getValue().snapshot(), "endpoint", timer.getKey());
+        }
+    }
+
+    /**
+     * @return timer of each endpoint requested so far, by name
+     */
+    private Map<String, WindowedTimer> timers() {
+        final Map<String, WindowedTimer> timers = new TreeMap<>();
+        for (final Endpoint endpoint : endpoints.values()) {
+            timers.put(endpoint.name, endpoint.timer);
+        }
+        return timers;
+    }
+}
@@ -0,0 +1,58 @@
+package com.lee.workrequest.metrics;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.endpoint.mvc.AbstractMvcEndpoint;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.List;
+
+/**
+ * Actuator endpoint serving every metric in the Prometheus text format so it can be scraped. {@link PrometheusMetrics}
+ * write their own families, any other {@link PublicMetrics} are written as one gauge per metric
+ */
+@ConfigurationProperties(prefix = "endpoints.prometheus")
+public class PrometheusEndpoint extends AbstractMvcEndpoint {
+
+    private final List<PublicMetrics> publicMetrics;
+    private final List<PrometheusMetrics> prometheusMetrics;
+
+    public PrometheusEndpoint(final List<PublicMetrics> publicMetrics, final List<PrometheusMetrics> prometheusMetrics) {
+        super("/prometheus", false);
+        this.publicMetrics = publicMetrics;
+        this.prometheusMetrics = prometheusMetrics;
+    }
+
+    @RequestMapping(method = RequestMethod.GET)
+    @ResponseBody
+    public ResponseEntity<String> scrape() {
+        return ResponseEntity.ok().header(HttpHeaders.CONTENT_TYPE, PrometheusWriter.CONTENT_TYPE).body(write());
+    }
+
+    /**
+     * @return text of one scrape
+     */
+    String write() {
+        final PrometheusWriter writer = new PrometheusWriter();
+        for (final PrometheusMetrics metrics : prometheusMetrics) {
+            metrics.writeTo(writer);
+        }
+        for (final PublicMetrics metrics : publicMetrics) {
+            if(metrics instanceof PrometheusMetrics) {
+                continue;
+            }
+            for (final Metric<?> metric : metrics.metrics()) {
+                final String name = PrometheusWriter.sanitize(metric.getName());
+                if(writer.family(name, "gauge", metric.getName())) {
+                    writer.sample(name, metric.getValue());
+                }
+            }
+        }
+        return writer.toString();
+    }
+}
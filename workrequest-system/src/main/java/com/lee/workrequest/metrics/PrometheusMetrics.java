@@ -0,0 +1,12 @@
+package com.lee.workrequest.metrics;
+
+/**
+ * Metrics that write themselves to a Prometheus scrape, with labels and summaries rather than one gauge per name
+ */
+public interface PrometheusMetrics {
+
+    /**
+     * @param writer to write every family and its samples to
+     */
+    void writeTo(PrometheusWriter writer);
+}
@@ -0,0 +1,108 @@
+package com.lee.workrequest.metrics;
+
+import com.lee.workrequest.queue.WindowedTimer;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds a scrape in the Prometheus text exposition format, version 0.0.4. Each metric family is introduced once with
+ * its help and type and followed by its samples, labels are given as name and value pairs
+ */
+public class PrometheusWriter {
+
+    /** Content type of the text the writer builds */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final StringBuilder text = new StringBuilder();
+    private final Set<String> families = new HashSet<>();
+
+    /**
+     * Introduce a metric family
+     * @param name of the family, see {@link #sanitize(String)}
+     * @param type gauge, counter or summary
+     * @param help one line description
+     * @return false if a family of that name was already written, its samples should then be left out
+     */
+    public boolean family(final String name, final String type, final String help) {
+        if(!families.add(name)) {
+            return false;
+        }
+        text.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n"))
+            .append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return true;
+    }
+
+    /**
+     * Write one sample
+     * @param name of the sample
+     * @param value of the sample
+     * @param labels label names each followed by its value
+     */
+    public void sample(final String name, final Number value, final String... labels) {
+        text.append(name);
+        if(labels.length > 0) {
+            text.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if(i > 0) {
+                    text.append(',');
+                }
+                text.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * Write the samples of a summary: its quantiles over the timer's window and its count and sum since creation
+     * @param name of the summary family
+     * @param snapshot of the timer
+     * @param labels label names each followed by its value
+     */
+    public void summary(final String name, final WindowedTimer.Snapshot snapshot, final String... labels) {
+        final String[] quantileLabels = new String[labels.length + 2];
+        System.arraycopy(labels, 0, quantileLabels, 0, labels.length);
+        quantileLabels[labels.length] = "quantile";
+        for (final double quantile : QUANTILES) {
+            quantileLabels[labels.length + 1] = Double.toString(quantile);
+            sample(name, snapshot.getSeconds(quantile), quantileLabels);
+        }
+        sample(name + "_count", snapshot.getCount(), labels);
+        sample(name + "_sum", snapshot.getTotalSeconds(), labels);
+    }
+
+    /**
+     * Turn a dotted metric name into a valid Prometheus name
+     * @param name such as mem.free
+     * @return name with every character Prometheus does not allow replaced by an underscore
+     */
+    public static String sanitize(final String name) {
+        final String sanitized = name.replaceAll("[^a-zA-Z0-9_:]", "_");
+        return Character.isDigit(sanitized.charAt(0)) ? "_" + sanitized : sanitized;
+    }
+
+    private static String format(final Number value) {
+        if(value instanceof Double || value instanceof Float) {
+            final double doubleValue = value.doubleValue();
+            if(Double.isNaN(doubleValue)) {
+                return "NaN";
+            }
+            if(Double.isInfinite(doubleValue)) {
+                return doubleValue > 0 ? "+Inf" : "-Inf";
+            }
+            return Double.toString(doubleValue);
+        }
+        return value.toString();
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
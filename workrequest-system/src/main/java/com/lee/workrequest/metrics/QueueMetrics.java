@@ -0,0 +1,80 @@
+package com.lee.workrequest.metrics;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.QueueStatistics;
+import com.lee.workrequest.queue.WindowedTimer;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Publishes the depth of each class of the {@link WorkRequestQueue}, what it has enqueued, dequeued and rejected, how
+ * long it takes to rank and how long removed work requests waited
+ */
+public class QueueMetrics implements PublicMetrics, PrometheusMetrics {
+
+    private static final String PREFIX = "workrequests.queue.";
+
+    private final WorkRequestQueue workRequestQueue;
+
+    public QueueMetrics(final WorkRequestQueue workRequestQueue) {
+        this.workRequestQueue = workRequestQueue;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final QueueStatistics statistics = workRequestQueue.getStatistics();
+        final List<Metric<?>> metrics = new ArrayList<>();
+        for (final WorkRequestType type : WorkRequestType.values()) {
+            metrics.add(new Metric<>(PREFIX + "depth." + type.name().toLowerCase(Locale.ROOT), workRequestQueue.size(type)));
+        }
+        metrics.add(new Metric<>(PREFIX + "enqueued", statistics.getEnqueued()));
+        metrics.add(new Metric<>(PREFIX + "dequeued", statistics.getDequeued()));
+        metrics.add(new Metric<>(PREFIX + "rejected.duplicate", statistics.getDuplicates()));
+        metrics.add(new Metric<>(PREFIX + "rejected.empty", statistics.getEmptyDequeues()));
+        addTimer(metrics, PREFIX + "sort", statistics.getSortTimer().snapshot());
+        addTimer(metrics, PREFIX + "rank", statistics.getRankTimer().snapshot());
+        addTimer(metrics, PREFIX + "wait", statistics.getWaitTimer().snapshot());
+        return metrics;
+    }
+
+    @Override
+    public void writeTo(final PrometheusWriter writer) {
+        final QueueStatistics statistics = workRequestQueue.getStatistics();
+        writer.family("workrequests_queue_depth", "gauge", "Work requests waiting in the queue by class");
+        for (final WorkRequestType type : WorkRequestType.values()) {
+            writer.sample("workrequests_queue_depth", workRequestQueue.size(type), "class", type.name());
+        }
+        writer.family("workrequests_enqueued_total", "counter", "Work requests added to the queue");
+        writer.sample("workrequests_enqueued_total", statistics.getEnqueued());
+        writer.family("workrequests_dequeued_total", "counter", "Work requests removed from the queue");
+        writer.sample("workrequests_dequeued_total", statistics.getDequeued());
+        writer.family("workrequests_rejected_total", "counter", "Queue operations rejected by reason");
+        writer.sample("workrequests_rejected_total", statistics.getDuplicates(), "reason", "duplicate");
+        writer.sample("workrequests_rejected_total", statistics.getEmptyDequeues(), "reason", "empty");
+        writer.family("workrequests_queue_sort_seconds", "summary", "Time to rank and merge the queue or a page of it");
+        writer.summary("workrequests_queue_sort_seconds", statistics.getSortTimer().snapshot());
+        writer.family("workrequests_queue_rank_seconds", "summary", "Time to find the position of an id or batch of ids");
+        writer.summary("workrequests_queue_rank_seconds", statistics.getRankTimer().snapshot());
+        writer.family("workrequests_wait_seconds", "summary", "Time from enqueue to removal by class");
+        for (final WorkRequestType type : WorkRequestType.values()) {
+            writer.summary("workrequests_wait_seconds", statistics.getWaitTimer(type).snapshot(), "class", type.name());
+        }
+    }
+
+    /**
+     * Add the count and window percentiles of a timer, in milliseconds like the response gauges of the actuator
+     */
+    static void addTimer(final List<Metric<?>> metrics, final String name, final WindowedTimer.Snapshot snapshot) {
+        metrics.add(new Metric<>(name + ".count", snapshot.getCount()));
+        metrics.add(new Metric<>(name + ".millis.p50", snapshot.getSeconds(0.5) * 1000));
+        metrics.add(new Metric<>(name + ".millis.p99", snapshot.getSeconds(0.99) * 1000));
+        metrics.add(new Metric<>(name + ".millis.max", snapshot.getMaxSeconds() * 1000));
+    }
+}
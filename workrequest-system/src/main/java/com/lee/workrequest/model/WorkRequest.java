@@ -9,4 +9,6 @@ public interface WorkRequest extends Comparable<WorkRequest> {
     LocalDateTime getEnqueuedTime();
 
     double calculateRank();
+
+    WorkRequestType getType();
 }
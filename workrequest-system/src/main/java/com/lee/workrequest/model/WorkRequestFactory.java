@@ -3,6 +3,7 @@ package com.lee.workrequest.model;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 
 /**
@@ -12,13 +13,26 @@ public class WorkRequestFactory {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkRequestFactory.class);
 
+    private final Clock clock;
+
+    public WorkRequestFactory() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock used for the current time when no enqueued time is supplied
+     */
+    public WorkRequestFactory(final Clock clock) {
+        this.clock = clock;
+    }
+
     /**
      * Create a concrete type of {@link WorkRequest} based on id using the current time
      * @param id Requester id
      * @return
      */
     public WorkRequest getWorkRequest(final long id) {
-        return getWorkRequest(id, LocalDateTime.now());
+        return getWorkRequest(id, LocalDateTime.now(clock));
     }
 
     /**
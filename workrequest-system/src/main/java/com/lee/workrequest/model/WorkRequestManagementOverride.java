@@ -14,12 +14,17 @@ public class WorkRequestManagementOverride extends WorkRequestNormal {
     @Override
     public int compareTo(WorkRequest wr) {
         if(wr instanceof WorkRequestManagementOverride){
-            return (int) (wr.calculateRank() - calculateRank());
+            return compareRank(wr);
         }
 
         return -1;
     }
 
+    @Override
+    public WorkRequestType getType() {
+        return WorkRequestType.MANAGEMENT_OVERRIDE;
+    }
+
     @Override
     public String toString() {
         return "WorkRequestManagementOverride [id=" + id + ", enqueuedTime=" + enqueuedTime + "]";
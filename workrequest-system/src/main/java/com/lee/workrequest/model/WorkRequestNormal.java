@@ -36,7 +36,22 @@ public class WorkRequestNormal implements WorkRequest {
         if(wr instanceof WorkRequestManagementOverride){
             return 1;
         }
-        return (int) (wr.calculateRank() - calculateRank());
+        return compareRank(wr);
+    }
+
+    /**
+     * Highest rank first, then earliest enqueued, then lowest id so the ordering is total
+     * @param wr {@link WorkRequest} to compare to
+     * @return negative if this is ranked ahead of wr
+     */
+    protected int compareRank(final WorkRequest wr) {
+        final int rankComparison = Double.compare(wr.calculateRank(), calculateRank());
+        if(rankComparison != 0) {
+            return rankComparison;
+        }
+
+        final int timeComparison = enqueuedTime.compareTo(wr.getEnqueuedTime());
+        return timeComparison != 0 ? timeComparison : Long.compare(id, wr.getId());
     }
 
     @Override
@@ -59,6 +74,11 @@ public class WorkRequestNormal implements WorkRequest {
         return wr.getId() == id;
     }
 
+    @Override
+    public WorkRequestType getType() {
+        return WorkRequestType.NORMAL;
+    }
+
     @Override
     public String toString() {
         return "WorkRequestNormal [id=" + id + ", enqueuedTime=" + enqueuedTime + "]";
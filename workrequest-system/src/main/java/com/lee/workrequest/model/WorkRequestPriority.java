@@ -13,10 +13,23 @@ public class WorkRequestPriority extends WorkRequestNormal {
 
     @Override
     public double calculateRank() {
-        final double durationInQueue = super.calculateRank();
+        return rankForDuration(super.calculateRank());
+    }
+
+    /**
+     * Rank of a Priority {@link WorkRequest} that has been in the queue for the supplied duration
+     * @param durationInQueue seconds in queue
+     * @return rank
+     */
+    static double rankForDuration(final double durationInQueue) {
         return durationInQueue > 0 ? Math.max(3, durationInQueue * Math.log(durationInQueue)) : 3;
     }
 
+    @Override
+    public WorkRequestType getType() {
+        return WorkRequestType.PRIORITY;
+    }
+
     @Override
     public String toString() {
         return "WorkRequestPriority [id=" + id + ", enqueuedTime=" + enqueuedTime + "]";
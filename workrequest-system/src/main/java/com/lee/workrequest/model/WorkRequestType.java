@@ -0,0 +1,54 @@
+package com.lee.workrequest.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Priority classes of {@link WorkRequest}, declared in order of precedence
+ */
+public enum WorkRequestType {
+    MANAGEMENT_OVERRIDE, VIP, PRIORITY, NORMAL;
+
+    /**
+     * Rank of a {@link WorkRequest} of this type that has been in the queue for the supplied duration, matches
+     * {@link WorkRequest#calculateRank()}
+     * @param durationInQueue whole seconds in queue
+     * @return rank
+     */
+    public double rank(final long durationInQueue) {
+        switch (this) {
+        case VIP:
+            return WorkRequestVIP.rankForDuration(durationInQueue);
+        case PRIORITY:
+            return WorkRequestPriority.rankForDuration(durationInQueue);
+        default:
+            return durationInQueue;
+        }
+    }
+
+    /**
+     * Create the concrete {@link WorkRequest} of this type
+     * @param id Requester id
+     * @param enqueuedTime time {@link WorkRequest} was enqueued
+     * @return new {@link WorkRequest}
+     */
+    public WorkRequest newWorkRequest(final long id, final LocalDateTime enqueuedTime) {
+        switch (this) {
+        case MANAGEMENT_OVERRIDE:
+            return new WorkRequestManagementOverride(id, enqueuedTime);
+        case VIP:
+            return new WorkRequestVIP(id, enqueuedTime);
+        case PRIORITY:
+            return new WorkRequestPriority(id, enqueuedTime);
+        default:
+            return new WorkRequestNormal(id, enqueuedTime);
+        }
+    }
+
+    /**
+     * Management Override always ranks ahead of every other type regardless of rank
+     * @return true if this type ranks ahead of other types regardless of rank
+     */
+    public boolean isOverride() {
+        return this == MANAGEMENT_OVERRIDE;
+    }
+}
@@ -13,10 +13,23 @@ public class WorkRequestVIP extends WorkRequestNormal {
 
     @Override
     public double calculateRank() {
-        final double durationInQueue = super.calculateRank();
+        return rankForDuration(super.calculateRank());
+    }
+
+    /**
+     * Rank of a VIP {@link WorkRequest} that has been in the queue for the supplied duration
+     * @param durationInQueue seconds in queue
+     * @return rank
+     */
+    static double rankForDuration(final double durationInQueue) {
         return durationInQueue > 0 ? Math.max(4, 2 * durationInQueue * Math.log(durationInQueue)) : 4;
     }
 
+    @Override
+    public WorkRequestType getType() {
+        return WorkRequestType.VIP;
+    }
+
     @Override
     public String toString() {
         return "WorkRequestVIP [id=" + id + ", enqueuedTime=" + enqueuedTime + "]";
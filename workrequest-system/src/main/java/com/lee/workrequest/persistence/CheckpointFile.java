@@ -0,0 +1,160 @@
+package com.lee.workrequest.persistence;
+
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.QueueLog;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed width binary copy of a {@link WorkRequestQueue}. A header holds the log generation to replay from, the number
+ * of entries of each type and the CRC32 of the records. Records follow in one section per type in ordinal order, each
+ * section in (time, id) order, so a record is just the id and enqueued epoch millis as longs and the type is given by
+ * its section. Loading maps each section and hands it to the queue whole so its index is built in one pass
+ */
+final class CheckpointFile {
+
+    private static final int MAGIC = 0x57524350;
+    private static final int VERSION = 1;
+    /** Magic, version, replay generation, type count, count per type and CRC, padded */
+    private static final int HEADER_LENGTH = 64;
+    private static final int RECORD_LENGTH = 16;
+    private static final int BUFFER_CAPACITY = 1024 * 1024;
+
+    private static final WorkRequestType[] TYPES = WorkRequestType.values();
+
+    private CheckpointFile() {
+    }
+
+    /**
+     * Copy the queue into the file and force it to disk
+     * @param queue to copy
+     * @param file to write, replaced if it exists
+     * @return generation of the log to replay from after loading the file
+     */
+    static long write(final WorkRequestQueue queue, final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_CAPACITY);
+            final CRC32 crc = new CRC32();
+            final long[] counts = new long[TYPES.length];
+            channel.position(HEADER_LENGTH);
+
+            final long replayFrom;
+            try {
+                replayFrom = queue.checkpoint((type, times, ids, count) -> {
+                    counts[type.ordinal()] += count;
+                    for (int i = 0; i < count; i++) {
+                        if(buffer.remaining() < RECORD_LENGTH) {
+                            flush(channel, buffer, crc);
+                        }
+                        buffer.putLong(ids[i]).putLong(times[i]);
+                    }
+                });
+                flush(channel, buffer, crc);
+            } catch (final UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(replayFrom).putInt(TYPES.length);
+            for (final long count : counts) {
+                buffer.putLong(count);
+            }
+            buffer.putInt((int) crc.getValue()).flip();
+            for (long position = 0; buffer.hasRemaining(); ) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+            return replayFrom;
+        }
+    }
+
+    /**
+     * Hand every section of the file to the target
+     * @param file to load
+     * @param target to load into
+     * @return generation of the log to replay from
+     * @throws WorkRequestPersistenceException if the file is not a complete checkpoint
+     */
+    static long load(final Path file, final QueueLog.Target target) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            for (long position = 0; header.hasRemaining(); ) {
+                final int read = channel.read(header, position);
+                if(read == -1) {
+                    break;
+                }
+                position += read;
+            }
+            header.flip();
+            if(header.remaining() < HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new WorkRequestPersistenceException("not a checkpoint " + file, null);
+            }
+            final long replayFrom = header.getLong();
+            if(header.getInt() != TYPES.length) {
+                throw new WorkRequestPersistenceException("checkpoint " + file + " has a different set of types", null);
+            }
+            final long[] counts = new long[TYPES.length];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = header.getLong();
+                total += counts[i];
+            }
+            final int checksum = header.getInt();
+            if(channel.size() != HEADER_LENGTH + total * RECORD_LENGTH) {
+                throw new WorkRequestPersistenceException("checkpoint " + file + " is not the length its header gives",
+                    null);
+            }
+
+            // Check the whole file before loading any of it so a bad checkpoint leaves the queue untouched
+            final MappedByteBuffer[] sections = new MappedByteBuffer[TYPES.length];
+            final CRC32 crc = new CRC32();
+            long position = HEADER_LENGTH;
+            for (int i = 0; i < sections.length; i++) {
+                sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, counts[i] * RECORD_LENGTH);
+                crc.update(sections[i]);
+                sections[i].rewind();
+                position += counts[i] * RECORD_LENGTH;
+            }
+            if((int) crc.getValue() != checksum) {
+                throw new WorkRequestPersistenceException("checkpoint " + file + " fails its check", null);
+            }
+
+            for (final WorkRequestType type : TYPES) {
+                final LongBuffer records = sections[type.ordinal()].asLongBuffer();
+                final int count = (int) counts[type.ordinal()];
+                final long[] times = new long[count];
+                final long[] ids = new long[count];
+                for (int i = 0; i < count; i++) {
+                    ids[i] = records.get(2 * i);
+                    times[i] = records.get(2 * i + 1);
+                }
+                target.loaded(type, times, ids, count);
+            }
+            return replayFrom;
+        }
+    }
+
+    private static void flush(final FileChannel channel, final ByteBuffer buffer, final CRC32 crc) {
+        buffer.flip();
+        crc.update(buffer);
+        buffer.rewind();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,61 @@
+package com.lee.workrequest.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lee.workrequest.queue.QueueLog;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checkpoints the {@link WorkRequestQueue} into its {@link QueueLog} on a fixed interval from a single background
+ * thread, so a restart only replays the log written since the last checkpoint
+ */
+public class QueueCheckpointer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueCheckpointer.class);
+
+    private final WorkRequestQueue workRequestQueue;
+    private final QueueLog log;
+    private final ScheduledExecutorService checkpointer;
+
+    /**
+     * @param workRequestQueue queue to checkpoint
+     * @param log to checkpoint into
+     * @param intervalSeconds seconds between the end of one checkpoint and the start of the next
+     */
+    public QueueCheckpointer(final WorkRequestQueue workRequestQueue, final QueueLog log, final long intervalSeconds) {
+        this.workRequestQueue = workRequestQueue;
+        this.log = log;
+        checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "work-request-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(this::checkpoint, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop checkpointing, waiting for one in progress to finish so it is not left half written
+     */
+    public void shutdown() {
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkpoint() {
+        try {
+            log.checkpoint(workRequestQueue);
+        } catch (final RuntimeException e) {
+            // An exception would cancel the schedule, the log is kept whole until a later checkpoint succeeds
+            LOG.error("Checkpoint failed", e);
+        }
+    }
+}
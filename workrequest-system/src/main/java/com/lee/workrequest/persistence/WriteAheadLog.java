@@ -0,0 +1,491 @@
+package com.lee.workrequest.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.QueueLog;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@link QueueLog} kept as segment files in one directory. Appends go to a buffer in memory and a single writer thread
+ * writes everything buffered since its last write as one frame then forces it to disk, so all the changes made while
+ * one force is in progress share the next. Each run appends to a new segment and replays the older ones.
+ * <p>
+ * A frame is the payload length and the CRC32 of the payload, both ints, followed by the records. A frame that is cut
+ * short or fails its check ends the segment, it was never acknowledged.
+ * <p>
+ * A checkpoint starts a new segment then writes a {@link CheckpointFile} named for it. Once the checkpoint is durable
+ * the segments before it are deleted, and replay loads the latest checkpoint then only the segments from its own
+ */
+public class WriteAheadLog implements QueueLog, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".dat";
+    private static final String CHECKPOINT_TEMPORARY = "checkpoint.tmp";
+
+    private static final byte ENQUEUE = 1;
+    private static final byte REMOVE = 2;
+    /** Tag, id, type ordinal and enqueued millis */
+    private static final int ENQUEUE_LENGTH = 1 + 8 + 1 + 8;
+    /** Tag and id */
+    private static final int REMOVE_LENGTH = 1 + 8;
+    private static final int FRAME_HEADER_LENGTH = 8;
+    private static final int INITIAL_BUFFER_CAPACITY = 64 * 1024;
+
+    private static final WorkRequestType[] TYPES = WorkRequestType.values();
+
+    private final Path directory;
+    /** Generation opened by this run, those before it are replayed */
+    private final long openedGeneration;
+    private final Thread writer;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition appended = appendLock.newCondition();
+    /** Records appended since the writer last took the buffer, guarded by the append lock */
+    private ByteBuffer filling = ByteBuffer.allocateDirect(INITIAL_BUFFER_CAPACITY);
+    private long appendedSequence;
+    /** Generation appends are going to once the writer reaches them */
+    private long appendGeneration;
+    /** Position in the buffer where records start going to the next segment, -1 if no roll is waiting */
+    private int rollOffset = -1;
+    private boolean closed;
+
+    /** Only used by the writer thread, then by close once it has finished */
+    private FileChannel channel;
+    private long channelGeneration;
+    private ByteBuffer writing = ByteBuffer.allocateDirect(INITIAL_BUFFER_CAPACITY);
+    private final ByteBuffer header = ByteBuffer.allocateDirect(FRAME_HEADER_LENGTH);
+    private final CRC32 crc = new CRC32();
+
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durable = durableLock.newCondition();
+    private volatile long durableSequence;
+    private volatile long forces;
+    private volatile IOException failure;
+
+    /**
+     * Open a new segment after any already in the directory and start the writer
+     * @param directory holding the segments, created if missing
+     * @throws WorkRequestPersistenceException if the segment cannot be created
+     */
+    public WriteAheadLog(final Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            Files.deleteIfExists(directory.resolve(CHECKPOINT_TEMPORARY));
+            final List<Long> segments = generations(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            final List<Long> checkpoints = generations(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+            openedGeneration = Math.max(last(segments), last(checkpoints)) + 1;
+            appendGeneration = openedGeneration;
+            channelGeneration = openedGeneration;
+            channel = FileChannel.open(segment(openedGeneration), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+            forceDirectory();
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot open segment in " + directory, e);
+        }
+
+        writer = new Thread(this::write, "work-request-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        LOG.info("Appending to log segment {} in {}", openedGeneration, directory);
+    }
+
+    /**
+     * Load the latest checkpoint then replay the segments from its generation up to the one opened by this run. Empty
+     * segments are deleted
+     * @throws WorkRequestPersistenceException if the checkpoint is damaged, or a segment cannot be read or holds an
+     * unknown record
+     */
+    @Override
+    public void replay(final Target target) {
+        try {
+            long replayFrom = 0;
+            final List<Long> checkpoints = generations(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+            if(!checkpoints.isEmpty()) {
+                final long started = System.nanoTime();
+                replayFrom = CheckpointFile.load(checkpoint(last(checkpoints)), target);
+                LOG.info("Loaded checkpoint {} in {} ms", last(checkpoints),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+            for (final long older : generations(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if(older >= replayFrom && older < openedGeneration) {
+                    replaySegment(segment(older), target);
+                }
+            }
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot replay segments in " + directory, e);
+        }
+    }
+
+    @Override
+    public long appendEnqueue(final long id, final WorkRequestType type, final long enqueuedMillis) {
+        appendLock.lock();
+        try {
+            reserve(ENQUEUE_LENGTH).put(ENQUEUE).putLong(id).put((byte) type.ordinal()).putLong(enqueuedMillis);
+            return appended();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public long appendRemove(final long id) {
+        appendLock.lock();
+        try {
+            reserve(REMOVE_LENGTH).put(REMOVE).putLong(id);
+            return appended();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @throws WorkRequestPersistenceException if the log failed before the record was durable
+     */
+    @Override
+    public void awaitDurable(final long sequence) {
+        if(durableSequence >= sequence) {
+            return;
+        }
+
+        durableLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if(failure != null) {
+                    throw new WorkRequestPersistenceException("record " + sequence + " not written", failure);
+                }
+                durable.awaitUninterruptibly();
+            }
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    /**
+     * Records appended after the roll go to the next segment once the writer reaches them. A roll the writer has not
+     * reached yet is shared, replaying from its earlier point is still correct
+     */
+    @Override
+    public long roll() {
+        appendLock.lock();
+        try {
+            if(rollOffset == -1) {
+                rollOffset = filling.position();
+                appendGeneration++;
+                appended.signal();
+            }
+            return appendGeneration;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Write the checkpoint under a temporary name, force it and rename it, then delete the segments and checkpoints it
+     * replaces. The queue carries on changing throughout
+     * @throws WorkRequestPersistenceException if the checkpoint cannot be written, the log is left as it was
+     */
+    @Override
+    public void checkpoint(final WorkRequestQueue queue) {
+        final long started = System.nanoTime();
+        final long replayFrom;
+        try {
+            final Path temporary = directory.resolve(CHECKPOINT_TEMPORARY);
+            replayFrom = CheckpointFile.write(queue, temporary);
+            Files.move(temporary, checkpoint(replayFrom), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+            forceDirectory();
+        } catch (final IOException e) {
+            throw new WorkRequestPersistenceException("cannot write checkpoint in " + directory, e);
+        }
+
+        try {
+            for (final long older : generations(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if(older < replayFrom) {
+                    Files.delete(segment(older));
+                }
+            }
+            for (final long older : generations(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX)) {
+                if(older < replayFrom) {
+                    Files.delete(checkpoint(older));
+                }
+            }
+        } catch (final IOException e) {
+            LOG.warn("Cannot delete files replaced by checkpoint {} in {}", replayFrom, directory, e);
+        }
+        LOG.info("Wrote checkpoint {} in {} ms", replayFrom, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * @return number of forces to disk, each making every record appended before it durable
+     */
+    public long getForces() {
+        return forces;
+    }
+
+    /**
+     * Write anything still buffered then close the segment, later appends fail
+     */
+    @Override
+    public void close() {
+        appendLock.lock();
+        try {
+            closed = true;
+            appended.signal();
+        } finally {
+            appendLock.unlock();
+        }
+
+        try {
+            writer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            LOG.warn("Closing log segment {} failed", channelGeneration, e);
+        }
+    }
+
+    private ByteBuffer reserve(final int length) {
+        if(closed || failure != null) {
+            throw new WorkRequestPersistenceException("log is closed", failure);
+        }
+        if(filling.remaining() < length) {
+            final ByteBuffer grown = ByteBuffer.allocateDirect(filling.capacity() * 2);
+            filling.flip();
+            grown.put(filling);
+            filling = grown;
+        }
+        return filling;
+    }
+
+    private long appended() {
+        appended.signal();
+        return ++appendedSequence;
+    }
+
+    private void write() {
+        while (true) {
+            final long lastSequence;
+            final int roll;
+            final long nextGeneration;
+            appendLock.lock();
+            try {
+                while (filling.position() == 0 && rollOffset == -1 && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if(filling.position() == 0 && rollOffset == -1) {
+                    return;
+                }
+
+                // Swap so appends carry on into the other buffer while this one is written
+                final ByteBuffer full = filling;
+                filling = writing;
+                writing = full;
+                lastSequence = appendedSequence;
+                roll = rollOffset;
+                rollOffset = -1;
+                nextGeneration = appendGeneration;
+            } finally {
+                appendLock.unlock();
+            }
+
+            try {
+                final int end = writing.position();
+                if(roll == -1) {
+                    writeFrame(0, end);
+                } else {
+                    writeFrame(0, roll);
+                    channel.close();
+                    channel = FileChannel.open(segment(nextGeneration), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+                    channelGeneration = nextGeneration;
+                    forceDirectory();
+                    writeFrame(roll, end);
+                }
+            } catch (final IOException e) {
+                LOG.error("Writing log segment {} failed, no further changes can be made durable", channelGeneration, e);
+                publishFailure(e);
+                return;
+            }
+            writing.clear();
+            publishDurable(lastSequence);
+        }
+    }
+
+    /**
+     * Write the records between the offsets of the buffer being written as one frame and force it, if there are any
+     */
+    private void writeFrame(final int from, final int to) throws IOException {
+        if(from == to) {
+            return;
+        }
+        final ByteBuffer payload = writing.duplicate();
+        payload.limit(to);
+        payload.position(from);
+        crc.reset();
+        crc.update(payload);
+        payload.position(from);
+
+        header.clear();
+        header.putInt(payload.remaining()).putInt((int) crc.getValue()).flip();
+        final ByteBuffer[] frame = {header, payload};
+        while (payload.hasRemaining()) {
+            channel.write(frame);
+        }
+        channel.force(false);
+        forces++;
+    }
+
+    private void publishDurable(final long sequence) {
+        durableLock.lock();
+        try {
+            durableSequence = sequence;
+            durable.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private void publishFailure(final IOException e) {
+        durableLock.lock();
+        try {
+            failure = e;
+            durable.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    private void replaySegment(final Path segment, final Target target) throws IOException {
+        final long size = Files.size(segment);
+        if(size == 0) {
+            Files.delete(segment);
+            return;
+        }
+
+        long frames = 0;
+        long offset = 0;
+        byte[] payload = new byte[INITIAL_BUFFER_CAPACITY];
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment),
+                INITIAL_BUFFER_CAPACITY))) {
+            while (true) {
+                final int length;
+                final int checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if(length < 0) {
+                        LOG.warn("Log segment {} has a bad frame at offset {}, ignoring the rest", segment, offset);
+                        break;
+                    }
+                    if(length > payload.length) {
+                        payload = new byte[Math.max(length, payload.length * 2)];
+                    }
+                    in.readFully(payload, 0, length);
+                } catch (final EOFException e) {
+                    if(offset != size) {
+                        LOG.warn("Log segment {} ends part way through a frame at offset {}, ignoring it", segment, offset);
+                    }
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload, 0, length);
+                if((int) crc.getValue() != checksum) {
+                    LOG.warn("Log segment {} has a frame failing its check at offset {}, ignoring the rest", segment, offset);
+                    break;
+                }
+
+                replayFrame(ByteBuffer.wrap(payload, 0, length), segment, target);
+                offset += FRAME_HEADER_LENGTH + length;
+                frames++;
+            }
+        }
+        LOG.info("Replayed {} frames from log segment {}", frames, segment);
+    }
+
+    private static void replayFrame(final ByteBuffer payload, final Path segment, final Target target) {
+        while (payload.hasRemaining()) {
+            final byte tag = payload.get();
+            final long id = payload.getLong();
+            if(tag == ENQUEUE) {
+                final WorkRequestType type = TYPES[payload.get()];
+                target.enqueued(id, type, payload.getLong());
+            } else if(tag == REMOVE) {
+                target.removed(id);
+            } else {
+                throw new WorkRequestPersistenceException("unknown record " + tag + " in " + segment, null);
+            }
+        }
+    }
+
+    private Path segment(final long segmentGeneration) {
+        return directory.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, segmentGeneration, SEGMENT_SUFFIX));
+    }
+
+    private Path checkpoint(final long checkpointGeneration) {
+        return directory.resolve(String.format("%s%016x%s", CHECKPOINT_PREFIX, checkpointGeneration, CHECKPOINT_SUFFIX));
+    }
+
+    /**
+     * @return generations of the files in the directory with the prefix and suffix, oldest first
+     */
+    private static List<Long> generations(final Path directory, final String prefix, final String suffix)
+            throws IOException {
+        final List<Long> generations = new ArrayList<>();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                generations.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()), 16));
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    private static long last(final List<Long> generations) {
+        return generations.isEmpty() ? 0 : generations.get(generations.size() - 1);
+    }
+
+    /**
+     * Make the new segment's directory entry durable, otherwise a crash could lose the whole segment. Not every
+     * platform can open a directory so failure is only logged
+     */
+    private void forceDirectory() {
+        try (final FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (final IOException e) {
+            LOG.debug("Cannot force directory {}", directory, e);
+        }
+    }
+}
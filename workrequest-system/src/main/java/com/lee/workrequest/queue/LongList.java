@@ -0,0 +1,83 @@
+package com.lee.workrequest.queue;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of primitive longs. Values are held unboxed, the {@link java.util.List} view boxes only when read through it
+ */
+public class LongList extends AbstractList<Long> implements RandomAccess {
+
+    private long[] values;
+    private int size;
+
+    public LongList() {
+        this(10);
+    }
+
+    public LongList(final int capacity) {
+        values = new long[capacity];
+    }
+
+    /**
+     * Wrap the supplied array without copying
+     * @param values to use as the list contents
+     */
+    public LongList(final long[] values) {
+        this.values = values;
+        this.size = values.length;
+    }
+
+    /**
+     * @param index of value
+     * @return value at index without boxing
+     */
+    public long getLong(final int index) {
+        if(index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    @Override
+    public Long get(final int index) {
+        return getLong(index);
+    }
+
+    /**
+     * Append a value without boxing
+     * @param value to append
+     */
+    public void addLong(final long value) {
+        if(size == values.length) {
+            values = Arrays.copyOf(values, Math.max(size * 2, 10));
+        }
+        values[size++] = value;
+    }
+
+    @Override
+    public boolean add(final Long value) {
+        addLong(value);
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return backing array, only the first {@link #size()} values are in the list
+     */
+    public long[] rawArray() {
+        return values;
+    }
+
+    /**
+     * @return copy of the values
+     */
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,369 @@
+package com.lee.workrequest.queue;
+
+import java.util.Arrays;
+
+/**
+ * Balanced binary search tree (treap) of (enqueued time, id) keys augmented with subtree sizes so the number of keys
+ * before a point can be counted in logarithmic time. Nodes are held in parallel arrays rather than objects.
+ * Not thread safe, callers must guard access
+ */
+class OrderStatisticTree {
+
+    /**
+     * Tests a key, used to count the prefix of keys in order for which it holds
+     */
+    interface KeyPredicate {
+        boolean test(long time, long id);
+    }
+
+    static final int NIL = 0;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] left = new int[INITIAL_CAPACITY];
+    private int[] right = new int[INITIAL_CAPACITY];
+    private int[] sizes = new int[INITIAL_CAPACITY];
+    private int[] priorities = new int[INITIAL_CAPACITY];
+
+    private int root = NIL;
+    private int nextUnused = 1;
+    private int freeList = NIL;
+    private int seed = 0x2545F491;
+
+    /**
+     * @return number of keys in the tree
+     */
+    int size() {
+        return sizes[root];
+    }
+
+    boolean isEmpty() {
+        return root == NIL;
+    }
+
+    /**
+     * @return node holding the lowest key or {@link #NIL} if empty
+     */
+    int first() {
+        int node = root;
+        if(node == NIL) {
+            return NIL;
+        }
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return node;
+    }
+
+    /**
+     * @return node holding the highest key or {@link #NIL} if empty
+     */
+    int last() {
+        int node = root;
+        if(node == NIL) {
+            return NIL;
+        }
+        while (right[node] != NIL) {
+            node = right[node];
+        }
+        return node;
+    }
+
+    long time(final int node) {
+        return times[node];
+    }
+
+    long id(final int node) {
+        return ids[node];
+    }
+
+    boolean contains(final long time, final long id) {
+        int node = root;
+        while (node != NIL) {
+            final int comparison = compare(time, id, node);
+            if(comparison == 0) {
+                return true;
+            }
+            node = comparison < 0 ? left[node] : right[node];
+        }
+        return false;
+    }
+
+    /**
+     * Add key to the tree
+     * @return true if added, false if the key was already present
+     */
+    boolean insert(final long time, final long id) {
+        if(contains(time, id)) {
+            return false;
+        }
+        root = insert(root, time, id, allocate(time, id));
+        return true;
+    }
+
+    /**
+     * Remove key from the tree
+     * @return true if removed, false if the key was not present
+     */
+    boolean remove(final long time, final long id) {
+        if(!contains(time, id)) {
+            return false;
+        }
+        root = remove(root, time, id);
+        return true;
+    }
+
+    /**
+     * Replace the contents with keys already in order, building a balanced tree in linear time. Nodes are given
+     * priorities falling with depth above any a later insert is likely to draw, so later keys settle below them
+     * @param times in (time, id) order
+     * @param ids matching the times
+     * @param count number of keys to take from the arrays
+     */
+    void build(final long[] times, final long[] ids, final int count) {
+        final int capacity = Math.max(INITIAL_CAPACITY, count + 1);
+        this.times = new long[capacity];
+        this.ids = new long[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        sizes = new int[capacity];
+        priorities = new int[capacity];
+        // Node n holds the key at index n - 1, node 0 stays NIL
+        System.arraycopy(times, 0, this.times, 1, count);
+        System.arraycopy(ids, 0, this.ids, 1, count);
+        nextUnused = count + 1;
+        freeList = NIL;
+        root = build(1, count, 0);
+    }
+
+    /**
+     * Count the keys, in order, for which the predicate holds. The predicate must hold for a prefix of the keys and
+     * not for the rest
+     * @param predicate to test keys with
+     * @return length of the prefix
+     */
+    int countWhile(final KeyPredicate predicate) {
+        int count = 0;
+        int node = root;
+        while (node != NIL) {
+            if(predicate.test(times[node], ids[node])) {
+                count += sizes[left[node]] + 1;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Copy all keys in order into the supplied arrays
+     * @param times array to receive times, must have room for {@link #size()} keys from offset
+     * @param ids array to receive ids, must have room for {@link #size()} keys from offset
+     * @param offset index of the first key in the arrays
+     * @return index after the last key copied
+     */
+    int copyKeys(final long[] times, final long[] ids, final int offset) {
+        return copyKeys(root, times, ids, offset);
+    }
+
+    /**
+     * Copy keys in order starting from the key at an index, visiting only the keys copied and their ancestors
+     * @param from index in order of the first key to copy
+     * @param times array to receive times from index 0
+     * @param ids array to receive ids from index 0
+     * @param max most keys to copy
+     * @return number of keys copied, fewer than max if the tree ends first
+     */
+    int copyRange(final int from, final long[] times, final long[] ids, final int max) {
+        // Nodes still to visit in order, pushed on the way down to the key at from
+        int[] stack = new int[32];
+        int depth = 0;
+        int skip = from;
+        int node = root;
+        while (node != NIL) {
+            final int leftSize = sizes[left[node]];
+            if(skip <= leftSize) {
+                if(depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                if(skip == leftSize) {
+                    break;
+                }
+                node = left[node];
+            } else {
+                skip -= leftSize + 1;
+                node = right[node];
+            }
+        }
+
+        int copied = 0;
+        while (depth > 0 && copied < max) {
+            node = stack[--depth];
+            times[copied] = this.times[node];
+            ids[copied] = this.ids[node];
+            copied++;
+            for (int next = right[node]; next != NIL; next = left[next]) {
+                if(depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = next;
+            }
+        }
+        return copied;
+    }
+
+    private int copyKeys(final int node, final long[] times, final long[] ids, int offset) {
+        if(node == NIL) {
+            return offset;
+        }
+        offset = copyKeys(left[node], times, ids, offset);
+        times[offset] = this.times[node];
+        ids[offset] = this.ids[node];
+        return copyKeys(right[node], times, ids, offset + 1);
+    }
+
+    private int build(final int low, final int high, final int depth) {
+        if(low > high) {
+            return NIL;
+        }
+        final int node = (low + high) >>> 1;
+        left[node] = build(low, node - 1, depth + 1);
+        right[node] = build(node + 1, high, depth + 1);
+        sizes[node] = high - low + 1;
+        priorities[node] = Integer.MAX_VALUE - depth;
+        return node;
+    }
+
+    private int compare(final long time, final long id, final int node) {
+        final int comparison = Long.compare(time, times[node]);
+        return comparison != 0 ? comparison : Long.compare(id, ids[node]);
+    }
+
+    private int insert(int node, final long time, final long id, final int newNode) {
+        if(node == NIL) {
+            return newNode;
+        }
+
+        if(compare(time, id, node) < 0) {
+            left[node] = insert(left[node], time, id, newNode);
+            if(priorities[left[node]] > priorities[node]) {
+                node = rotateRight(node);
+            }
+        } else {
+            right[node] = insert(right[node], time, id, newNode);
+            if(priorities[right[node]] > priorities[node]) {
+                node = rotateLeft(node);
+            }
+        }
+
+        updateSize(node);
+        return node;
+    }
+
+    private int remove(final int node, final long time, final long id) {
+        final int comparison = compare(time, id, node);
+        if(comparison < 0) {
+            left[node] = remove(left[node], time, id);
+        } else if(comparison > 0) {
+            right[node] = remove(right[node], time, id);
+        } else {
+            final int merged = merge(left[node], right[node]);
+            release(node);
+            return merged;
+        }
+
+        updateSize(node);
+        return node;
+    }
+
+    private int merge(final int lower, final int upper) {
+        if(lower == NIL) {
+            return upper;
+        }
+        if(upper == NIL) {
+            return lower;
+        }
+
+        if(priorities[lower] > priorities[upper]) {
+            right[lower] = merge(right[lower], upper);
+            updateSize(lower);
+            return lower;
+        } else {
+            left[upper] = merge(lower, left[upper]);
+            updateSize(upper);
+            return upper;
+        }
+    }
+
+    private int rotateRight(final int node) {
+        final int pivot = left[node];
+        left[node] = right[pivot];
+        right[pivot] = node;
+        updateSize(node);
+        updateSize(pivot);
+        return pivot;
+    }
+
+    private int rotateLeft(final int node) {
+        final int pivot = right[node];
+        right[node] = left[pivot];
+        left[pivot] = node;
+        updateSize(node);
+        updateSize(pivot);
+        return pivot;
+    }
+
+    private void updateSize(final int node) {
+        sizes[node] = sizes[left[node]] + sizes[right[node]] + 1;
+    }
+
+    private int allocate(final long time, final long id) {
+        final int node;
+        if(freeList != NIL) {
+            node = freeList;
+            freeList = left[node];
+        } else {
+            if(nextUnused == times.length) {
+                grow();
+            }
+            node = nextUnused++;
+        }
+
+        times[node] = time;
+        ids[node] = id;
+        left[node] = NIL;
+        right[node] = NIL;
+        sizes[node] = 1;
+        priorities[node] = nextPriority();
+        return node;
+    }
+
+    private void release(final int node) {
+        left[node] = freeList;
+        right[node] = NIL;
+        sizes[node] = 0;
+        freeList = node;
+    }
+
+    private void grow() {
+        final int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+    }
+
+    private int nextPriority() {
+        // xorshift, avoids sharing a Random between trees
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+}
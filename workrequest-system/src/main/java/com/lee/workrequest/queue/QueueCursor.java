@@ -0,0 +1,71 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+/**
+ * Position in the sorted queue after which the next page starts. Holds the key of the last entry returned and the
+ * instant the queue was ranked at, so every page of a walk ranks against the same instant and an entry is neither
+ * skipped nor repeated because ranks moved on between pages. Written as an opaque token
+ */
+public final class QueueCursor {
+
+    private static final WorkRequestType[] TYPES = WorkRequestType.values();
+
+    private final long rankedAtMillis;
+    private final WorkRequestType type;
+    private final long enqueuedMillis;
+    private final long id;
+
+    QueueCursor(final long rankedAtMillis, final WorkRequestType type, final long enqueuedMillis, final long id) {
+        this.rankedAtMillis = rankedAtMillis;
+        this.type = type;
+        this.enqueuedMillis = enqueuedMillis;
+        this.id = id;
+    }
+
+    /**
+     * Read a cursor from its token
+     * @param token written by {@link #toString()}
+     * @return cursor
+     * @throws IllegalArgumentException if the token was not written by {@link #toString()}
+     */
+    public static QueueCursor parse(final String token) {
+        final String[] parts = token.split("\\.");
+        if(parts.length != 4) {
+            throw new IllegalArgumentException("Cursor must have 4 parts: " + token);
+        }
+
+        try {
+            final int type = Integer.parseInt(parts[1], Character.MAX_RADIX);
+            if(type < 0 || type >= TYPES.length) {
+                throw new IllegalArgumentException("Cursor has unknown type: " + token);
+            }
+            return new QueueCursor(Long.parseLong(parts[0], Character.MAX_RADIX), TYPES[type],
+                Long.parseLong(parts[2], Character.MAX_RADIX), Long.parseLong(parts[3], Character.MAX_RADIX));
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor is not valid: " + token, e);
+        }
+    }
+
+    long getRankedAtMillis() {
+        return rankedAtMillis;
+    }
+
+    WorkRequestType getType() {
+        return type;
+    }
+
+    long getEnqueuedMillis() {
+        return enqueuedMillis;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(rankedAtMillis, Character.MAX_RADIX) + '.' + Integer.toString(type.ordinal(), Character.MAX_RADIX)
+            + '.' + Long.toString(enqueuedMillis, Character.MAX_RADIX) + '.' + Long.toString(id, Character.MAX_RADIX);
+    }
+}
@@ -0,0 +1,34 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+/**
+ * Told of every change to a {@link WorkRequestQueue} once it is durable, from the thread that made it and after the
+ * queue's locks are released. Times are the queue's millis, local date time taken at UTC
+ */
+public interface QueueEvents {
+
+    /** Told nothing */
+    QueueEvents NONE = new QueueEvents() {
+        @Override
+        public void enqueued(final long id, final WorkRequestType type, final long enqueuedMillis) {
+        }
+
+        @Override
+        public void dequeued(final long id, final WorkRequestType type, final long enqueuedMillis,
+                final long waitMillis, final boolean top) {
+        }
+    };
+
+    /**
+     * Id was added to the queue
+     */
+    void enqueued(long id, WorkRequestType type, long enqueuedMillis);
+
+    /**
+     * Id was removed from the queue
+     * @param waitMillis time from enqueue to removal
+     * @param top true if removed as the top of the queue rather than by id
+     */
+    void dequeued(long id, WorkRequestType type, long enqueuedMillis, long waitMillis, boolean top);
+}
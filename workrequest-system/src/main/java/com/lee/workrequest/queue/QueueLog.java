@@ -0,0 +1,110 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+/**
+ * Records the changes made to a {@link WorkRequestQueue} so its contents can be rebuilt on restart. Records are
+ * appended while the queue holds the lock of the entry's type, so the records of each id are in the order its changes
+ * were made. The queue waits for a change to be durable only after releasing its locks, so concurrent changes can
+ * share one write
+ */
+public interface QueueLog {
+
+    /** Keeps nothing, the queue is in memory only */
+    QueueLog NONE = new QueueLog() {
+        @Override
+        public void replay(final Target target) {
+        }
+
+        @Override
+        public long appendEnqueue(final long id, final WorkRequestType type, final long enqueuedMillis) {
+            return 0;
+        }
+
+        @Override
+        public long appendRemove(final long id) {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(final long sequence) {
+        }
+
+        @Override
+        public long roll() {
+            return 0;
+        }
+
+        @Override
+        public void checkpoint(final WorkRequestQueue queue) {
+        }
+    };
+
+    /**
+     * Receives the changes read back from a log
+     */
+    interface Target {
+        /**
+         * Id was enqueued, replaces any entry already restored for it
+         */
+        void enqueued(long id, WorkRequestType type, long enqueuedMillis);
+
+        /**
+         * Id was removed, ignored if no entry is restored for it
+         */
+        void removed(long id);
+
+        /**
+         * Entries of one type read from a checkpoint, before any other change is replayed. The arrays belong to the
+         * target once passed
+         * @param type of every entry
+         * @param times enqueued millis, in (time, id) order
+         * @param ids matching the times
+         * @param count number of entries in the arrays
+         */
+        void loaded(WorkRequestType type, long[] times, long[] ids, int count);
+    }
+
+    /**
+     * Receives the entries of a {@link WorkRequestQueue} copied for a checkpoint, a chunk at a time. Types are copied
+     * in ordinal order, each in (time, id) order. The arrays are reused for the next chunk
+     */
+    interface EntrySink {
+        void entries(WorkRequestType type, long[] times, long[] ids, int count);
+    }
+
+    /**
+     * Read back every change recorded before this log was opened, oldest first
+     * @param target to apply the changes to
+     */
+    void replay(Target target);
+
+    /**
+     * @return sequence of the record to pass to {@link #awaitDurable(long)}
+     */
+    long appendEnqueue(long id, WorkRequestType type, long enqueuedMillis);
+
+    /**
+     * @return sequence of the record to pass to {@link #awaitDurable(long)}
+     */
+    long appendRemove(long id);
+
+    /**
+     * Wait until every record up to and including the sequence is durable
+     * @param sequence returned by an append
+     */
+    void awaitDurable(long sequence);
+
+    /**
+     * Start a new segment for the records appended after this call. Called by the queue while no change is part way
+     * between being logged and applied, so a copy of the queue taken afterwards holds every change recorded before
+     * @return position to replay from after loading that copy
+     */
+    long roll();
+
+    /**
+     * Write a checkpoint of the queue then discard the records it makes redundant
+     * @param queue to copy with {@link WorkRequestQueue#checkpoint(EntrySink)}
+     */
+    void checkpoint(WorkRequestQueue queue);
+}
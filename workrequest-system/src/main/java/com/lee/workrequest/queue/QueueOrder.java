@@ -0,0 +1,43 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+/**
+ * Total order of the {@link WorkRequestQueue} at one instant: Management Override first, then highest rank, then
+ * earliest enqueued, then lowest id. Operations take the instant once so every comparison they make sees the same
+ * ranks, and entries are compared on primitive keys rather than by calling {@link
+ * com.lee.workrequest.model.WorkRequest#calculateRank()}
+ */
+final class QueueOrder {
+
+    private QueueOrder() {
+    }
+
+    /**
+     * Rank at an instant of an entry of a type enqueued at the supplied time
+     * @param type of entry
+     * @param enqueuedMillis epoch millis entry was enqueued
+     * @param nowMillis epoch millis of the instant to rank at
+     * @return rank
+     */
+    static double rank(final WorkRequestType type, final long enqueuedMillis, final long nowMillis) {
+        return type.rank((nowMillis - enqueuedMillis) / 1000);
+    }
+
+    /**
+     * @return true if entry a is ranked ahead of entry b
+     */
+    static boolean ranksAhead(final WorkRequestType typeA, final double rankA, final long timeA, final long idA,
+            final WorkRequestType typeB, final double rankB, final long timeB, final long idB) {
+        if(typeA.isOverride() != typeB.isOverride()) {
+            return typeA.isOverride();
+        }
+
+        final int rankComparison = Double.compare(rankB, rankA);
+        if(rankComparison != 0) {
+            return rankComparison < 0;
+        }
+
+        return timeA != timeB ? timeA < timeB : idA < idB;
+    }
+}
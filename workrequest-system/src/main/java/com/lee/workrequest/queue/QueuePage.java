@@ -0,0 +1,50 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of the sorted queue and the cursor for the page after it
+ */
+public class QueuePage {
+
+    private final WorkRequestType[] types;
+    private final long[] times;
+    private final long[] ids;
+    private final QueueCursor nextCursor;
+
+    QueuePage(final WorkRequestType[] types, final long[] times, final long[] ids, final QueueCursor nextCursor) {
+        this.types = types;
+        this.times = times;
+        this.ids = ids;
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * @return ids on the page in queue order
+     */
+    public LongList getIds() {
+        return new LongList(ids);
+    }
+
+    /**
+     * @return {@link WorkRequest}s on the page in queue order
+     */
+    public List<WorkRequest> getWorkRequests() {
+        final List<WorkRequest> workRequests = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            workRequests.add(types[i].newWorkRequest(ids[i], WorkRequestQueue.fromMillis(times[i])));
+        }
+        return workRequests;
+    }
+
+    /**
+     * @return cursor for the next page or null if this is the last page
+     */
+    public QueueCursor getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,130 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Whole queue in priority order at one version, shared between callers until the queue changes. Must not be modified
+ */
+public class QueueSnapshot {
+
+    private final long version;
+    private final long rankedAtSecond;
+    private final WorkRequestType[] types;
+    private final long[] times;
+    private final long[] ids;
+
+    /** Built on first use, a race only builds an equal list twice */
+    private volatile List<WorkRequest> workRequests;
+    private volatile PositionIndex positionIndex;
+
+    QueueSnapshot(final long version, final long rankedAtSecond, final WorkRequestType[] types, final long[] times,
+            final long[] ids) {
+        this.version = version;
+        this.rankedAtSecond = rankedAtSecond;
+        this.types = types;
+        this.times = times;
+        this.ids = ids;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getRankedAtSecond() {
+        return rankedAtSecond;
+    }
+
+    /**
+     * @return tag that differs whenever the contents or order of the snapshot may differ
+     */
+    public String getTag() {
+        return Long.toString(version, Character.MAX_RADIX) + '-' + Long.toString(rankedAtSecond, Character.MAX_RADIX);
+    }
+
+    /**
+     * @return ids in queue order
+     */
+    public LongList getIds() {
+        return new LongList(ids);
+    }
+
+    /**
+     * @return {@link WorkRequest}s in queue order
+     */
+    public List<WorkRequest> getWorkRequests() {
+        List<WorkRequest> built = workRequests;
+        if(built == null) {
+            built = new ArrayList<>(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                built.add(types[i].newWorkRequest(ids[i], WorkRequestQueue.fromMillis(times[i])));
+            }
+            built = Collections.unmodifiableList(built);
+            workRequests = built;
+        }
+        return built;
+    }
+
+    /**
+     * Position of an id in this snapshot, looked up through an index built on first use
+     * @param id of {@link WorkRequest}
+     * @return zero based position or -1 if the id is not in the snapshot
+     */
+    public int positionOf(final long id) {
+        return indexPositions().positionOf(id);
+    }
+
+    /**
+     * Build the index used by {@link #positionOf(long)} now rather than on its first call
+     */
+    public void buildPositionIndex() {
+        indexPositions();
+    }
+
+    private PositionIndex indexPositions() {
+        PositionIndex built = positionIndex;
+        if(built == null) {
+            built = new PositionIndex(ids);
+            positionIndex = built;
+        }
+        return built;
+    }
+
+    /**
+     * Open addressing map from id to position, holding position plus one so zero marks an empty slot
+     */
+    private static final class PositionIndex {
+        private final long[] keys;
+        private final int[] positions;
+
+        PositionIndex(final long[] ids) {
+            // At most half full so probe runs stay short
+            final int capacity = Integer.highestOneBit(Math.max(ids.length, 1) * 2 - 1) << 1;
+            keys = new long[capacity];
+            positions = new int[capacity];
+            final int mask = capacity - 1;
+            for (int position = 0; position < ids.length; position++) {
+                int slot = (int) WorkRequestStore.hash(ids[position]) & mask;
+                while (positions[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = ids[position];
+                positions[slot] = position + 1;
+            }
+        }
+
+        int positionOf(final long id) {
+            final int mask = keys.length - 1;
+            for (int slot = (int) WorkRequestStore.hash(id) & mask; positions[slot] != 0; slot = (slot + 1) & mask) {
+                if(keys[slot] == id) {
+                    return positions[slot] - 1;
+                }
+            }
+            return -1;
+        }
+    }
+}
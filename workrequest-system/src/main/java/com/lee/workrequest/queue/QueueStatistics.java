@@ -0,0 +1,118 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of what a {@link WorkRequestQueue} has done since it was created, how long it took to rank it and how long the
+ * entries it removed had waited. Counters are striped adders and timers are wait-free, so recording never contends
+ * between threads. Entries restored from the log are not counted
+ */
+public class QueueStatistics {
+
+    /** Seconds of removals the realized wait times cover */
+    public static final long WAIT_WINDOW_SECONDS = 300;
+    private static final long LONGEST_WAIT_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dequeued = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder emptyDequeues = new LongAdder();
+
+    private final WindowedTimer sortTimer = new WindowedTimer();
+    private final WindowedTimer rankTimer = new WindowedTimer();
+
+    /** Time from enqueue to removal of every type, then of each type indexed by ordinal */
+    private final WindowedTimer waitTimer = newWaitTimer();
+    private final WindowedTimer[] typeWaitTimers = new WindowedTimer[WorkRequestType.values().length];
+
+    QueueStatistics() {
+        for (int i = 0; i < typeWaitTimers.length; i++) {
+            typeWaitTimers[i] = newWaitTimer();
+        }
+    }
+
+    private static WindowedTimer newWaitTimer() {
+        return new WindowedTimer(TimeUnit.MILLISECONDS, LONGEST_WAIT_MILLIS, WAIT_WINDOW_SECONDS);
+    }
+
+    void enqueued(final long count) {
+        enqueued.add(count);
+    }
+
+    void dequeued(final long count) {
+        dequeued.add(count);
+    }
+
+    void duplicate() {
+        duplicates.increment();
+    }
+
+    void emptyDequeue() {
+        emptyDequeues.increment();
+    }
+
+    void waited(final WorkRequestType type, final long millis) {
+        waitTimer.record(millis, TimeUnit.MILLISECONDS);
+        typeWaitTimers[type.ordinal()].record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@link com.lee.workrequest.model.WorkRequest}s added
+     */
+    public long getEnqueued() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return {@link com.lee.workrequest.model.WorkRequest}s removed, by id or from the top
+     */
+    public long getDequeued() {
+        return dequeued.sum();
+    }
+
+    /**
+     * @return enqueues rejected because the id was already queued
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return removals from the top rejected because the queue was empty
+     */
+    public long getEmptyDequeues() {
+        return emptyDequeues.sum();
+    }
+
+    /**
+     * @return time taken to rank and merge the whole queue, or a page of it
+     */
+    public WindowedTimer getSortTimer() {
+        return sortTimer;
+    }
+
+    /**
+     * @return time taken to find the position of one id, or of a batch of ids
+     */
+    public WindowedTimer getRankTimer() {
+        return rankTimer;
+    }
+
+    /**
+     * @return time from enqueue to removal, by id or from the top, over the last {@link #WAIT_WINDOW_SECONDS}
+     */
+    public WindowedTimer getWaitTimer() {
+        return waitTimer;
+    }
+
+    /**
+     * @param type of {@link com.lee.workrequest.model.WorkRequest} removed
+     * @return time from enqueue to removal of that type over the last {@link #WAIT_WINDOW_SECONDS}
+     */
+    public WindowedTimer getWaitTimer(final WorkRequestType type) {
+        return typeWaitTimers[type.ordinal()];
+    }
+}
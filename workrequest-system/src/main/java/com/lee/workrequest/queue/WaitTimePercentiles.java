@@ -0,0 +1,66 @@
+package com.lee.workrequest.queue;
+
+/**
+ * Percentiles of a set of wait times in milliseconds, all 0 if the set is empty
+ */
+public class WaitTimePercentiles {
+
+    /** Quantiles of {@link #getP50()} to {@link #getP999()} in order */
+    static final double[] QUANTILES = {0.5, 0.9, 0.95, 0.99, 0.999};
+
+    static final WaitTimePercentiles EMPTY = new WaitTimePercentiles(0, new long[QUANTILES.length], 0);
+
+    private final long count;
+    private final long[] millis;
+    private final long max;
+
+    /**
+     * @param count wait times in the set
+     * @param millis wait time at each of {@link #QUANTILES}
+     * @param max longest wait time
+     */
+    WaitTimePercentiles(final long count, final long[] millis, final long max) {
+        this.count = count;
+        this.millis = millis;
+        this.max = max;
+    }
+
+    /**
+     * Percentiles of the window of a timer recording milliseconds
+     */
+    static WaitTimePercentiles of(final WindowedTimer.Snapshot snapshot) {
+        final long[] millis = new long[QUANTILES.length];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = Math.round(snapshot.getSeconds(QUANTILES[i]) * 1000);
+        }
+        return new WaitTimePercentiles(snapshot.getWindowCount(), millis, Math.round(snapshot.getMaxSeconds() * 1000));
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50() {
+        return millis[0];
+    }
+
+    public long getP90() {
+        return millis[1];
+    }
+
+    public long getP95() {
+        return millis[2];
+    }
+
+    public long getP99() {
+        return millis[3];
+    }
+
+    public long getP999() {
+        return millis[4];
+    }
+
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,176 @@
+package com.lee.workrequest.queue;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Records durations without locking and keeps their distribution over a sliding window, the last minute by default.
+ * Durations go into an HdrHistogram {@link Recorder}, which is wait-free for writers, and are moved into the slot
+ * they were recorded in when the first duration of a later slot is recorded or the window is read. The window is a
+ * ring of fixed size histograms, one per slot, so memory is bounded whatever is recorded. The count and total are kept
+ * since creation
+ */
+public class WindowedTimer {
+
+    private static final int SLOTS = 6;
+    private static final long DEFAULT_WINDOW_SECONDS = 60;
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final TimeUnit unit;
+    private final long highest;
+    private final long slotNanos;
+    private final LongSupplier ticker;
+
+    private final Recorder recorder;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+
+    /** Guarded by this, only touched when a slot ends or the window is read */
+    private final Histogram[] slots = new Histogram[SLOTS];
+    private Histogram interval;
+    private int current;
+    /** Written under this, read by writers to see when the current slot has ended */
+    private volatile long slotStart;
+
+    /**
+     * Timer of durations up to ten minutes, resolved to the microsecond
+     */
+    public WindowedTimer() {
+        this(TimeUnit.MICROSECONDS, TimeUnit.MINUTES.toMicros(10), DEFAULT_WINDOW_SECONDS);
+    }
+
+    /**
+     * @param unit durations are resolved to
+     * @param highest longest duration distinguished in that unit, longer durations are recorded as this
+     * @param windowSeconds length of the window, moved on a sixth at a time
+     */
+    public WindowedTimer(final TimeUnit unit, final long highest, final long windowSeconds) {
+        this(unit, highest, windowSeconds, System::nanoTime);
+    }
+
+    WindowedTimer(final TimeUnit unit, final long highest, final long windowSeconds, final LongSupplier ticker) {
+        this.unit = unit;
+        this.highest = highest;
+        slotNanos = TimeUnit.SECONDS.toNanos(windowSeconds) / SLOTS;
+        this.ticker = ticker;
+        recorder = new Recorder(1, highest, SIGNIFICANT_DIGITS);
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Histogram(1, highest, SIGNIFICANT_DIGITS);
+        }
+        slotStart = ticker.getAsLong();
+    }
+
+    /**
+     * Record one duration
+     * @param duration to record, negative durations are recorded as zero
+     * @param durationUnit of duration
+     */
+    public void record(final long duration, final TimeUnit durationUnit) {
+        final long value = Math.max(0, Math.min(unit.convert(duration, durationUnit), highest));
+        final long now = ticker.getAsLong();
+        if(now - slotStart >= slotNanos) {
+            advance(now);
+        }
+        recorder.recordValue(value);
+        count.increment();
+        total.add(value);
+    }
+
+    /**
+     * Record the time since a {@link System#nanoTime()} reading
+     * @param startNanos reading taken when the timed work started
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Move everything recorded so far into the window and copy it
+     * @return distribution over the window with the count and total since creation
+     */
+    public synchronized Snapshot snapshot() {
+        advance(ticker.getAsLong());
+        interval = recorder.getIntervalHistogram(interval);
+        slots[current].add(interval);
+        final Histogram window = new Histogram(1, highest, SIGNIFICANT_DIGITS);
+        for (final Histogram slot : slots) {
+            window.add(slot);
+        }
+        return new Snapshot(window, count.sum(), total.sum(), 1.0 / unit.convert(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * If the current slot has ended, close it with what was recorded in it then move on to the slot holding now,
+     * emptying the slots passed over
+     */
+    private synchronized void advance(final long now) {
+        final long elapsedSlots = (now - slotStart) / slotNanos;
+        if(elapsedSlots <= 0) {
+            return;
+        }
+        interval = recorder.getIntervalHistogram(interval);
+        slots[current].add(interval);
+        for (long i = 0; i < Math.min(elapsedSlots, SLOTS); i++) {
+            current = (current + 1) % SLOTS;
+            slots[current].reset();
+        }
+        slotStart += elapsedSlots * slotNanos;
+    }
+
+    /**
+     * Distribution of the durations in the window, in seconds
+     */
+    public static final class Snapshot {
+        private final Histogram window;
+        private final long count;
+        private final long total;
+        private final double secondsPerUnit;
+
+        Snapshot(final Histogram window, final long count, final long total, final double secondsPerUnit) {
+            this.window = window;
+            this.count = count;
+            this.total = total;
+            this.secondsPerUnit = secondsPerUnit;
+        }
+
+        /**
+         * @return durations recorded since the timer was created
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return sum of the durations recorded since the timer was created
+         */
+        public double getTotalSeconds() {
+            return total * secondsPerUnit;
+        }
+
+        /**
+         * @return durations recorded in the window
+         */
+        public long getWindowCount() {
+            return window.getTotalCount();
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return duration at or below which that fraction of the window falls, 0 if the window is empty
+         */
+        public double getSeconds(final double quantile) {
+            return window.getValueAtPercentile(quantile * 100) * secondsPerUnit;
+        }
+
+        /**
+         * @return longest duration in the window, 0 if the window is empty
+         */
+        public double getMaxSeconds() {
+            return window.getMaxValue() * secondsPerUnit;
+        }
+    }
+}
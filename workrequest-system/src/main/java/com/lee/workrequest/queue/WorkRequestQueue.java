@@ -3,16 +3,23 @@ package com.lee.workrequest.queue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.lee.workrequest.exception.WorkRequestInvalidTimeException;
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
 import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestType;
 
-import java.time.Duration;
+import java.time.Clock;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Queue containing {@link WorkRequest}s and functionality to submit, remove and get information from queue
@@ -21,15 +28,363 @@ public class WorkRequestQueue {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkRequestQueue.class);
 
-    final Map<Long, WorkRequest> workRequests = new ConcurrentSkipListMap<>();
+    private static final WorkRequestType[] TYPES = WorkRequestType.values();
+
+    /** Earliest and latest times a {@link WorkRequest} can be enqueued at, the range the store can hold */
+    public static final LocalDateTime MIN_ENQUEUED_TIME = fromMillis(WorkRequestStore.MIN_ENQUEUED_MILLIS);
+    public static final LocalDateTime MAX_ENQUEUED_TIME = fromMillis(WorkRequestStore.MAX_ENQUEUED_MILLIS);
+
+    private static final long SNAPSHOT_MILLIS = 1000;
+
+    /** Entries copied under one hold of a type's read lock when checkpointing */
+    private static final int CHECKPOINT_CHUNK = 4096;
+
+    /**
+     * Type and enqueued time of each queued id packed into one long, {@link WorkRequest}s are only created from these
+     * when returned
+     */
+    private final WorkRequestStore entries = new WorkRequestStore();
+
+    /**
+     * Keys of the {@link WorkRequest}s of each type ordered by enqueued time. Rank only grows with time in queue so
+     * this is also rank order within a type. Indexed by type ordinal
+     */
+    private final TypeIndex[] typeIndexes = new TypeIndex[TYPES.length];
+
+    /**
+     * Order statistics index for one type. Entries of a type are only added to or removed from
+     * {@link WorkRequestQueue#entries} while holding the write lock of its index so both stay consistent
+     */
+    private static class TypeIndex {
+        final OrderStatisticTree tree = new OrderStatisticTree();
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /** Version of the whole queue, moved on by every change to any type */
+        final AtomicLong version;
+
+        /** Running sum of enqueued epoch millis, read with the tree size under the same lock */
+        long enqueuedMillisTotal;
+
+        /** First entry of the tree, replaced whenever it changes so it can be read without the lock. Null if empty */
+        volatile Head head;
+
+        /** Size of the tree, written under the lock so it can be read without it */
+        volatile int size;
+
+        TypeIndex(final AtomicLong version) {
+            this.version = version;
+        }
+
+        void add(final long time, final long id) {
+            tree.insert(time, id);
+            size = tree.size();
+            version.incrementAndGet();
+            enqueuedMillisTotal += time;
+            final Head current = head;
+            if(current == null || time < current.time || time == current.time && id < current.id) {
+                head = new Head(time, id);
+            }
+        }
+
+        void remove(final long time, final long id) {
+            if(!tree.remove(time, id)) {
+                return;
+            }
+            size = tree.size();
+            version.incrementAndGet();
+            enqueuedMillisTotal -= time;
+            final Head current = head;
+            if(current != null && current.time == time && current.id == id) {
+                final int first = tree.first();
+                head = first == OrderStatisticTree.NIL ? null : new Head(tree.time(first), tree.id(first));
+            }
+        }
+    }
+
+    /**
+     * Key of the first entry of a type
+     */
+    private static final class Head {
+        final long time;
+        final long id;
+
+        Head(final long time, final long id) {
+            this.time = time;
+            this.id = id;
+        }
+    }
+
+    /**
+     * Entries of one type copied out of its index with their rank at one instant, in queue order
+     */
+    private static class RankedRun {
+        final WorkRequestType type;
+        final long[] times;
+        final long[] ids;
+        final double[] ranks;
+        int head;
+
+        RankedRun(final WorkRequestType type, final OrderStatisticTree tree, final long now) {
+            this.type = type;
+            times = new long[tree.size()];
+            ids = new long[times.length];
+            tree.copyKeys(times, ids, 0);
+            ranks = rank(type, times, now);
+        }
+
+        /**
+         * Run of at most max entries starting from the entry at index from of the tree
+         */
+        RankedRun(final WorkRequestType type, final OrderStatisticTree tree, final int from, final int max, final long now) {
+            this.type = type;
+            times = new long[Math.min(max, tree.size() - from)];
+            ids = new long[times.length];
+            tree.copyRange(from, times, ids, times.length);
+            ranks = rank(type, times, now);
+        }
+
+        private static double[] rank(final WorkRequestType type, final long[] times, final long now) {
+            final double[] ranks = new double[times.length];
+            for (int i = 0; i < ranks.length; i++) {
+                ranks[i] = QueueOrder.rank(type, times[i], now);
+            }
+            return ranks;
+        }
+
+        boolean hasNext() {
+            return head < ids.length;
+        }
+
+        boolean ranksAhead(final RankedRun other) {
+            return QueueOrder.ranksAhead(type, ranks[head], times[head], ids[head],
+                other.type, other.ranks[other.head], other.times[other.head], other.ids[other.head]);
+        }
+    }
+
+    private final Clock clock;
+
+    /** Every change is appended while its type lock is held and awaited once the lock is released */
+    private final QueueLog log;
+
+    /** Told of every change once it is durable */
+    private final QueueEvents events;
+
+    /**
+     * Failure of the log to make a change durable after the change was applied. The queue then no longer matches what
+     * would be restored from the log, so it fails closed: reads carry on but every later change is refused
+     */
+    private volatile RuntimeException logFailure;
+
+    /**
+     * Consumers parked in {@link #takeTop(long, TimeUnit)}. The lock is fair and condition waiters are signalled in
+     * the order they started waiting, one per enqueue, so waiters are woken first come first served
+     */
+    private final ReentrantLock takeLock = new ReentrantLock(true);
+    private final Condition notEmpty = takeLock.newCondition();
+    private final AtomicInteger takeWaiters = new AtomicInteger();
+
+    /** Number of changes made to the queue, only ever increases */
+    private final AtomicLong version = new AtomicLong();
+
+    /** Last snapshot built, reused while neither the version nor the rank second has moved on */
+    private volatile QueueSnapshot snapshot;
+
+    private final QueueStatistics statistics = new QueueStatistics();
+
+    public WorkRequestQueue() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock used for the current time when ranking
+     */
+    public WorkRequestQueue(final Clock clock) {
+        this(clock, QueueLog.NONE);
+    }
+
+    /**
+     * Restore the queue from the log then record every change to it
+     * @param clock used for the current time when ranking
+     * @param log to replay and append to
+     */
+    public WorkRequestQueue(final Clock clock, final QueueLog log) {
+        this(clock, log, QueueEvents.NONE);
+    }
+
+    /**
+     * Restore the queue from the log then record every change to it and tell the events of each. Changes restored
+     * from the log are not told
+     * @param clock used for the current time when ranking
+     * @param log to replay and append to
+     * @param events to tell of each change
+     */
+    public WorkRequestQueue(final Clock clock, final QueueLog log, final QueueEvents events) {
+        this.clock = clock;
+        this.log = log;
+        this.events = events;
+        for (int i = 0; i < typeIndexes.length; i++) {
+            typeIndexes[i] = new TypeIndex(version);
+        }
+        log.replay(new QueueLog.Target() {
+            @Override
+            public void enqueued(final long id, final WorkRequestType type, final long enqueuedMillis) {
+                restoreEnqueued(id, type, enqueuedMillis);
+            }
+
+            @Override
+            public void removed(final long id) {
+                restoreRemoved(id);
+            }
+
+            @Override
+            public void loaded(final WorkRequestType type, final long[] times, final long[] ids, final int count) {
+                restoreLoaded(type, times, ids, count);
+            }
+        });
+        LOG.debug("Queue restored with {} work requests", entries.size());
+    }
 
     /**
      * Add {@link WorkRequest} to queue
      * @param workRequest {@link WorkRequest} to add
      * @return Null if no entry exists for id or the previous value if it does
+     * @throws WorkRequestInvalidTimeException if enqueued outside {@link #MIN_ENQUEUED_TIME} to
+     * {@link #MAX_ENQUEUED_TIME}
      */
     public WorkRequest enqueue(final WorkRequest workRequest) {
-        return workRequests.putIfAbsent(workRequest.getId(), workRequest);
+        checkEnqueuedTime(workRequest);
+        checkLog();
+        final WorkRequestType type = workRequest.getType();
+        final long time = toMillis(workRequest.getEnqueuedTime());
+        final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+        final long sequence;
+        typeIndex.lock.writeLock().lock();
+        try {
+            final long previous = entries.putIfAbsent(workRequest.getId(), WorkRequestStore.entry(type, time));
+            if(previous != WorkRequestStore.NONE) {
+                statistics.duplicate();
+                return toWorkRequest(workRequest.getId(), previous);
+            }
+            sequence = appendEnqueue(workRequest.getId(), type, time);
+            typeIndex.add(time, workRequest.getId());
+        } finally {
+            typeIndex.lock.writeLock().unlock();
+        }
+
+        awaitDurable(sequence);
+        statistics.enqueued(1);
+        events.enqueued(workRequest.getId(), type, time);
+        signalTakeWaiter();
+        return null;
+    }
+
+    /**
+     * Add a chunk of {@link WorkRequest}s to queue. Each type is locked once for the whole chunk rather than once per
+     * entry, and existing ids are reported rather than returned
+     * @param workRequests {@link WorkRequest}s to add
+     * @return for each {@link WorkRequest} true if added or false if an entry already existed for its id
+     * @throws WorkRequestInvalidTimeException if any is enqueued outside {@link #MIN_ENQUEUED_TIME} to
+     * {@link #MAX_ENQUEUED_TIME}, none are added
+     */
+    public boolean[] enqueueAll(final List<WorkRequest> workRequests) {
+        for (final WorkRequest workRequest : workRequests) {
+            checkEnqueuedTime(workRequest);
+        }
+        checkLog();
+        final boolean[] added = new boolean[workRequests.size()];
+        int count = 0;
+        long sequence = 0;
+        for (final WorkRequestType type : TYPES) {
+            final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+            typeIndex.lock.writeLock().lock();
+            try {
+                for (int i = 0; i < added.length; i++) {
+                    final WorkRequest workRequest = workRequests.get(i);
+                    if(workRequest.getType() == type) {
+                        final long time = toMillis(workRequest.getEnqueuedTime());
+                        if(entries.putIfAbsent(workRequest.getId(), WorkRequestStore.entry(type, time)) == WorkRequestStore.NONE) {
+                            sequence = appendEnqueue(workRequest.getId(), type, time);
+                            typeIndex.add(time, workRequest.getId());
+                            added[i] = true;
+                            count++;
+                        } else {
+                            statistics.duplicate();
+                        }
+                    }
+                }
+            } finally {
+                typeIndex.lock.writeLock().unlock();
+            }
+        }
+
+        // Records are appended in sequence so the last is durable only once all are
+        awaitDurable(sequence);
+        statistics.enqueued(count);
+        for (int i = 0; i < added.length; i++) {
+            if(added[i]) {
+                final WorkRequest workRequest = workRequests.get(i);
+                events.enqueued(workRequest.getId(), workRequest.getType(), toMillis(workRequest.getEnqueuedTime()));
+            }
+        }
+        // Woken waiters pass the signal on while entries remain
+        signalTakeWaiter();
+        return added;
+    }
+
+    /**
+     * @param time to check
+     * @return true if a {@link WorkRequest} can be enqueued at the time
+     */
+    public static boolean isEnqueuedTimeInRange(final LocalDateTime time) {
+        return !time.isBefore(MIN_ENQUEUED_TIME) && !time.isAfter(MAX_ENQUEUED_TIME);
+    }
+
+    private static void checkEnqueuedTime(final WorkRequest workRequest) {
+        if(!isEnqueuedTimeInRange(workRequest.getEnqueuedTime())) {
+            throw new WorkRequestInvalidTimeException(workRequest.getEnqueuedTime(), MIN_ENQUEUED_TIME,
+                MAX_ENQUEUED_TIME);
+        }
+    }
+
+    /**
+     * Log the enqueue of an id already claimed in {@link #entries}, the claim stops a concurrent enqueue of the same
+     * id being logged too. The claim is released if the log fails so the queue is left as it was
+     * @return sequence of the record
+     */
+    private long appendEnqueue(final long id, final WorkRequestType type, final long time) {
+        try {
+            return log.appendEnqueue(id, type, time);
+        } catch (final RuntimeException e) {
+            entries.remove(id);
+            throw e;
+        }
+    }
+
+    /**
+     * Refuse a change once the log has failed to make an earlier one durable
+     * @throws WorkRequestPersistenceException if it has
+     */
+    private void checkLog() {
+        final RuntimeException failure = logFailure;
+        if(failure != null) {
+            throw new WorkRequestPersistenceException("queue refuses changes, an earlier change was not made durable",
+                failure);
+        }
+    }
+
+    /**
+     * Wait for a change already applied to be durable, failing the queue closed if it cannot be
+     * @param sequence of the change's last record
+     * @throws WorkRequestPersistenceException if the log failed before the record was durable
+     */
+    private void awaitDurable(final long sequence) {
+        try {
+            log.awaitDurable(sequence);
+        } catch (final RuntimeException e) {
+            logFailure = e;
+            LOG.error("Change applied but not durable, the queue refuses further changes", e);
+            throw e;
+        }
     }
 
     /**
@@ -37,9 +392,14 @@ public class WorkRequestQueue {
      * @return list of {@link WorkRequest}s
      */
     public List<WorkRequest> getSortedWorkRequests(){
-        final List<WorkRequest> workRequestEntries = new ArrayList<>(workRequests.values());
-        LOG.trace("Presorted list: {}", workRequestEntries);
-        Collections.sort(workRequestEntries);
+        final long start = System.nanoTime();
+        final RankedRun[] runs = rankRuns(rankMillis());
+        final List<WorkRequest> workRequestEntries = new ArrayList<>(totalSize(runs));
+        for (RankedRun top = nextRun(runs); top != null; top = nextRun(runs)) {
+            workRequestEntries.add(top.type.newWorkRequest(top.ids[top.head], fromMillis(top.times[top.head])));
+            top.head++;
+        }
+        statistics.getSortTimer().recordSince(start);
         LOG.trace("Sorted list: {}", workRequestEntries);
         return workRequestEntries;
     }
@@ -48,27 +408,172 @@ public class WorkRequestQueue {
      * Get all {@link WorkRequest} ids sorted by priority
      * @return
      */
-    public List<Long> getSortedIds(){
+    public LongList getSortedIds(){
+        final LongList sortedIds = new LongList(sortIds());
+        LOG.trace("Sorted id list: {}", sortedIds);
+        return sortedIds;
+    }
+
+    /**
+     * Get one page of the queue in priority order. Each type index is searched for where the page starts and only
+     * the entries that can be on the page are copied and ranked, so a page costs the same wherever it is in the queue
+     * @param limit most entries on the page
+     * @param after cursor returned with the previous page or null for the first page
+     * @return page of entries
+     */
+    public QueuePage getPage(final int limit, final QueueCursor after) {
+        final long start = System.nanoTime();
+        final long now = after == null ? rankMillis() : after.getRankedAtMillis();
+        final double afterRank = after == null ? 0 : QueueOrder.rank(after.getType(), after.getEnqueuedMillis(), now);
 
-        final List<WorkRequest> sortedWorkRequests = getSortedWorkRequests();
-        if(sortedWorkRequests.isEmpty()){
-            LOG.trace("Empty workRequests list");
-            return new ArrayList<>();
+        final RankedRun[] runs = new RankedRun[TYPES.length];
+        long remaining = 0;
+        for (final WorkRequestType type : TYPES) {
+            final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+            typeIndex.lock.readLock().lock();
+            try {
+                // Entries up to and including the cursor entry are on earlier pages
+                final int from = after == null ? 0 : typeIndex.tree.countWhile((time, id) ->
+                    !QueueOrder.ranksAhead(after.getType(), afterRank, after.getEnqueuedMillis(), after.getId(),
+                        type, QueueOrder.rank(type, time, now), time, id));
+                runs[type.ordinal()] = new RankedRun(type, typeIndex.tree, from, limit, now);
+                remaining += typeIndex.tree.size() - from;
+            } finally {
+                typeIndex.lock.readLock().unlock();
+            }
         }
 
-        LOG.trace("Sorted work request list: {}", sortedWorkRequests);
-        final List<Long> sortedIds = sortedWorkRequests.stream().map( workRequestEntry -> workRequestEntry.getId() ).collect( Collectors.toList() );
-        LOG.trace("Sorted id list: {}", sortedIds);
+        final int size = (int) Math.min(limit, remaining);
+        final WorkRequestType[] types = new WorkRequestType[size];
+        final long[] times = new long[size];
+        final long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            final RankedRun top = nextRun(runs);
+            types[i] = top.type;
+            times[i] = top.times[top.head];
+            ids[i] = top.ids[top.head++];
+        }
+
+        final QueueCursor next = remaining > size && size > 0 ? new QueueCursor(now, types[size - 1], times[size - 1], ids[size - 1]) : null;
+        statistics.getSortTimer().recordSince(start);
+        LOG.trace("Page of {} with {} remaining after", size, remaining - size);
+        return new QueuePage(types, times, ids, next);
+    }
+
+    /**
+     * Get the whole queue in priority order, reusing the last snapshot if nothing has changed since it was built.
+     * Snapshots are ranked at the start of the current second like every other read, so every caller within a second
+     * sees the same order and ranks are at most a second behind the clock
+     * @return snapshot of the queue tagged with the version and second it was ranked at
+     */
+    public QueueSnapshot getSnapshot() {
+        final long second = Math.floorDiv(currentMillis(), SNAPSHOT_MILLIS);
+        // Read before ranking, so the snapshot holds at least every change up to its version
+        final long currentVersion = version.get();
+        final QueueSnapshot cached = snapshot;
+        if(isCurrent(cached, currentVersion, second)) {
+            return cached;
+        }
+
+        final long start = System.nanoTime();
+        final RankedRun[] runs = rankRuns(second * SNAPSHOT_MILLIS);
+        final int size = totalSize(runs);
+        final WorkRequestType[] types = new WorkRequestType[size];
+        final long[] times = new long[size];
+        final long[] ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            final RankedRun top = nextRun(runs);
+            types[i] = top.type;
+            times[i] = top.times[top.head];
+            ids[i] = top.ids[top.head++];
+        }
+
+        final QueueSnapshot built = new QueueSnapshot(currentVersion, second, types, times, ids);
+        snapshot = built;
+        statistics.getSortTimer().recordSince(start);
+        LOG.trace("Built snapshot of {} at version {}", size, currentVersion);
+        return built;
+    }
+
+    /**
+     * Get the last snapshot built if {@link #getSnapshot()} would reuse it, without ranking
+     * @return snapshot of the queue as it is now or null if one must be built
+     */
+    public QueueSnapshot getCurrentSnapshot() {
+        final QueueSnapshot cached = snapshot;
+        return isCurrent(cached, version.get(), Math.floorDiv(currentMillis(), SNAPSHOT_MILLIS)) ? cached : null;
+    }
+
+    private static boolean isCurrent(final QueueSnapshot cached, final long currentVersion, final long second) {
+        return cached != null && cached.getVersion() == currentVersion && cached.getRankedAtSecond() == second;
+    }
+
+    /**
+     * Merge the ranked runs of all types into queue order
+     * @return ids in queue order
+     */
+    private long[] sortIds() {
+        final long start = System.nanoTime();
+        final RankedRun[] runs = rankRuns(rankMillis());
+        final long[] sortedIds = new long[totalSize(runs)];
+        for (int i = 0; i < sortedIds.length; i++) {
+            final RankedRun top = nextRun(runs);
+            sortedIds[i] = top.ids[top.head++];
+        }
+        statistics.getSortTimer().recordSince(start);
         return sortedIds;
     }
 
+    /**
+     * Rank every entry against one instant
+     * @param now millis to rank at
+     * @return run of each type in queue order, indexed by type ordinal
+     */
+    private RankedRun[] rankRuns(final long now) {
+        final RankedRun[] runs = new RankedRun[TYPES.length];
+        for (final WorkRequestType type : TYPES) {
+            final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+            typeIndex.lock.readLock().lock();
+            try {
+                runs[type.ordinal()] = new RankedRun(type, typeIndex.tree, now);
+            } finally {
+                typeIndex.lock.readLock().unlock();
+            }
+        }
+        return runs;
+    }
+
+    private static int totalSize(final RankedRun[] runs) {
+        int total = 0;
+        for (final RankedRun run : runs) {
+            total += run.ids.length;
+        }
+        return total;
+    }
+
+    /**
+     * Each type is already in rank order so only the heads of the runs are ever compared, on ranks computed once per
+     * entry
+     * @return run whose head is next in queue order or null if all are exhausted
+     */
+    private static RankedRun nextRun(final RankedRun[] runs) {
+        RankedRun top = null;
+        for (final RankedRun run : runs) {
+            if(run.hasNext() && (top == null || run.ranksAhead(top))) {
+                top = run;
+            }
+        }
+        return top;
+    }
+
     /**
      * Get a specified {@link WorkRequest}
      * @param id of {@link WorkRequest}
      * @return {@link WorkRequest} with id if it exists or null if it does not
      */
     public WorkRequest get(final long id) {
-        return workRequests.get(id);
+        final long entry = entries.get(id);
+        return entry == WorkRequestStore.NONE ? null : toWorkRequest(id, entry);
     }
 
     /**
@@ -77,7 +582,111 @@ public class WorkRequestQueue {
      * @return position in relation to priority or -1 if it does not exist in list
      */
     public int getPosition(final long id) {
-        return getSortedIds().indexOf(id);
+        return rankOf(id);
+    }
+
+    /**
+     * Number of {@link WorkRequest}s of one type in the queue, read without locking so it may lag a change in progress
+     * @param type of {@link WorkRequest} to count
+     * @return number queued
+     */
+    public int size(final WorkRequestType type) {
+        return typeIndexes[type.ordinal()].size;
+    }
+
+    /**
+     * @return counts and timings of the operations on this queue
+     */
+    public QueueStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Count the {@link WorkRequest}s ranked ahead of the one with the specified id. Each type index is searched for
+     * the prefix ranked ahead so no list is built
+     * @param id of {@link WorkRequest}
+     * @return number ranked ahead or -1 if it does not exist in list
+     */
+    public int rankOf(final long id) {
+        final long start = System.nanoTime();
+        final long entry = entries.get(id);
+        if(entry == WorkRequestStore.NONE) {
+            LOG.trace("No work request with id: {}", id);
+            return -1;
+        }
+
+        final long now = rankMillis();
+        final WorkRequestType type = WorkRequestStore.type(entry);
+        final long time = WorkRequestStore.enqueuedMillis(entry);
+        final double rank = QueueOrder.rank(type, time, now);
+
+        int position = 0;
+        for (final WorkRequestType entryType : TYPES) {
+            final TypeIndex typeIndex = typeIndexes[entryType.ordinal()];
+            typeIndex.lock.readLock().lock();
+            try {
+                position += countAhead(entryType, type, rank, time, id, now);
+            } finally {
+                typeIndex.lock.readLock().unlock();
+            }
+        }
+
+        statistics.getRankTimer().recordSince(start);
+        LOG.trace("Position of id: {} is {}", id, position);
+        return position;
+    }
+
+    /**
+     * Positions of many ids ranked at one instant. Every type index is read locked once for the whole lookup so the
+     * positions are consistent with each other, and each is counted from the type indexes without building a list
+     * @param ids of {@link WorkRequest}s
+     * @return number ranked ahead of each id in the same order, -1 for an id that does not exist
+     */
+    public int[] getPositions(final long[] ids) {
+        final long start = System.nanoTime();
+        final int[] positions = new int[ids.length];
+        for (final TypeIndex typeIndex : typeIndexes) {
+            typeIndex.lock.readLock().lock();
+        }
+        try {
+            final long now = rankMillis();
+            for (int i = 0; i < ids.length; i++) {
+                final long id = ids[i];
+                final long entry = entries.get(id);
+                final WorkRequestType type = entry == WorkRequestStore.NONE ? null : WorkRequestStore.type(entry);
+                final long time = WorkRequestStore.enqueuedMillis(entry);
+                // The store can run ahead of the type indexes while an enqueue or dequeue is between the two
+                if(type == null || !typeIndexes[type.ordinal()].tree.contains(time, id)) {
+                    positions[i] = -1;
+                    continue;
+                }
+
+                final double rank = QueueOrder.rank(type, time, now);
+                int position = 0;
+                for (final WorkRequestType entryType : TYPES) {
+                    position += countAhead(entryType, type, rank, time, id, now);
+                }
+                positions[i] = position;
+            }
+        } finally {
+            for (int i = typeIndexes.length - 1; i >= 0; i--) {
+                typeIndexes[i].lock.readLock().unlock();
+            }
+        }
+
+        statistics.getRankTimer().recordSince(start);
+        LOG.trace("Positions of {} ids looked up", ids.length);
+        return positions;
+    }
+
+    /**
+     * Count the entries of one type ranked ahead of an entry, the caller must hold the type's lock
+     */
+    private int countAhead(final WorkRequestType entryType, final WorkRequestType type, final double rank,
+            final long time, final long id, final long now) {
+        return typeIndexes[entryType.ordinal()].tree.countWhile((entryTime, entryId) ->
+            QueueOrder.ranksAhead(entryType, QueueOrder.rank(entryType, entryTime, now), entryTime, entryId,
+                type, rank, time, id));
     }
 
     /**
@@ -85,7 +694,16 @@ public class WorkRequestQueue {
      * @return average wait time in seconds
      */
     public long getAverageWaitTime(){
-        return getAverageWaitTime(LocalDateTime.now());
+        return getAverageWaitTime(LocalDateTime.now(clock));
+    }
+
+    /**
+     * Get the average wait time of one type based on the current time
+     * @param type of {@link WorkRequest} to average
+     * @return average wait time in seconds
+     */
+    public long getAverageWaitTime(final WorkRequestType type){
+        return getAverageWaitTime(LocalDateTime.now(clock), type);
     }
 
     /**
@@ -94,13 +712,41 @@ public class WorkRequestQueue {
      * @return average wait time in seconds
      */
     public long getAverageWaitTime(final LocalDateTime time){
+        return averageWaitTime(time, TYPES);
+    }
+
+    /**
+     * Get the average wait time of one type with duration based on time supplied
+     * @param time to take the duration from
+     * @param type of {@link WorkRequest} to average
+     * @return average wait time in seconds
+     */
+    public long getAverageWaitTime(final LocalDateTime time, final WorkRequestType type){
+        return averageWaitTime(time, type);
+    }
+
+    /**
+     * Average from the running totals of the supplied types rather than visiting each entry. The total duration is
+     * count * now - sum of enqueued times, which is exact even if the intermediate values overflow
+     */
+    private long averageWaitTime(final LocalDateTime time, final WorkRequestType... types){
+        final long now = toMillis(time);
 
+        long count = 0;
         long totalDuration = 0;
-        for (final Map.Entry<Long, WorkRequest> entry : workRequests.entrySet()) {
-            totalDuration += Duration.between(entry.getValue().getEnqueuedTime(), time).toMillis();
+        for (final WorkRequestType type : types) {
+            final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+            typeIndex.lock.readLock().lock();
+            try {
+                final int size = typeIndex.tree.size();
+                count += size;
+                totalDuration += size * now - typeIndex.enqueuedMillisTotal;
+            } finally {
+                typeIndex.lock.readLock().unlock();
+            }
         }
 
-        LOG.trace("Total duration: {}, list size: {}", totalDuration, workRequests.size());
+        LOG.trace("Total duration: {}, list size: {}", totalDuration, count);
 
         if(totalDuration <= 0){
             LOG.debug("Total duration is {} which is less than 0, setting as 0", totalDuration);
@@ -108,7 +754,7 @@ public class WorkRequestQueue {
         }
 
         // Get average time in seconds, if less than 0 then return 0
-        final long averageWaitTime = totalDuration / workRequests.size() / 1000;
+        final long averageWaitTime = totalDuration / count / 1000;
         LOG.trace("Average wait time: {}", averageWaitTime);
 
         if(averageWaitTime < 0){
@@ -119,26 +765,569 @@ public class WorkRequestQueue {
         return averageWaitTime;
     }
 
+    /**
+     * Get percentiles of how long the {@link WorkRequest}s in the queue have waited so far based on the current time
+     * @return wait time percentiles in milliseconds
+     */
+    public WaitTimePercentiles getCurrentWaitTimes(){
+        return getCurrentWaitTimes(LocalDateTime.now(clock));
+    }
+
+    /**
+     * Get percentiles of how long the {@link WorkRequest}s of one type in the queue have waited so far based on the
+     * current time
+     * @param type of {@link WorkRequest} to include
+     * @return wait time percentiles in milliseconds
+     */
+    public WaitTimePercentiles getCurrentWaitTimes(final WorkRequestType type){
+        return getCurrentWaitTimes(LocalDateTime.now(clock), type);
+    }
+
+    /**
+     * Get percentiles of how long the {@link WorkRequest}s in the queue will have waited at the time supplied
+     * @param time to take the durations to
+     * @return wait time percentiles in milliseconds
+     */
+    public WaitTimePercentiles getCurrentWaitTimes(final LocalDateTime time){
+        return currentWaitTimes(time, TYPES);
+    }
+
+    /**
+     * Get percentiles of how long the {@link WorkRequest}s of one type in the queue will have waited at the time
+     * supplied
+     * @param time to take the durations to
+     * @param type of {@link WorkRequest} to include
+     * @return wait time percentiles in milliseconds
+     */
+    public WaitTimePercentiles getCurrentWaitTimes(final LocalDateTime time, final WorkRequestType type){
+        return currentWaitTimes(time, type);
+    }
+
+    /**
+     * Get percentiles of how long the {@link WorkRequest}s removed recently had waited
+     * @return wait time percentiles in milliseconds over the last {@link QueueStatistics#WAIT_WINDOW_SECONDS}
+     */
+    public WaitTimePercentiles getRealizedWaitTimes(){
+        return WaitTimePercentiles.of(statistics.getWaitTimer().snapshot());
+    }
+
+    /**
+     * Get percentiles of how long the {@link WorkRequest}s of one type removed recently had waited
+     * @param type of {@link WorkRequest} to include
+     * @return wait time percentiles in milliseconds over the last {@link QueueStatistics#WAIT_WINDOW_SECONDS}
+     */
+    public WaitTimePercentiles getRealizedWaitTimes(final WorkRequestType type){
+        return WaitTimePercentiles.of(statistics.getWaitTimer(type).snapshot());
+    }
+
+    /**
+     * Wait time percentiles of the supplied types, which must be in ordinal order, read from the type indexes without
+     * visiting each entry. Age falls as enqueued time rises, so the entry at a percentile of age is the one with that
+     * many entries enqueued at or after it. Its time is found by a binary search over enqueued time, counting the
+     * entries at or before each candidate in every type index, while every type is read locked so the counts agree
+     */
+    private WaitTimePercentiles currentWaitTimes(final LocalDateTime time, final WorkRequestType... types){
+        final long now = toMillis(time);
+        for (final WorkRequestType type : types) {
+            typeIndexes[type.ordinal()].lock.readLock().lock();
+        }
+        try {
+            long count = 0;
+            long oldest = Long.MAX_VALUE;
+            long newest = Long.MIN_VALUE;
+            for (final WorkRequestType type : types) {
+                final OrderStatisticTree tree = typeIndexes[type.ordinal()].tree;
+                if(!tree.isEmpty()) {
+                    count += tree.size();
+                    oldest = Math.min(oldest, tree.time(tree.first()));
+                    newest = Math.max(newest, tree.time(tree.last()));
+                }
+            }
+            if(count == 0) {
+                LOG.debug("No work requests to take wait time percentiles of");
+                return WaitTimePercentiles.EMPTY;
+            }
+
+            final long[] millis = new long[WaitTimePercentiles.QUANTILES.length];
+            for (int i = 0; i < millis.length; i++) {
+                // Entries enqueued at or before the one at the percentile, counted from the oldest
+                final long atOrBefore = count - (long) Math.ceil(WaitTimePercentiles.QUANTILES[i] * count) + 1;
+                long low = oldest;
+                long high = newest;
+                while (low < high) {
+                    final long middle = low + (high - low) / 2;
+                    if(countAtOrBefore(middle, types) >= atOrBefore) {
+                        high = middle;
+                    } else {
+                        low = middle + 1;
+                    }
+                }
+                millis[i] = Math.max(0, now - low);
+            }
+            return new WaitTimePercentiles(count, millis, Math.max(0, now - oldest));
+        } finally {
+            for (int i = types.length - 1; i >= 0; i--) {
+                typeIndexes[types[i].ordinal()].lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Count the entries of the supplied types enqueued at or before a time, the caller must hold their locks
+     */
+    private long countAtOrBefore(final long time, final WorkRequestType... types) {
+        long count = 0;
+        for (final WorkRequestType type : types) {
+            count += typeIndexes[type.ordinal()].tree.countWhile((entryTime, entryId) -> entryTime <= time);
+        }
+        return count;
+    }
+
     /**
      * Remove {@link WorkRequest} from queue
      * @param id of {@link WorkRequest} to remove
      * @return Null if no entry exists for id or the previous value if it does and was removed
      */
     public WorkRequest dequeue(final long id) {
-        return workRequests.remove(id);
+        checkLog();
+        while (true) {
+            final long current = entries.get(id);
+            if(current == WorkRequestStore.NONE) {
+                return null;
+            }
+
+            // Only removable while holding its type lock, so still stored if unchanged once locked
+            final TypeIndex typeIndex = typeIndexes[WorkRequestStore.type(current).ordinal()];
+            long sequence = -1;
+            typeIndex.lock.writeLock().lock();
+            try {
+                if(entries.get(id) == current) {
+                    // Appended before the id is free to be enqueued again, which may be under another type's lock
+                    sequence = log.appendRemove(id);
+                    entries.remove(id);
+                    typeIndex.remove(WorkRequestStore.enqueuedMillis(current), id);
+                }
+            } finally {
+                typeIndex.lock.writeLock().unlock();
+            }
+
+            if(sequence != -1) {
+                awaitDurable(sequence);
+                final WorkRequestType type = WorkRequestStore.type(current);
+                final long enqueuedMillis = WorkRequestStore.enqueuedMillis(current);
+                final long waitMillis = currentMillis() - enqueuedMillis;
+                statistics.dequeued(1);
+                statistics.waited(type, waitMillis);
+                events.dequeued(id, type, enqueuedMillis, waitMillis, false);
+                return toWorkRequest(id, current);
+            }
+        }
     }
 
     /**
-     * Remove highest priority {@link WorkRequest} from queue
+     * Remove highest priority {@link WorkRequest} from queue. Only the four type heads are ranked and the chosen head is
+     * claimed under its type lock only if it is still the head, otherwise another consumer took it and the heads are
+     * ranked again, so null is only returned when every type was seen empty
      * @return value removed or null if queue is empty
      */
     public WorkRequest dequeueTop() {
-        final List<Long> sortedIds = getSortedIds();
-        if(sortedIds.isEmpty()){
-            LOG.debug("Queue is empty, returning null");
-            return null;
+        final WorkRequest top = removeTop();
+        if(top == null) {
+            statistics.emptyDequeue();
+        }
+        return top;
+    }
+
+    /**
+     * {@link #dequeueTop()} without counting an empty queue, so a consumer waiting in
+     * {@link #takeTop(long, TimeUnit)} is counted once however often it looks
+     */
+    private WorkRequest removeTop() {
+        checkLog();
+        final Head[] heads = new Head[TYPES.length];
+        while (true) {
+            final long now = currentMillis();
+            final int topType = rankHeads(heads, now);
+            if(topType == -1){
+                LOG.debug("Queue is empty, returning null");
+                return null;
+            }
+
+            final Head top = heads[topType];
+            LOG.trace("Top of queue has id: {}", top.id);
+            final TypeIndex typeIndex = typeIndexes[topType];
+            long sequence = -1;
+            long entry = WorkRequestStore.NONE;
+            typeIndex.lock.writeLock().lock();
+            try {
+                if(typeIndex.head == top) {
+                    sequence = log.appendRemove(top.id);
+                    entry = entries.remove(top.id);
+                    typeIndex.remove(top.time, top.id);
+                }
+            } finally {
+                typeIndex.lock.writeLock().unlock();
+            }
+
+            if(sequence != -1) {
+                awaitDurable(sequence);
+                statistics.dequeued(1);
+                statistics.waited(TYPES[topType], now - top.time);
+                events.dequeued(top.id, TYPES[topType], top.time, now - top.time, true);
+                return toWorkRequest(top.id, entry);
+            }
+            LOG.trace("Top of queue with id: {} claimed by another consumer, retrying", top.id);
+        }
+    }
+
+    /**
+     * Remove up to the supplied number of highest priority {@link WorkRequest}s from queue as one operation. Every type
+     * is locked, in type order, so the batch is exactly the top of the queue at one instant. The whole batch is chosen
+     * and logged before any of it is removed, so a log failure part way leaves the queue as it was
+     * @param count maximum number to remove
+     * @return ids removed in queue order, fewer than count if the queue held fewer
+     */
+    public LongList dequeueTop(final int count) {
+        checkLog();
+        long sequence = 0;
+        final LongList removedIds;
+        final long now;
+        final int[] removedTypes;
+        final long[] removedTimes;
+        for (final TypeIndex typeIndex : typeIndexes) {
+            typeIndex.lock.writeLock().lock();
+        }
+        try {
+            now = currentMillis();
+            // The batch can only come from the first count entries of each type, merged in rank order
+            final long[][] times = new long[TYPES.length][];
+            final long[][] ids = new long[TYPES.length][];
+            final int[] copied = new int[TYPES.length];
+            for (final WorkRequestType type : TYPES) {
+                final OrderStatisticTree tree = typeIndexes[type.ordinal()].tree;
+                final int most = Math.min(count, tree.size());
+                times[type.ordinal()] = new long[most];
+                ids[type.ordinal()] = new long[most];
+                copied[type.ordinal()] = tree.copyRange(0, times[type.ordinal()], ids[type.ordinal()], most);
+            }
+
+            final int most = Math.min(count, entries.size());
+            removedIds = new LongList(most);
+            removedTypes = new int[most];
+            removedTimes = new long[most];
+            final int[] next = new int[TYPES.length];
+            while (removedIds.size() < most) {
+                final int topType = rankNext(times, ids, copied, next, now);
+                if(topType == -1) {
+                    break;
+                }
+                removedTypes[removedIds.size()] = topType;
+                removedTimes[removedIds.size()] = times[topType][next[topType]];
+                removedIds.addLong(ids[topType][next[topType]]);
+                next[topType]++;
+            }
+
+            for (int i = 0; i < removedIds.size(); i++) {
+                sequence = log.appendRemove(removedIds.getLong(i));
+            }
+            for (int i = 0; i < removedIds.size(); i++) {
+                entries.remove(removedIds.getLong(i));
+                typeIndexes[removedTypes[i]].remove(removedTimes[i], removedIds.getLong(i));
+            }
+        } finally {
+            for (int i = typeIndexes.length - 1; i >= 0; i--) {
+                typeIndexes[i].lock.writeLock().unlock();
+            }
+        }
+
+        awaitDurable(sequence);
+        statistics.dequeued(removedIds.size());
+        if(removedIds.isEmpty()) {
+            statistics.emptyDequeue();
+        }
+        for (int i = 0; i < removedIds.size(); i++) {
+            final WorkRequestType type = TYPES[removedTypes[i]];
+            statistics.waited(type, now - removedTimes[i]);
+            events.dequeued(removedIds.getLong(i), type, removedTimes[i], now - removedTimes[i], true);
+        }
+        LOG.debug("Removed {} of {} requested from top of queue", removedIds.size(), count);
+        return removedIds;
+    }
+
+    /**
+     * Rank the next entry not yet chosen of each type against each other, as {@link #rankHeads(Head[], long)} does
+     * for the heads
+     * @param times enqueued millis of the entries copied from each type, in queue order
+     * @param ids matching the times
+     * @param copied number of entries copied from each type
+     * @param next index of the next entry not yet chosen of each type
+     * @param now millis to rank at
+     * @return ordinal of the type whose next entry is top or -1 if every copied entry is chosen
+     */
+    private static int rankNext(final long[][] times, final long[][] ids, final int[] copied, final int[] next,
+            final long now) {
+        int topType = -1;
+        double topRank = 0;
+        for (final WorkRequestType type : TYPES) {
+            final int t = type.ordinal();
+            if(next[t] == copied[t]) {
+                continue;
+            }
+
+            final long time = times[t][next[t]];
+            final double rank = QueueOrder.rank(type, time, now);
+            if(topType == -1 || QueueOrder.ranksAhead(type, rank, time, ids[t][next[t]],
+                    TYPES[topType], topRank, times[topType][next[topType]], ids[topType][next[topType]])) {
+                topType = t;
+                topRank = rank;
+            }
+        }
+        return topType;
+    }
+
+    /**
+     * Read the head of each type and rank them against each other. Order within a type never changes, so the top of
+     * the queue is always one of these
+     * @param heads array to receive the head of each type, null for an empty type
+     * @param now millis to rank at
+     * @return ordinal of the type whose head is top or -1 if every type is empty
+     */
+    private int rankHeads(final Head[] heads, final long now) {
+        int topType = -1;
+        double topRank = 0;
+        for (final WorkRequestType type : TYPES) {
+            final Head head = typeIndexes[type.ordinal()].head;
+            heads[type.ordinal()] = head;
+            if(head == null) {
+                continue;
+            }
+
+            final double rank = QueueOrder.rank(type, head.time, now);
+            if(topType == -1 || QueueOrder.ranksAhead(type, rank, head.time, head.id,
+                    TYPES[topType], topRank, heads[topType].time, heads[topType].id)) {
+                topType = type.ordinal();
+                topRank = rank;
+            }
+        }
+        return topType;
+    }
+
+    /**
+     * Remove highest priority {@link WorkRequest} from queue, waiting up to the timeout for one to be enqueued if the
+     * queue is empty
+     * @param timeout how long to wait
+     * @param unit of timeout
+     * @return value removed or null if queue is still empty after the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public WorkRequest takeTop(final long timeout, final TimeUnit unit) throws InterruptedException {
+        WorkRequest top = removeTop();
+        if(top != null) {
+            return top;
+        }
+
+        long remaining = unit.toNanos(timeout);
+        takeLock.lockInterruptibly();
+        try {
+            // Registered before looking again, so an enqueue after this finds the waiter and signals it
+            takeWaiters.incrementAndGet();
+            try {
+                while ((top = removeTop()) == null) {
+                    if(remaining <= 0) {
+                        statistics.emptyDequeue();
+                        LOG.debug("Queue still empty after waiting, returning null");
+                        return null;
+                    }
+                    remaining = notEmpty.awaitNanos(remaining);
+                }
+            } finally {
+                takeWaiters.decrementAndGet();
+            }
+
+            // A consumer outside this lock may have taken the entry another waiter was signalled for, so pass on
+            if(takeWaiters.get() > 0 && !isEmpty()) {
+                notEmpty.signal();
+            }
+            return top;
+        } finally {
+            takeLock.unlock();
         }
+    }
+
+    /**
+     * Return a {@link WorkRequest} removed from the top that could not be handed to its consumer, as if it had never
+     * been removed. The change is logged like an enqueue but is neither counted nor told, as it undoes a removal that
+     * already was
+     * @param workRequest {@link WorkRequest} removed by this queue
+     * @return true if restored or false if its id has been enqueued again since it was removed
+     */
+    public boolean putBack(final WorkRequest workRequest) {
+        checkLog();
+        final WorkRequestType type = workRequest.getType();
+        final long time = toMillis(workRequest.getEnqueuedTime());
+        final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+        final long sequence;
+        typeIndex.lock.writeLock().lock();
+        try {
+            if(entries.putIfAbsent(workRequest.getId(), WorkRequestStore.entry(type, time)) != WorkRequestStore.NONE) {
+                return false;
+            }
+            sequence = appendEnqueue(workRequest.getId(), type, time);
+            typeIndex.add(time, workRequest.getId());
+        } finally {
+            typeIndex.lock.writeLock().unlock();
+        }
+
+        awaitDurable(sequence);
+        signalTakeWaiter();
+        return true;
+    }
+
+    private void signalTakeWaiter() {
+        // Lock only taken when someone is waiting so enqueue stays uncontended otherwise
+        if(takeWaiters.get() > 0) {
+            takeLock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                takeLock.unlock();
+            }
+        }
+    }
 
-        return workRequests.remove(sortedIds.get(0));
+    /**
+     * Copy every entry for a checkpoint without stopping changes for long. The log is rolled while every type is
+     * locked, so no change is part way between being logged and applied, then each type is copied in chunks taken under
+     * its read lock. A change made during the copy may or may not be in it but is always in the log after the roll, and
+     * each chunk carries on after the last key copied so an entry left untouched is never missed
+     * @param sink to receive the entries
+     * @return position in the log to replay from after loading the copy
+     */
+    public long checkpoint(final QueueLog.EntrySink sink) {
+        final long replayFrom;
+        for (final TypeIndex typeIndex : typeIndexes) {
+            typeIndex.lock.writeLock().lock();
+        }
+        try {
+            replayFrom = log.roll();
+        } finally {
+            for (int i = typeIndexes.length - 1; i >= 0; i--) {
+                typeIndexes[i].lock.writeLock().unlock();
+            }
+        }
+
+        final long[] times = new long[CHECKPOINT_CHUNK];
+        final long[] ids = new long[CHECKPOINT_CHUNK];
+        for (final WorkRequestType type : TYPES) {
+            final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+            int copied = 0;
+            do {
+                final boolean first = copied == 0;
+                final long lastTime = times[Math.max(copied - 1, 0)];
+                final long lastId = ids[Math.max(copied - 1, 0)];
+                typeIndex.lock.readLock().lock();
+                try {
+                    final int from = first ? 0 : typeIndex.tree.countWhile((time, id) ->
+                        time < lastTime || time == lastTime && id <= lastId);
+                    copied = typeIndex.tree.copyRange(from, times, ids, CHECKPOINT_CHUNK);
+                } finally {
+                    typeIndex.lock.readLock().unlock();
+                }
+                if(copied > 0) {
+                    sink.entries(type, times, ids, copied);
+                }
+            } while (copied == CHECKPOINT_CHUNK);
+        }
+        return replayFrom;
+    }
+
+    /**
+     * Apply an enqueue read back from the log, replacing any entry already restored for the id. Only called before the
+     * queue is shared so no locks are taken
+     */
+    private void restoreEnqueued(final long id, final WorkRequestType type, final long enqueuedMillis) {
+        restoreRemoved(id);
+        entries.putIfAbsent(id, WorkRequestStore.entry(type, enqueuedMillis));
+        typeIndexes[type.ordinal()].add(enqueuedMillis, id);
+    }
+
+    /**
+     * Apply the entries of a type read from a checkpoint, building its index in one pass if nothing of the type is
+     * restored yet. An id already restored as another type is skipped, a copy taken while changes carry on can hold an
+     * id under two types and the log replayed next settles which is right
+     */
+    private void restoreLoaded(final WorkRequestType type, final long[] times, final long[] ids, final int count) {
+        final TypeIndex typeIndex = typeIndexes[type.ordinal()];
+        if(!typeIndex.tree.isEmpty()) {
+            for (int i = 0; i < count; i++) {
+                restoreEnqueued(ids[i], type, times[i]);
+            }
+            return;
+        }
+
+        final boolean[] stored = entries.putAllIfAbsent(type, times, ids, count);
+        int kept = 0;
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if(stored[i]) {
+                times[kept] = times[i];
+                ids[kept] = ids[i];
+                total += times[i];
+                kept++;
+            }
+        }
+        typeIndex.tree.build(times, ids, kept);
+        typeIndex.enqueuedMillisTotal = total;
+        typeIndex.head = kept == 0 ? null : new Head(times[0], ids[0]);
+        typeIndex.size = kept;
+        version.incrementAndGet();
+    }
+
+    private void restoreRemoved(final long id) {
+        final long removed = entries.remove(id);
+        if(removed != WorkRequestStore.NONE) {
+            typeIndexes[WorkRequestStore.type(removed).ordinal()].remove(WorkRequestStore.enqueuedMillis(removed), id);
+        }
+    }
+
+    private boolean isEmpty() {
+        for (final TypeIndex typeIndex : typeIndexes) {
+            if(typeIndex.head != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static WorkRequest toWorkRequest(final long id, final long entry) {
+        return WorkRequestStore.type(entry).newWorkRequest(id, fromMillis(WorkRequestStore.enqueuedMillis(entry)));
+    }
+
+    private long currentMillis() {
+        return toMillis(LocalDateTime.now(clock));
+    }
+
+    /**
+     * Instant reads rank at, the start of the current second. Lists, pages, snapshots and positions all rank at it so
+     * they agree on the order while the queue is unchanged, rather than each at the millisecond it ran
+     */
+    private long rankMillis() {
+        return Math.floorDiv(currentMillis(), SNAPSHOT_MILLIS) * SNAPSHOT_MILLIS;
+    }
+
+    /**
+     * Millis of a local date time taken at UTC. Only differences between times are used so the zone does not matter as
+     * long as it is always the same
+     */
+    static long toMillis(final LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Inverse of {@link #toMillis(LocalDateTime)}
+     */
+    static LocalDateTime fromMillis(final long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1000000,
+            ZoneOffset.UTC);
     }
 }
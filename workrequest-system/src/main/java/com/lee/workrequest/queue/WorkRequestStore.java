@@ -0,0 +1,259 @@
+package com.lee.workrequest.queue;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.util.Arrays;
+
+/**
+ * Concurrent store of queued entries keyed by id. An entry is its enqueued epoch millis with a one byte type tag
+ * packed into the top byte, so the store is two parallel long arrays with no object per entry. Keys are striped over
+ * segments, each an open addressing table with linear probing guarded by its own lock
+ */
+class WorkRequestStore {
+
+    /** Returned when there is no entry for an id, never a valid entry as type tags start at 1 */
+    static final long NONE = 0;
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+    private static final int TAG_SHIFT = 56;
+
+    /** Earliest and latest enqueued millis that fit in an entry, over a million years either side of the epoch */
+    static final long MIN_ENQUEUED_MILLIS = -(1L << TAG_SHIFT - 1);
+    static final long MAX_ENQUEUED_MILLIS = (1L << TAG_SHIFT - 1) - 1;
+
+    private static final WorkRequestType[] TYPES = WorkRequestType.values();
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    WorkRequestStore() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Pack type and time into an entry. Times must be from {@link #MIN_ENQUEUED_MILLIS} to
+     * {@link #MAX_ENQUEUED_MILLIS}, others are not restored by {@link #enqueuedMillis(long)}
+     */
+    static long entry(final WorkRequestType type, final long enqueuedMillis) {
+        return (long) (type.ordinal() + 1) << TAG_SHIFT | enqueuedMillis & (1L << TAG_SHIFT) - 1;
+    }
+
+    static WorkRequestType type(final long entry) {
+        return TYPES[(int) (entry >>> TAG_SHIFT) - 1];
+    }
+
+    static long enqueuedMillis(final long entry) {
+        // Shift back down with sign extension to restore times before the epoch
+        return entry << 64 - TAG_SHIFT >> 64 - TAG_SHIFT;
+    }
+
+    /**
+     * @return entry for id or {@link #NONE}
+     */
+    long get(final long id) {
+        final long hash = hash(id);
+        final Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.get(id, hash);
+        }
+    }
+
+    /**
+     * Store entry for id if there is not one already
+     * @return {@link #NONE} if stored or the entry already stored for id
+     */
+    long putIfAbsent(final long id, final long entry) {
+        final long hash = hash(id);
+        final Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.putIfAbsent(id, hash, entry);
+        }
+    }
+
+    /**
+     * Remove entry for id
+     * @return entry removed or {@link #NONE} if there was none
+     */
+    long remove(final long id) {
+        final long hash = hash(id);
+        final Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.remove(id, hash);
+        }
+    }
+
+    /**
+     * @return number of entries, not a snapshot if modified concurrently
+     */
+    int size() {
+        int size = 0;
+        for (final Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Store entries of one type for each id without one, as a bulk load. Ids are grouped by segment first so each
+     * segment is grown once and filled while its table is in cache, rather than every put landing somewhere random
+     * @param type of every entry
+     * @param times enqueued millis
+     * @param ids matching the times
+     * @param count number of entries in the arrays
+     * @return whether each entry was stored, false where an entry already existed for the id
+     */
+    boolean[] putAllIfAbsent(final WorkRequestType type, final long[] times, final long[] ids, final int count) {
+        // Counting sort of the indexes by segment
+        final int[] starts = new int[SEGMENT_COUNT + 1];
+        for (int i = 0; i < count; i++) {
+            starts[segmentIndex(hash(ids[i])) + 1]++;
+        }
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            starts[i + 1] += starts[i];
+        }
+        final int[] order = new int[count];
+        final int[] next = Arrays.copyOf(starts, SEGMENT_COUNT);
+        for (int i = 0; i < count; i++) {
+            order[next[segmentIndex(hash(ids[i]))]++] = i;
+        }
+
+        final boolean[] stored = new boolean[count];
+        for (int index = 0; index < SEGMENT_COUNT; index++) {
+            final Segment segment = segments[index];
+            synchronized (segment) {
+                segment.ensureCapacity(segment.size + starts[index + 1] - starts[index]);
+                for (int k = starts[index]; k < starts[index + 1]; k++) {
+                    final int i = order[k];
+                    stored[i] = segment.putIfAbsent(ids[i], hash(ids[i]), entry(type, times[i])) == NONE;
+                }
+            }
+        }
+        return stored;
+    }
+
+    private Segment segmentFor(final long hash) {
+        return segments[segmentIndex(hash)];
+    }
+
+    private static int segmentIndex(final long hash) {
+        // Top bits pick the segment, low bits the slot within it
+        return (int) (hash >>> 58);
+    }
+
+    static long hash(final long id) {
+        // Stafford variant 13 mix so sequential ids spread over segments and slots
+        long hash = (id ^ (id >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Open addressing table, a slot is empty when its entry is {@link WorkRequestStore#NONE}. Removal shifts following
+     * entries back rather than leaving tombstones
+     */
+    private static final class Segment {
+        long[] ids = new long[INITIAL_SEGMENT_CAPACITY];
+        long[] entries = new long[INITIAL_SEGMENT_CAPACITY];
+        int size;
+
+        long get(final long id, final long hash) {
+            final int mask = ids.length - 1;
+            for (int slot = (int) hash & mask; entries[slot] != NONE; slot = (slot + 1) & mask) {
+                if(ids[slot] == id) {
+                    return entries[slot];
+                }
+            }
+            return NONE;
+        }
+
+        long putIfAbsent(final long id, final long hash, final long entry) {
+            final int mask = ids.length - 1;
+            int slot = (int) hash & mask;
+            for (; entries[slot] != NONE; slot = (slot + 1) & mask) {
+                if(ids[slot] == id) {
+                    return entries[slot];
+                }
+            }
+
+            ids[slot] = id;
+            entries[slot] = entry;
+            if(++size > ids.length * 3 / 4) {
+                resize();
+            }
+            return NONE;
+        }
+
+        long remove(final long id, final long hash) {
+            final int mask = ids.length - 1;
+            int slot = (int) hash & mask;
+            for (; entries[slot] != NONE; slot = (slot + 1) & mask) {
+                if(ids[slot] == id) {
+                    final long removed = entries[slot];
+                    shiftBack(slot);
+                    size--;
+                    return removed;
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * Empty the slot then move back any later entry in the same probe run that could no longer be found
+         */
+        private void shiftBack(int empty) {
+            final int mask = ids.length - 1;
+            entries[empty] = NONE;
+            for (int slot = (empty + 1) & mask; entries[slot] != NONE; slot = (slot + 1) & mask) {
+                final int home = (int) hash(ids[slot]) & mask;
+                // Still found by probing if its home slot lies cyclically in (empty, slot]
+                final boolean reachable = empty <= slot ? empty < home && home <= slot : empty < home || home <= slot;
+                if(!reachable) {
+                    ids[empty] = ids[slot];
+                    entries[empty] = entries[slot];
+                    entries[slot] = NONE;
+                    empty = slot;
+                }
+            }
+        }
+
+        /**
+         * Grow until size entries fit without a resize
+         */
+        void ensureCapacity(final int size) {
+            int capacity = ids.length;
+            while (size > capacity * 3 / 4) {
+                capacity *= 2;
+            }
+            if(capacity != ids.length) {
+                resize(capacity);
+            }
+        }
+
+        private void resize() {
+            resize(ids.length * 2);
+        }
+
+        private void resize(final int capacity) {
+            final long[] oldIds = ids;
+            final long[] oldEntries = entries;
+            ids = new long[capacity];
+            entries = new long[capacity];
+
+            final int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if(oldEntries[i] != NONE) {
+                    int slot = (int) hash(oldIds[i]) & mask;
+                    while (entries[slot] != NONE) {
+                        slot = (slot + 1) & mask;
+                    }
+                    ids[slot] = oldIds[i];
+                    entries[slot] = oldEntries[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.lee.workrequest.rest;
+
+import org.springframework.boot.jackson.JsonComponent;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.lee.workrequest.queue.LongList;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link LongList} as a JSON array straight from its backing array rather than boxing each value
+ */
+@JsonComponent
+public class LongListSerializer extends JsonSerializer<LongList> {
+
+    @Override
+    public void serialize(final LongList value, final JsonGenerator gen, final SerializerProvider serializers)
+            throws IOException {
+        gen.writeArray(value.rawArray(), 0, value.size());
+    }
+
+    @Override
+    public Class<LongList> handledType() {
+        return LongList.class;
+    }
+}
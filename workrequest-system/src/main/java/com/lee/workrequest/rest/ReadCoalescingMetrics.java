@@ -0,0 +1,32 @@
+package com.lee.workrequest.rest;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes how many whole queue reads of the {@link WorkRequestService} shared another caller's run
+ */
+public class ReadCoalescingMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "workrequests.reads.";
+
+    private final WorkRequestService workRequestService;
+
+    public ReadCoalescingMetrics(final WorkRequestService workRequestService) {
+        this.workRequestService = workRequestService;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final List<Metric<?>> metrics = new ArrayList<>();
+        for (final SingleFlight<?> flight : workRequestService.getReadFlights()) {
+            metrics.add(new Metric<>(PREFIX + flight.getName() + ".calls", flight.getCalls()));
+            metrics.add(new Metric<>(PREFIX + flight.getName() + ".coalesced", flight.getCoalesced()));
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,100 @@
+package com.lee.workrequest.rest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls of one computation so callers arriving together share a single run. A caller only joins
+ * a run that has not started yet, never one already in progress, so the result always reflects every change made
+ * before the call. At most one run is in progress and one waiting to start
+ * @param <V> result type, shared between callers so must not be modified
+ */
+public class SingleFlight<V> {
+
+    private final String name;
+    private final Supplier<V> computation;
+
+    /** Run waiting for the one in progress to finish, callers that find one here join it */
+    private final AtomicReference<CompletableFuture<V>> waiting = new AtomicReference<>();
+    private final Object runLock = new Object();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(final String name, final Supplier<V> computation) {
+        this.name = name;
+        this.computation = computation;
+    }
+
+    /**
+     * Run the computation or join a run that other callers are waiting on
+     * @return result of a run started after this call
+     */
+    public V get() {
+        calls.increment();
+        while (true) {
+            final CompletableFuture<V> joined = waiting.get();
+            if(joined != null) {
+                coalesced.increment();
+                return await(joined);
+            }
+
+            final CompletableFuture<V> run = new CompletableFuture<>();
+            if(waiting.compareAndSet(null, run)) {
+                return lead(run);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return calls made
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return calls that shared another caller's run rather than running the computation
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private V lead(final CompletableFuture<V> run) {
+        synchronized (runLock) {
+            // Started from here, so later callers must wait for the next run
+            waiting.set(null);
+            try {
+                final V result = computation.get();
+                run.complete(result);
+                return result;
+            } catch (final RuntimeException | Error e) {
+                run.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    private static <V> V await(final CompletableFuture<V> run) {
+        try {
+            return run.join();
+        } catch (final CompletionException e) {
+            // Rethrow what the computation threw so callers see the same exception as the leader
+            final Throwable cause = e.getCause();
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
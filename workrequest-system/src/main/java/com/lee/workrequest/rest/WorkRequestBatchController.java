@@ -0,0 +1,59 @@
+package com.lee.workrequest.rest;
+
+import org.jsondoc.core.annotation.Api;
+import org.jsondoc.core.annotation.ApiAuthNone;
+import org.jsondoc.core.annotation.ApiBodyObject;
+import org.jsondoc.core.annotation.ApiMethod;
+import org.jsondoc.core.annotation.ApiVersion;
+import org.jsondoc.core.pojo.ApiStage;
+import org.jsondoc.core.pojo.ApiVisibility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lee.workrequest.exception.WorkRequestInvalidBatchException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@Api(name = "Work Request Batch", description = "Submitting work requests in bulk", visibility = ApiVisibility.PUBLIC, stage = ApiStage.GA)
+@ApiVersion(since = "1.0.0")
+@ApiAuthNone
+@RestController
+@RequestMapping("/workrequests:batch")
+public class WorkRequestBatchController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkRequestBatchController.class);
+
+    static final String NDJSON = "application/x-ndjson";
+
+    private final WorkRequestService workRequestService;
+    private final WorkRequestValidation workRequestValidation;
+    private final ObjectMapper objectMapper;
+
+    public WorkRequestBatchController(WorkRequestService workRequestService, WorkRequestValidation workRequestValidation,
+            ObjectMapper objectMapper) {
+        this.workRequestService = workRequestService;
+        this.workRequestValidation = workRequestValidation;
+        this.objectMapper = objectMapper;
+    }
+
+    @ApiMethod(description = "Submit work requests in bulk as a JSON array or newline delimited JSON of {\"id\": 1, \"time\": \"2017-02-19T14:27:16.024\"} "
+            + "records, time optional. Content type application/json or application/x-ndjson. The body is streamed and applied as it is read. Responds with counts and the records not accepted")
+    @RequestMapping(method = RequestMethod.POST, consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public WorkRequestBatchResult enqueueBatch(@ApiBodyObject(clazz = String.class) final InputStream body) throws IOException {
+        LOG.info("Enqueue batch request");
+
+        try (final JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            return workRequestService.enqueueBatch(new WorkRequestBatchReader(parser, workRequestValidation));
+        } catch (final JsonProcessingException e) {
+            throw new WorkRequestInvalidBatchException(e.getOriginalMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.lee.workrequest.rest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Reads {"id": 1, "time": "2017-02-19T14:27:16.024"} records one at a time from a JSON array or from newline delimited
+ * JSON, so the body is never held in memory. Time is optional. A record that is not an object, has no whole number id,
+ * has an id out of range or a time that does not parse or is out of range is read as invalid rather than failing the
+ * batch
+ */
+public class WorkRequestBatchReader {
+
+    private final JsonParser parser;
+    private final WorkRequestValidation workRequestValidation;
+
+    private boolean started;
+    private boolean inArray;
+
+    private long id;
+    private LocalDateTime time;
+    private boolean valid;
+
+    public WorkRequestBatchReader(final JsonParser parser, final WorkRequestValidation workRequestValidation) {
+        this.parser = parser;
+        this.workRequestValidation = workRequestValidation;
+    }
+
+    /**
+     * Read the next record
+     * @return false if there are no more records
+     * @throws IOException if the body cannot be read or is not valid JSON
+     */
+    public boolean next() throws IOException {
+        JsonToken token = parser.nextToken();
+        if(!started) {
+            started = true;
+            if(token == JsonToken.START_ARRAY) {
+                inArray = true;
+                token = parser.nextToken();
+            }
+        }
+
+        if(token == null || inArray && token == JsonToken.END_ARRAY) {
+            return false;
+        }
+
+        readRecord(token);
+        return true;
+    }
+
+    /**
+     * @return id of the current record, 0 if it has none
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return time of the current record or null if it has none
+     */
+    public LocalDateTime getTime() {
+        return time;
+    }
+
+    /**
+     * @return true if the current record can be enqueued
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    private void readRecord(final JsonToken token) throws IOException {
+        id = 0;
+        time = null;
+        valid = false;
+
+        if(token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+
+        boolean validId = false;
+        boolean validTime = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken value = parser.nextToken();
+            if("id".equals(field)) {
+                validId = value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER;
+                id = validId ? parser.getLongValue() : 0;
+            } else if("time".equals(field) && value == JsonToken.VALUE_STRING) {
+                validTime = parseTime(parser.getText());
+            } else if("time".equals(field) && value != JsonToken.VALUE_NULL) {
+                validTime = false;
+            }
+            parser.skipChildren();
+        }
+
+        valid = validId && validTime && workRequestValidation.isIdInRange(id)
+            && workRequestValidation.isTimeInRange(time);
+    }
+
+    private boolean parseTime(final String text) {
+        try {
+            time = LocalDateTime.parse(text);
+            return true;
+        } catch (final DateTimeParseException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.lee.workrequest.rest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Outcome of a batch of work requests. Counts cover every record, only records that were not accepted are listed
+ */
+public class WorkRequestBatchResult {
+
+    /**
+     * Outcome of one record
+     */
+    public enum Outcome {
+        ACCEPTED, DUPLICATE, INVALID;
+    }
+
+    /**
+     * Record that was not accepted, identified by its position in the batch
+     */
+    public static class Rejected {
+        private final int index;
+        private final Long id;
+        private final Outcome outcome;
+
+        Rejected(final int index, final Long id, final Outcome outcome) {
+            this.index = index;
+            this.id = id;
+            this.outcome = outcome;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Outcome getOutcome() {
+            return outcome;
+        }
+    }
+
+    private int accepted;
+    private int duplicate;
+    private int invalid;
+    private final List<Rejected> rejected = new ArrayList<>();
+
+    void accepted() {
+        accepted++;
+    }
+
+    void duplicate(final int index, final long id) {
+        duplicate++;
+        rejected.add(new Rejected(index, id, Outcome.DUPLICATE));
+    }
+
+    void invalid(final int index) {
+        invalid++;
+        rejected.add(new Rejected(index, null, Outcome.INVALID));
+    }
+
+    /**
+     * Duplicates are only known once their chunk is applied, after later invalid records, so put back in batch order
+     */
+    void finish() {
+        rejected.sort(Comparator.comparingInt(Rejected::getIndex));
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public int getDuplicate() {
+        return duplicate;
+    }
+
+    public int getInvalid() {
+        return invalid;
+    }
+
+    /**
+     * @return records not accepted in batch order
+     */
+    public List<Rejected> getRejected() {
+        return rejected;
+    }
+}
@@ -2,6 +2,8 @@ package com.lee.workrequest.rest;
 
 import org.jsondoc.core.annotation.Api;
 import org.jsondoc.core.annotation.ApiAuthNone;
+import org.jsondoc.core.annotation.ApiBodyObject;
+import org.jsondoc.core.annotation.ApiHeader;
 import org.jsondoc.core.annotation.ApiMethod;
 import org.jsondoc.core.annotation.ApiObject;
 import org.jsondoc.core.annotation.ApiPathParam;
@@ -12,18 +14,28 @@ import org.jsondoc.core.pojo.ApiVisibility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.LongList;
+import com.lee.workrequest.queue.QueuePage;
+import com.lee.workrequest.queue.QueueSnapshot;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Api(name = "Work Request System", description = "Functionality related to submitting and managing work requests", visibility = ApiVisibility.PUBLIC, stage = ApiStage.GA)
@@ -35,12 +47,24 @@ public class WorkRequestController {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkRequestController.class);
 
+    /** Response header carrying the cursor for the next page */
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /** Response header carrying the age in milliseconds of the snapshot a bounded read was served from */
+    static final String SNAPSHOT_AGE_HEADER = "X-Snapshot-Age-Millis";
+
+    /** Page size when a cursor is supplied without a limit */
+    static final int DEFAULT_LIMIT = 50;
+
     private final WorkRequestService workRequestService;
     private final WorkRequestValidation workRequestValidation;
+    private final WorkRequestDispatcher workRequestDispatcher;
+    private final WorkRequestSnapshotRefresher workRequestSnapshotRefresher;
+    private final WorkRequestPositionStreams workRequestPositionStreams;
 
-    @ApiObject(name = "GetOperation - AVERAGE_WAIT_TIME, IDS")
+    @ApiObject(name = "GetOperation - AVERAGE_WAIT_TIME, WAIT_TIME_PERCENTILES, IDS")
     public enum GetOperation {
-        AVERAGE_WAIT_TIME, IDS;
+        AVERAGE_WAIT_TIME, WAIT_TIME_PERCENTILES, IDS;
     };
 
     @ApiObject(name = "GetIdOperation - POSTION")
@@ -48,14 +72,24 @@ public class WorkRequestController {
         POSITION;
     };
 
+    @ApiObject(name = "Consistency - LATEST, BOUNDED")
+    public enum Consistency {
+        LATEST, BOUNDED;
+    };
+
     @ApiObject(name = "DeleteOperation - TOP")
     public enum DeleteOperation {
         TOP;
     };
 
-    public WorkRequestController(WorkRequestService workRequestService, WorkRequestValidation workRequestValidation) {
+    public WorkRequestController(WorkRequestService workRequestService, WorkRequestValidation workRequestValidation,
+            WorkRequestDispatcher workRequestDispatcher, WorkRequestSnapshotRefresher workRequestSnapshotRefresher,
+            WorkRequestPositionStreams workRequestPositionStreams) {
         this.workRequestService = workRequestService;
         this.workRequestValidation = workRequestValidation;
+        this.workRequestDispatcher = workRequestDispatcher;
+        this.workRequestSnapshotRefresher = workRequestSnapshotRefresher;
+        this.workRequestPositionStreams = workRequestPositionStreams;
     }
 
     @ApiMethod(description = "Submit work request to the queue. Optionally pass enqueued time")
@@ -68,49 +102,97 @@ public class WorkRequestController {
         LOG.info("Enqueue request with id: {} and time: {}", id, time);
 
         workRequestValidation.idInRange(id);
+        workRequestValidation.timeInRange(time);
         workRequestService.enqueue(id, time);
     }
 
-    @ApiMethod(description = "Get work request queue or user operation for ids only or average wait time")
+    @ApiMethod(description = "Get work request queue or user operation for ids only, average wait time or wait time percentiles in milliseconds")
     @RequestMapping(method = RequestMethod.GET)
     public ResponseEntity<?> getWorkRequests(@ApiQueryParam(name = "operation", description = "Operation to perform on this resource")
     @RequestParam(required = false) final GetOperation operation,
-    @ApiQueryParam(name = "time", description = "Used with AVERAGE_WAIT_TIME operation to define time to take duration to")
-    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime time) {
-        LOG.info("Get work requests request with operation: {} and time: {}", operation, time);
+    @ApiQueryParam(name = "time", description = "Used with AVERAGE_WAIT_TIME and WAIT_TIME_PERCENTILES operations to define time to take duration of queued work requests to")
+    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) final LocalDateTime time,
+    @ApiQueryParam(name = "type", description = "Used with AVERAGE_WAIT_TIME and WAIT_TIME_PERCENTILES operations to only include one type of work request")
+    @RequestParam(required = false) final WorkRequestType type,
+    @ApiQueryParam(name = "limit", description = "Return only this many work requests or ids from the top, 1 to 1000. The cursor for the next page is in the X-Next-Cursor header")
+    @RequestParam(required = false) final Integer limit,
+    @ApiQueryParam(name = "cursor", description = "Return the page after the one whose X-Next-Cursor header this is")
+    @RequestParam(required = false) final String cursor,
+    @ApiQueryParam(name = "consistency", description = "BOUNDED serves the queue or ids from a background snapshot at most a refresh interval old, its age is in the X-Snapshot-Age-Millis header. Defaults to LATEST")
+    @RequestParam(required = false) final Consistency consistency,
+    @ApiHeader(name = HttpHeaders.IF_NONE_MATCH, description = "ETag of a previous response, Not Modified is returned if the work requests are unchanged")
+    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) final String ifNoneMatch) {
+        LOG.info("Get work requests request with operation: {}, time: {}, type: {}, limit: {}, cursor: {} and consistency: {}",
+                operation, time, type, limit, cursor, consistency);
 
         final HttpStatus responseStatus = HttpStatus.OK;
         ResponseEntity<?> responseEntity;
 
         if (operation == GetOperation.AVERAGE_WAIT_TIME){
-            responseEntity = new ResponseEntity<>(workRequestService.getAverageWaitTime(time), responseStatus);
-        } else if (operation == GetOperation.IDS){
-            responseEntity = handleGetIds(responseStatus);
+            final long averageWaitTime = type == null ? workRequestService.getAverageWaitTime(time)
+                    : workRequestService.getAverageWaitTime(time, type);
+            responseEntity = new ResponseEntity<>(averageWaitTime, responseStatus);
+        } else if (operation == GetOperation.WAIT_TIME_PERCENTILES){
+            responseEntity = new ResponseEntity<>(workRequestService.getWaitTimes(time, type), responseStatus);
+        } else if (limit != null || cursor != null){
+            responseEntity = handleGetPage(operation, limit == null ? DEFAULT_LIMIT : limit, cursor);
+        } else if (consistency == Consistency.BOUNDED){
+            final WorkRequestSnapshotRefresher.Published published = workRequestSnapshotRefresher.getPublished();
+            final HttpHeaders headers = new HttpHeaders();
+            headers.set(SNAPSHOT_AGE_HEADER, Long.toString(published.getAgeMillis()));
+            responseEntity = handleGetSnapshot(operation, published.getSnapshot(), ifNoneMatch, headers);
         } else {
-            responseEntity = handleGetWorkRequests(responseStatus);
+            responseEntity = handleGetSnapshot(operation, workRequestService.getSnapshot(), ifNoneMatch, new HttpHeaders());
         }
 
         return responseEntity;
     }
 
-    private ResponseEntity<List<Long>> handleGetIds(final HttpStatus responseStatus){
-        final List<Long> sortedIds = workRequestService.getSortedIds();
+    private ResponseEntity<?> handleGetPage(final GetOperation operation, final int limit, final String cursor){
+        workRequestValidation.limitInRange(limit);
+        final QueuePage page = workRequestService.getPage(limit, cursor);
 
-        if(sortedIds.isEmpty()){
+        final List<?> body = operation == GetOperation.IDS ? page.getIds() : page.getWorkRequests();
+        if(body.isEmpty()){
             return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        } else {
-            return new ResponseEntity<>(sortedIds, responseStatus);
         }
+
+        final HttpHeaders headers = new HttpHeaders();
+        if(page.getNextCursor() != null){
+            headers.set(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
-    private ResponseEntity<List<WorkRequest>> handleGetWorkRequests(final HttpStatus responseStatus){
-        final List<WorkRequest> sortedWorkRequests = workRequestService.getSortedWorkRequests();
+    private ResponseEntity<?> handleGetSnapshot(final GetOperation operation, final QueueSnapshot snapshot,
+            final String ifNoneMatch, final HttpHeaders headers){
 
-        if(sortedWorkRequests.isEmpty()){
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        // Ids and work requests are different representations so must not share a tag
+        final String eTag = "\"" + snapshot.getTag() + (operation == GetOperation.IDS ? "-ids" : "") + "\"";
+        if(matchesETag(ifNoneMatch, eTag)){
+            LOG.debug("Work requests unchanged since ETag: {}", eTag);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).eTag(eTag).build();
+        }
+
+        final List<?> body = operation == GetOperation.IDS ? snapshot.getIds() : snapshot.getWorkRequests();
+        if(body.isEmpty()){
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).headers(headers).eTag(eTag).build();
         } else {
-            return new ResponseEntity<>(sortedWorkRequests, responseStatus);
+            return ResponseEntity.ok().headers(headers).eTag(eTag).body(body);
+        }
+    }
+
+    private static boolean matchesETag(final String ifNoneMatch, final String eTag){
+        if(ifNoneMatch == null){
+            return false;
         }
+        for (final String candidate : ifNoneMatch.split(",")) {
+            final String trimmed = candidate.trim();
+            if(trimmed.equals("*") || trimmed.equals(eTag) || trimmed.equals("W/" + eTag)){
+                return true;
+            }
+        }
+        return false;
     }
 
     @ApiMethod(description = "Get specific work request or use operation to get position")
@@ -118,13 +200,20 @@ public class WorkRequestController {
     public ResponseEntity<?> getForId(@ApiPathParam(name = "id", description = "Requester id")
     @PathVariable final long id,
     @ApiQueryParam(name = "operation", description = "Operation to perform on this resource")
-    @RequestParam(required = false) final GetIdOperation operation) {
-        LOG.info("Get work request with id: {} and operation: {}", id, operation);
+    @RequestParam(required = false) final GetIdOperation operation,
+    @ApiQueryParam(name = "consistency", description = "Used with POSITION operation, BOUNDED reads the position from a background snapshot at most a refresh interval old, its age is in the X-Snapshot-Age-Millis header. Defaults to LATEST")
+    @RequestParam(required = false) final Consistency consistency) {
+        LOG.info("Get work request with id: {}, operation: {} and consistency: {}", id, operation, consistency);
 
         final HttpStatus responseStatus = HttpStatus.OK;
         ResponseEntity<?> responseEntity;
 
-        if(operation == GetIdOperation.POSITION) {
+        if(operation == GetIdOperation.POSITION && consistency == Consistency.BOUNDED) {
+            final WorkRequestSnapshotRefresher.Published published = workRequestSnapshotRefresher.getPublished();
+            final HttpHeaders headers = new HttpHeaders();
+            headers.set(SNAPSHOT_AGE_HEADER, Long.toString(published.getAgeMillis()));
+            responseEntity = new ResponseEntity<>(published.getPosition(id), headers, responseStatus);
+        } else if(operation == GetIdOperation.POSITION) {
             responseEntity = new ResponseEntity<>(workRequestService.getPosition(id), responseStatus);
         } else {
             responseEntity = new ResponseEntity<>(workRequestService.getWorkRequest(id), responseStatus);
@@ -133,6 +222,33 @@ public class WorkRequestController {
         return responseEntity;
     }
 
+    @ApiMethod(description = "Stream the position of a work request as server-sent events instead of polling for it. A position event carries the current position then each new one, "
+            + "a dequeued event carrying the id ends the stream once it leaves the queue. Streams time out after a few minutes and the client reconnects")
+    @RequestMapping(value = "/{id}/position-stream", method = RequestMethod.GET)
+    public SseEmitter getPositionStream(@ApiPathParam(name = "id", description = "Requester id")
+    @PathVariable final long id) {
+        LOG.info("Position stream request with id: {}", id);
+
+        workRequestValidation.idInRange(id);
+        return workRequestPositionStreams.open(id);
+    }
+
+    @ApiMethod(description = "Get the positions of many work requests, all ranked at the same instant. Body is a JSON array of 1 to 1000 requester ids. "
+            + "Responds with each id and its position in the same order, position is null for an id not in the queue")
+    @RequestMapping(value = "/positions", method = RequestMethod.POST)
+    public List<WorkRequestPosition> getPositions(@ApiBodyObject(clazz = long[].class) @RequestBody final long[] ids) {
+        LOG.info("Get positions request for {} ids", ids.length);
+
+        workRequestValidation.countInRange(ids.length);
+        final int[] positions = workRequestService.getPositions(ids);
+
+        final List<WorkRequestPosition> workRequestPositions = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            workRequestPositions.add(new WorkRequestPosition(ids[i], positions[i] == -1 ? null : positions[i]));
+        }
+        return workRequestPositions;
+    }
+
     @ApiMethod(description = "Remove specific work request")
     @RequestMapping(value = "/{id}", method = RequestMethod.DELETE)
     @ResponseStatus(value = HttpStatus.NO_CONTENT)
@@ -155,5 +271,30 @@ public class WorkRequestController {
         return workRequestService.dequeueTop();
     }
 
+    @ApiMethod(description = "Remove up to count highest priority work requests as one operation, requires operation")
+    @RequestMapping(method = RequestMethod.DELETE, params = {"count", "!timeout"})
+    @ResponseStatus(value = HttpStatus.OK)
+    public LongList dequeueTop(@ApiQueryParam(name = "operation", description = "Operation to perform on this resource")
+    @RequestParam(required = true) final DeleteOperation operation,
+    @ApiQueryParam(name = "count", description = "Maximum number of work requests to remove, 1 to 1000. Ids are returned in priority order")
+    @RequestParam final int count) {
+        LOG.info("Dequeue work requests request with operation: {} and count: {}", operation, count);
+
+        workRequestValidation.countInRange(count);
+        return workRequestService.dequeueTop(count);
+    }
+
+    @ApiMethod(description = "Remove highest priority work request, waiting for one to be submitted if the queue is empty. Requires operation")
+    @RequestMapping(method = RequestMethod.DELETE, params = "timeout")
+    public DeferredResult<Long> takeTop(@ApiQueryParam(name = "operation", description = "Operation to perform on this resource")
+    @RequestParam(required = true) final DeleteOperation operation,
+    @ApiQueryParam(name = "timeout", description = "Seconds to wait for a work request before responding as empty, 1 to 55")
+    @RequestParam final long timeout) {
+        LOG.info("Dequeue work requests request with operation: {} and timeout: {}", operation, timeout);
+
+        workRequestValidation.timeoutInRange(timeout);
+        return workRequestDispatcher.takeTop(timeout);
+    }
+
 
 }
@@ -0,0 +1,103 @@
+package com.lee.workrequest.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.lee.workrequest.exception.WorkRequestQueueEmptyException;
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands the top of the {@link WorkRequestQueue} to long polling consumers. Requests wait as {@link DeferredResult}s
+ * rather than holding a request thread each, and a single dispatcher thread serves them in arrival order. It serves
+ * one waiter at a time, so dispatch is limited to one removal, and its log write, at a time
+ */
+public class WorkRequestDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkRequestDispatcher.class);
+
+    private final WorkRequestQueue workRequestQueue;
+    private final BlockingQueue<Waiter> waiters = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+
+    /**
+     * Consumer waiting for the top of the queue until its deadline
+     */
+    private static final class Waiter {
+        final DeferredResult<Long> result;
+        final long deadlineNanos;
+
+        Waiter(final DeferredResult<Long> result, final long deadlineNanos) {
+            this.result = result;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    public WorkRequestDispatcher(final WorkRequestQueue workRequestQueue) {
+        this.workRequestQueue = workRequestQueue;
+        dispatcher = new Thread(this::dispatch, "work-request-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Wait for the highest priority {@link WorkRequest} and remove it. Waiters are served first come first served,
+     * so a request never jumps ahead of one already waiting
+     * @param timeout seconds to wait before the result is a {@link WorkRequestQueueEmptyException}
+     * @return result set to the removed id when one is available
+     */
+    public DeferredResult<Long> takeTop(final long timeout) {
+        final long timeoutMillis = TimeUnit.SECONDS.toMillis(timeout);
+        final DeferredResult<Long> result = new DeferredResult<>(timeoutMillis, new WorkRequestQueueEmptyException());
+        waiters.add(new Waiter(result, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)));
+        return result;
+    }
+
+    /**
+     * Stop dispatching, consumers still waiting time out
+     */
+    public void shutdown() {
+        dispatcher.interrupt();
+    }
+
+    private void dispatch() {
+        try {
+            while (true) {
+                final Waiter waiter = waiters.take();
+                if(waiter.result.isSetOrExpired()) {
+                    continue;
+                }
+
+                try {
+                    serve(waiter);
+                } catch (final RuntimeException e) {
+                    // Keep serving, the queue may recover and the next waiter should not hang until it times out
+                    LOG.error("Failed to take the top of the queue for a waiting consumer", e);
+                    waiter.result.setErrorResult(e);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.debug("Dispatcher stopped");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve(final Waiter waiter) throws InterruptedException {
+        final WorkRequest top = workRequestQueue.takeTop(waiter.deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        if(top == null) {
+            waiter.result.setErrorResult(new WorkRequestQueueEmptyException());
+        } else if(!waiter.result.setResult(top.getId())) {
+            // Timed out between being taken and the result being set, so put it back for the next consumer
+            LOG.debug("Consumer for id: {} timed out, returning it to the queue", top.getId());
+            if(!workRequestQueue.putBack(top)) {
+                LOG.error("Id: {} was enqueued again before it could be returned, its original entry is lost",
+                    top.getId());
+            }
+        }
+    }
+}
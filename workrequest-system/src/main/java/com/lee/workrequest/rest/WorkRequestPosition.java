@@ -0,0 +1,23 @@
+package com.lee.workrequest.rest;
+
+/**
+ * Position of one requester id in the queue, position is null if the id is not in the queue
+ */
+public class WorkRequestPosition {
+
+    private final long id;
+    private final Integer position;
+
+    WorkRequestPosition(final long id, final Integer position) {
+        this.id = id;
+        this.position = position;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Integer getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,293 @@
+package com.lee.workrequest.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
+import com.lee.workrequest.journal.EventJournal;
+import com.lee.workrequest.journal.JournalConsumer;
+import com.lee.workrequest.journal.JournalEvent;
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes the position of a {@link WorkRequest} to each requester streaming it as server-sent events, in place of each
+ * requester polling for it. Reads the {@link EventJournal} to learn that the queue changed, then a single background
+ * thread ranks every streamed id in one {@link WorkRequestQueue#getPositions(long[])} pass per refresh interval and
+ * sends a position only to the streams it changed for. Ranks also move with time, so the ids are ranked at least once a
+ * second while nothing changes.
+ * <p>
+ * The journal is only subscribed to and the refresh only scheduled while a stream is open, so without streams the
+ * journal keeps no events for them. Sends run on a separate pool rather than the refresh thread, one at a time per
+ * stream and always of its latest position, so a slow requester skips positions rather than delaying the others
+ */
+public class WorkRequestPositionStreams implements JournalConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkRequestPositionStreams.class);
+
+    static final String POSITION_EVENT = "position";
+    static final String DEQUEUED_EVENT = "dequeued";
+
+    private static final long IDLE_RANK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /** Last position of a stream that has not been sent one yet */
+    private static final int UNSENT = -2;
+    private static final int SENDERS = 4;
+
+    private final WorkRequestQueue workRequestQueue;
+    private final EventJournal eventJournal;
+    private final long refreshMillis;
+    private final long timeoutMillis;
+    private final ScheduledThreadPoolExecutor refresher;
+    private final Executor sender;
+
+    private final Map<Long, Set<PositionStream>> streams = new ConcurrentHashMap<>();
+    /** Set when the queue changes or a stream opens, cleared when the ids are ranked */
+    private final AtomicBoolean changed = new AtomicBoolean();
+    /** Only used by the refresher thread */
+    private long rankedNanos;
+
+    /** Streams open, the journal subscription and refresh schedule exist while it is above zero. Guarded by this */
+    private int open;
+    private EventJournal.Subscription subscription;
+    private ScheduledFuture<?> refreshing;
+
+    /**
+     * One requester's stream, the position last ranked for it and the position last sent to it
+     */
+    private static final class PositionStream {
+        final long id;
+        final SseEmitter emitter;
+        volatile int ranked = UNSENT;
+        volatile int sent = UNSENT;
+        /** Set while a send of the stream is queued or running */
+        final AtomicBoolean sending = new AtomicBoolean();
+
+        PositionStream(final long id, final SseEmitter emitter) {
+            this.id = id;
+            this.emitter = emitter;
+        }
+    }
+
+    /**
+     * @param workRequestQueue queue to rank
+     * @param eventJournal journal of the queue's changes, subscribed to while a stream is open
+     * @param refreshMillis milliseconds between checks for a change, the most a pushed position lags the queue
+     * @param timeoutSeconds seconds a stream stays open before the requester has to reconnect
+     */
+    public WorkRequestPositionStreams(final WorkRequestQueue workRequestQueue, final EventJournal eventJournal,
+            final long refreshMillis, final long timeoutSeconds) {
+        this(workRequestQueue, eventJournal, refreshMillis, timeoutSeconds, senders());
+    }
+
+    /**
+     * @param sender runs the sends to each stream
+     */
+    WorkRequestPositionStreams(final WorkRequestQueue workRequestQueue, final EventJournal eventJournal,
+            final long refreshMillis, final long timeoutSeconds, final Executor sender) {
+        this.workRequestQueue = workRequestQueue;
+        this.eventJournal = eventJournal;
+        this.refreshMillis = refreshMillis;
+        this.sender = sender;
+        timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        refresher = new ScheduledThreadPoolExecutor(1, daemon("work-request-position-streams"));
+        // Threads end once idle rather than parking until the next stream
+        refresher.setKeepAliveTime(1, TimeUnit.MINUTES);
+        refresher.allowCoreThreadTimeOut(true);
+        refresher.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadPoolExecutor senders() {
+        final ThreadPoolExecutor senders = new ThreadPoolExecutor(SENDERS, SENDERS, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), daemon("work-request-position-sender"));
+        senders.allowCoreThreadTimeOut(true);
+        return senders;
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Open a stream of the position of a {@link WorkRequest}. The current position is sent on the next refresh, then
+     * each new position, then a dequeued event once it leaves the queue
+     * @param id of {@link WorkRequest}
+     * @return emitter of the stream
+     * @throws WorkRequestDoesNotExistException if no {@link WorkRequest} exists with that id
+     */
+    public SseEmitter open(final long id) {
+        return open(id, new SseEmitter(timeoutMillis));
+    }
+
+    SseEmitter open(final long id, final SseEmitter emitter) {
+        if(workRequestQueue.get(id) == null) {
+            throw new WorkRequestDoesNotExistException(id);
+        }
+
+        final PositionStream stream = new PositionStream(id, emitter);
+        emitter.onCompletion(() -> remove(stream));
+        emitter.onTimeout(() -> remove(stream));
+        synchronized (this) {
+            streams.compute(id, (key, idStreams) -> {
+                final Set<PositionStream> added = idStreams == null ? ConcurrentHashMap.newKeySet() : idStreams;
+                added.add(stream);
+                return added;
+            });
+            changed.set(true);
+            if(open++ == 0) {
+                subscription = eventJournal.subscribe("position-streams", this);
+                refreshing = refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis,
+                    TimeUnit.MILLISECONDS);
+                LOG.debug("Position streams started");
+            }
+        }
+        LOG.debug("Position stream opened for id: {}", id);
+        return emitter;
+    }
+
+    private synchronized void remove(final PositionStream stream) {
+        final Set<PositionStream> idStreams = streams.get(stream.id);
+        if(idStreams == null || !idStreams.remove(stream)) {
+            return;
+        }
+        if(idStreams.isEmpty()) {
+            streams.remove(stream.id);
+        }
+        if(--open == 0) {
+            refreshing.cancel(false);
+            subscription.close();
+            LOG.debug("Position streams stopped, no stream is open");
+        }
+    }
+
+    /**
+     * @return true while subscribed to the journal, only while a stream is open
+     */
+    synchronized boolean isSubscribed() {
+        return open > 0;
+    }
+
+    /**
+     * @return number of streams open
+     */
+    public int size() {
+        int size = 0;
+        for (final Set<PositionStream> idStreams : streams.values()) {
+            size += idStreams.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void onEvent(final JournalEvent event) {
+        // Positions are ranked once per batch rather than per event
+    }
+
+    @Override
+    public void onBatchEnd() {
+        changed.set(true);
+    }
+
+    /**
+     * Stop pushing positions and close every stream
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+        if(sender instanceof ExecutorService) {
+            ((ExecutorService) sender).shutdownNow();
+        }
+        for (final Set<PositionStream> idStreams : streams.values()) {
+            for (final PositionStream stream : idStreams) {
+                stream.emitter.complete();
+                remove(stream);
+            }
+        }
+    }
+
+    /**
+     * Rank every streamed id if the queue changed or ranks have moved with time, and queue a send of the positions that
+     * changed
+     */
+    void refresh() {
+        try {
+            final long now = System.nanoTime();
+            if(streams.isEmpty() || !changed.getAndSet(false) && now - rankedNanos < IDLE_RANK_NANOS) {
+                return;
+            }
+            rankedNanos = now;
+
+            final long[] ids = streams.keySet().stream().mapToLong(Long::longValue).toArray();
+            final int[] positions = workRequestQueue.getPositions(ids);
+            for (int i = 0; i < ids.length; i++) {
+                final Set<PositionStream> idStreams = streams.get(ids[i]);
+                if(idStreams != null) {
+                    for (final PositionStream stream : idStreams) {
+                        stream.ranked = positions[i];
+                        if(positions[i] != stream.sent && stream.sending.compareAndSet(false, true)) {
+                            sender.execute(() -> drain(stream));
+                        }
+                    }
+                }
+            }
+        } catch (final RuntimeException e) {
+            // An exception would cancel the schedule, try again next interval
+            LOG.error("Position stream refresh failed", e);
+        }
+    }
+
+    /**
+     * Send the latest position ranked for a stream until it has been sent, on the sender pool. Positions ranked while
+     * a send is running are sent by the same drain, so sends to one stream never overlap
+     */
+    private void drain(final PositionStream stream) {
+        do {
+            int position;
+            while ((position = stream.ranked) != stream.sent) {
+                if(!send(stream, position)) {
+                    return;
+                }
+            }
+            stream.sending.set(false);
+        } while (stream.ranked != stream.sent && stream.sending.compareAndSet(false, true));
+    }
+
+    /**
+     * @return false if the stream is closed and no more should be sent
+     */
+    private boolean send(final PositionStream stream, final int position) {
+        try {
+            if(position == -1) {
+                stream.emitter.send(SseEmitter.event().name(DEQUEUED_EVENT).data(stream.id));
+                stream.emitter.complete();
+                remove(stream);
+                return false;
+            }
+            stream.emitter.send(SseEmitter.event().name(POSITION_EVENT).data(position));
+            stream.sent = position;
+            return true;
+        } catch (final IOException | IllegalStateException e) {
+            // The requester went away or the stream already completed
+            LOG.debug("Position stream for id: {} closed", stream.id, e);
+            remove(stream);
+            return false;
+        }
+    }
+}
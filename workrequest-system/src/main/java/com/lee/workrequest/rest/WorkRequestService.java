@@ -5,12 +5,23 @@ import org.slf4j.LoggerFactory;
 
 import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
 import com.lee.workrequest.exception.WorkRequestExistsException;
+import com.lee.workrequest.exception.WorkRequestInvalidCursorException;
 import com.lee.workrequest.exception.WorkRequestQueueEmptyException;
 import com.lee.workrequest.model.WorkRequest;
 import com.lee.workrequest.model.WorkRequestFactory;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.LongList;
+import com.lee.workrequest.queue.QueueCursor;
+import com.lee.workrequest.queue.QueuePage;
+import com.lee.workrequest.queue.QueueSnapshot;
+import com.lee.workrequest.queue.QueueStatistics;
+import com.lee.workrequest.queue.WaitTimePercentiles;
 import com.lee.workrequest.queue.WorkRequestQueue;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -21,12 +32,19 @@ public class WorkRequestService {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkRequestService.class);
 
+    /** Records of a batch applied to the queue at a time */
+    static final int BATCH_CHUNK_SIZE = 1024;
+
     private final WorkRequestFactory workRequestFactory;
     private final WorkRequestQueue workRequestQueue;
 
+    /** Whole queue reads that must rank, concurrent callers share one ranking pass */
+    private final SingleFlight<QueueSnapshot> snapshotReads;
+
     public WorkRequestService(final WorkRequestFactory workRequestFactory, final WorkRequestQueue workRequestQueue){
         this.workRequestFactory = workRequestFactory;
         this.workRequestQueue = workRequestQueue;
+        snapshotReads = new SingleFlight<>("snapshot", workRequestQueue::getSnapshot);
     }
 
     /**
@@ -50,6 +68,67 @@ public class WorkRequestService {
         }
     }
 
+    /**
+     * Add every valid record of a batch to the {@link WorkRequestQueue}, applied in chunks as they are read. Records
+     * whose id already exists or that are not valid are reported in the result rather than thrown
+     * @param reader of the batch records
+     * @return outcome of the batch
+     * @throws IOException if the batch cannot be read, records before the fault have been applied
+     */
+    public WorkRequestBatchResult enqueueBatch(final WorkRequestBatchReader reader) throws IOException {
+        final WorkRequestBatchResult result = new WorkRequestBatchResult();
+        final List<WorkRequest> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        final int[] chunkIndexes = new int[BATCH_CHUNK_SIZE];
+
+        for (int index = 0; reader.next(); index++) {
+            if(!reader.isValid()) {
+                result.invalid(index);
+                continue;
+            }
+
+            final LocalDateTime time = reader.getTime();
+            chunkIndexes[chunk.size()] = index;
+            chunk.add(time == null ? workRequestFactory.getWorkRequest(reader.getId())
+                    : workRequestFactory.getWorkRequest(reader.getId(), time));
+            if(chunk.size() == BATCH_CHUNK_SIZE) {
+                enqueueChunk(chunk, chunkIndexes, result);
+            }
+        }
+        enqueueChunk(chunk, chunkIndexes, result);
+
+        result.finish();
+        LOG.debug("Batch accepted: {}, duplicate: {}, invalid: {}", result.getAccepted(), result.getDuplicate(),
+            result.getInvalid());
+        return result;
+    }
+
+    /**
+     * Add many {@link WorkRequest}s to the {@link WorkRequestQueue} as one operation
+     * @param ids of requesters
+     * @param times enqueued in the same order as the ids, an element is null to use the current time
+     * @return true for each id added, false for one that already exists
+     */
+    public boolean[] enqueueAll(final long[] ids, final LocalDateTime[] times) {
+        final List<WorkRequest> workRequests = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            workRequests.add(times[i] == null ? workRequestFactory.getWorkRequest(ids[i])
+                    : workRequestFactory.getWorkRequest(ids[i], times[i]));
+        }
+        return workRequestQueue.enqueueAll(workRequests);
+    }
+
+    private void enqueueChunk(final List<WorkRequest> chunk, final int[] chunkIndexes, final WorkRequestBatchResult result) {
+        final boolean[] added = workRequestQueue.enqueueAll(chunk);
+        for (int i = 0; i < added.length; i++) {
+            if(added[i]) {
+                result.accepted();
+            } else {
+                result.duplicate(chunkIndexes[i], chunk.get(i).getId());
+            }
+        }
+        chunk.clear();
+    }
+
     /**
      * Get the {@link WorkRequestQueue} sorted by priority
      * @return list of {@link WorkRequest}s
@@ -58,6 +137,43 @@ public class WorkRequestService {
         return workRequestQueue.getSortedWorkRequests();
     }
 
+    /**
+     * Get the {@link WorkRequestQueue} sorted by priority as a snapshot that is reused until the queue changes. A
+     * current snapshot is returned straight away, only callers that must rank share a run
+     * @return snapshot with a tag identifying its contents
+     */
+    public QueueSnapshot getSnapshot() {
+        final QueueSnapshot current = workRequestQueue.getCurrentSnapshot();
+        return current != null ? current : snapshotReads.get();
+    }
+
+    /**
+     * @return coalesced whole queue reads, for metrics
+     */
+    public List<SingleFlight<?>> getReadFlights() {
+        return Collections.singletonList(snapshotReads);
+    }
+
+    /**
+     * Get one page of the {@link WorkRequestQueue} sorted by priority
+     * @param limit most {@link WorkRequest}s on the page
+     * @param cursor returned with the previous page or null for the first page
+     * @return page with the cursor for the next
+     * @throws WorkRequestInvalidCursorException if the cursor was not returned with a page
+     */
+    public QueuePage getPage(final int limit, final String cursor) {
+        QueueCursor after = null;
+        if(cursor != null) {
+            try {
+                after = QueueCursor.parse(cursor);
+            } catch (final IllegalArgumentException e) {
+                LOG.debug("Cursor: {} is not valid", cursor);
+                throw new WorkRequestInvalidCursorException(cursor, e);
+            }
+        }
+        return workRequestQueue.getPage(limit, after);
+    }
+
     /**
      * Get the average wait time for {@link WorkRequest}s in the {@link WorkRequestQueue}
      * @param time to take the duration from. If null will use local time
@@ -73,11 +189,49 @@ public class WorkRequestService {
         }
     }
 
+    /**
+     * Get the average wait time for {@link WorkRequest}s of one type in the {@link WorkRequestQueue}
+     * @param time to take the duration from. If null will use local time
+     * @param type of {@link WorkRequest} to average
+     * @return time in seconds representing the average wait time
+     */
+    public long getAverageWaitTime(final LocalDateTime time, final WorkRequestType type) {
+
+        if(time == null) {
+            LOG.debug("No time specified, using current time");
+            return workRequestQueue.getAverageWaitTime(type);
+        } else {
+            return workRequestQueue.getAverageWaitTime(time, type);
+        }
+    }
+
+    /**
+     * Get the wait time percentiles of {@link WorkRequest}s removed from the {@link WorkRequestQueue} recently and of
+     * those still in it
+     * @param time to take the durations of those still in the queue to. If null will use local time
+     * @param type of {@link WorkRequest} to include. If null will include every type
+     * @return wait time percentiles in milliseconds
+     */
+    public WorkRequestWaitTimes getWaitTimes(final LocalDateTime time, final WorkRequestType type) {
+
+        final WaitTimePercentiles current;
+        if(time == null) {
+            LOG.debug("No time specified, using current time");
+            current = type == null ? workRequestQueue.getCurrentWaitTimes() : workRequestQueue.getCurrentWaitTimes(type);
+        } else {
+            current = type == null ? workRequestQueue.getCurrentWaitTimes(time)
+                    : workRequestQueue.getCurrentWaitTimes(time, type);
+        }
+        final WaitTimePercentiles realized = type == null ? workRequestQueue.getRealizedWaitTimes()
+                : workRequestQueue.getRealizedWaitTimes(type);
+        return new WorkRequestWaitTimes(QueueStatistics.WAIT_WINDOW_SECONDS, realized, current);
+    }
+
     /**
      * Get the list of ids sorted by priority in the {@link WorkRequest} queue
      * @return list of sorted ids
      */
-    public List<Long> getSortedIds() {
+    public LongList getSortedIds() {
         return workRequestQueue.getSortedIds();
     }
 
@@ -105,7 +259,7 @@ public class WorkRequestService {
      * @throws WorkRequestDoesNotExistException if no {@link WorkRequest} exists with that id
      */
     public int getPosition(final long id) {
-        final int position = workRequestQueue.getPosition(id);
+        final int position = workRequestQueue.rankOf(id);
 
         if(position == -1) {
             LOG.debug("Work request with id: {} does not exist", id);
@@ -115,6 +269,15 @@ public class WorkRequestService {
         return position;
     }
 
+    /**
+     * Get the positions of many {@link WorkRequest}s in the {@link WorkRequestQueue}, all ranked at the same instant
+     * @param ids of {@link WorkRequest}s
+     * @return position of each id in the same order, -1 for an id that does not exist
+     */
+    public int[] getPositions(final long[] ids) {
+        return workRequestQueue.getPositions(ids);
+    }
+
     /**
      * Remove {@link WorkRequest} from the {@link WorkRequestQueue}
      * @param id of {@link WorkRequest} to remove
@@ -140,4 +303,19 @@ public class WorkRequestService {
             return workRequest.getId();
         }
     }
+
+    /**
+     * Remove up to count highest priority {@link WorkRequest}s from the {@link WorkRequestQueue} in one operation
+     * @param count maximum number to remove
+     * @return ids removed in priority order, fewer than count if the queue held fewer
+     * @throws WorkRequestQueueEmptyException if {@link WorkRequestQueue} is empty
+     */
+    public LongList dequeueTop(final int count) {
+        final LongList ids = workRequestQueue.dequeueTop(count);
+        if(ids.isEmpty()) {
+            LOG.debug("Work request queue is empty");
+            throw new WorkRequestQueueEmptyException();
+        }
+        return ids;
+    }
 }
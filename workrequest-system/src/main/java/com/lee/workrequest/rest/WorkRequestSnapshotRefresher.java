@@ -0,0 +1,142 @@
+package com.lee.workrequest.rest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.queue.QueueSnapshot;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves reads that tolerate bounded staleness. While such reads are being made, a single background thread takes a
+ * {@link QueueSnapshot} of the {@link WorkRequestQueue} on a fixed interval and publishes it, so these reads never take
+ * the queue locks and never delay enqueue or dequeue. An interval with no reads stops the refreshing, so a deployment
+ * without bounded readers takes no snapshots after the first. The next read is served the last snapshot with its real
+ * age and wakes the background thread, a read never takes a snapshot itself
+ */
+public class WorkRequestSnapshotRefresher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WorkRequestSnapshotRefresher.class);
+
+    private final WorkRequestQueue workRequestQueue;
+    private final long intervalNanos;
+    private final ScheduledExecutorService refresher;
+
+    private volatile Published published;
+
+    /** Set by a read since the last refresh */
+    private volatile boolean read;
+
+    /** Set while a refresh woken by a read after an idle spell is pending */
+    private final AtomicBoolean waking = new AtomicBoolean();
+
+    /**
+     * {@link QueueSnapshot} with the time it was last confirmed current
+     */
+    public static class Published {
+        private final QueueSnapshot snapshot;
+        private final long publishedNanos;
+
+        Published(final QueueSnapshot snapshot, final long publishedNanos) {
+            this.snapshot = snapshot;
+            this.publishedNanos = publishedNanos;
+        }
+
+        public QueueSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * @return milliseconds since the snapshot was taken, the most it can be behind the queue
+         */
+        public long getAgeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishedNanos);
+        }
+
+        /**
+         * Position in the snapshot, matches {@link WorkRequestService#getPosition(long)} as of the snapshot
+         * @param id of {@link WorkRequest}
+         * @return zero based position
+         * @throws WorkRequestDoesNotExistException if the id is not in the snapshot
+         */
+        public int getPosition(final long id) {
+            final int position = snapshot.positionOf(id);
+            if(position == -1) {
+                throw new WorkRequestDoesNotExistException(id);
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Take the first snapshot and start refreshing
+     * @param workRequestQueue queue to snapshot
+     * @param intervalMillis milliseconds between snapshots, the staleness bound
+     */
+    public WorkRequestSnapshotRefresher(final WorkRequestQueue workRequestQueue, final long intervalMillis) {
+        this.workRequestQueue = workRequestQueue;
+        intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "work-request-snapshot-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresh();
+        refresher.scheduleWithFixedDelay(this::tick, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return latest published snapshot, older than the interval if refreshing stopped while there were no reads
+     */
+    public Published getPublished() {
+        if(!read) {
+            read = true;
+        }
+        final Published current = published;
+        // Allowed a second interval so readers do not race the background refresh at each interval end
+        if(System.nanoTime() - current.publishedNanos > 2 * intervalNanos && !refresher.isShutdown()
+                && waking.compareAndSet(false, true)) {
+            refresher.execute(this::wake);
+        }
+        return current;
+    }
+
+    /**
+     * Stop refreshing, the last snapshot stays published
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    private void wake() {
+        waking.set(false);
+        tick();
+    }
+
+    private synchronized void tick() {
+        if(!read) {
+            return;
+        }
+        read = false;
+        try {
+            refresh();
+        } catch (final RuntimeException e) {
+            // An exception would cancel the schedule, keep serving the last snapshot and try again next interval
+            LOG.error("Snapshot refresh failed", e);
+        }
+    }
+
+    private synchronized void refresh() {
+        final long startNanos = System.nanoTime();
+        final QueueSnapshot snapshot = workRequestQueue.getSnapshot();
+        // Built here so position reads on request threads are only lookups
+        snapshot.buildPositionIndex();
+        published = new Published(snapshot, startNanos);
+    }
+}
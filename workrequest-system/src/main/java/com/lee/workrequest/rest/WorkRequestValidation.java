@@ -3,7 +3,14 @@ package com.lee.workrequest.rest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.lee.workrequest.exception.WorkRequestInvalidCountException;
 import com.lee.workrequest.exception.WorkRequestInvalidIdException;
+import com.lee.workrequest.exception.WorkRequestInvalidLimitException;
+import com.lee.workrequest.exception.WorkRequestInvalidTimeException;
+import com.lee.workrequest.exception.WorkRequestInvalidTimeoutException;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
 
 /**
  * Validates parameters provided to {@link WorkRequestController} with application specific restrictions
@@ -12,14 +19,87 @@ public class WorkRequestValidation {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkRequestValidation.class);
 
+    /** Longest a consumer may wait for a work request, kept under common proxy idle timeouts */
+    static final long MAX_TIMEOUT_SECONDS = 55;
+
+    /** Most work requests that can be removed in one call */
+    static final int MAX_COUNT = 1000;
+
+    /** Most work requests that can be returned on one page */
+    static final int MAX_LIMIT = 1000;
+
     /**
      * Id must be greater than 0 and within long type maximum
      * @param id of work request to validate
      */
     public void idInRange(final long id){
-        if(id < 1){
+        if(!isIdInRange(id)){
             LOG.debug("Out of range id: {}", id);
             throw new WorkRequestInvalidIdException(id);
         }
     }
+
+    /**
+     * Id must be greater than 0 and within long type maximum
+     * @param id of work request to check
+     * @return true if in range
+     */
+    public boolean isIdInRange(final long id){
+        return id >= 1;
+    }
+
+    /**
+     * Time enqueued must be null for now or within the range the queue can hold, over a million years either side of
+     * 1970
+     * @param time of work request to validate
+     */
+    public void timeInRange(final LocalDateTime time){
+        if(!isTimeInRange(time)){
+            LOG.debug("Out of range time: {}", time);
+            throw new WorkRequestInvalidTimeException(time, WorkRequestQueue.MIN_ENQUEUED_TIME,
+                WorkRequestQueue.MAX_ENQUEUED_TIME);
+        }
+    }
+
+    /**
+     * Time enqueued must be null for now or within the range the queue can hold
+     * @param time of work request to check
+     * @return true if in range
+     */
+    public boolean isTimeInRange(final LocalDateTime time){
+        return time == null || WorkRequestQueue.isEnqueuedTimeInRange(time);
+    }
+
+    /**
+     * Count must be at least 1 and no more than {@link #MAX_COUNT}
+     * @param count of work requests to validate
+     */
+    public void countInRange(final int count){
+        if(count < 1 || count > MAX_COUNT){
+            LOG.debug("Out of range count: {}", count);
+            throw new WorkRequestInvalidCountException(count, MAX_COUNT);
+        }
+    }
+
+    /**
+     * Limit must be at least 1 and no more than {@link #MAX_LIMIT}
+     * @param limit of work requests on a page to validate
+     */
+    public void limitInRange(final int limit){
+        if(limit < 1 || limit > MAX_LIMIT){
+            LOG.debug("Out of range limit: {}", limit);
+            throw new WorkRequestInvalidLimitException(limit, MAX_LIMIT);
+        }
+    }
+
+    /**
+     * Timeout must be at least 1 second and no more than {@link #MAX_TIMEOUT_SECONDS}
+     * @param timeout in seconds to validate
+     */
+    public void timeoutInRange(final long timeout){
+        if(timeout < 1 || timeout > MAX_TIMEOUT_SECONDS){
+            LOG.debug("Out of range timeout: {}", timeout);
+            throw new WorkRequestInvalidTimeoutException(timeout, MAX_TIMEOUT_SECONDS);
+        }
+    }
 }
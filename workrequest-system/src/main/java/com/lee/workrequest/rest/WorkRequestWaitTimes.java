@@ -0,0 +1,42 @@
+package com.lee.workrequest.rest;
+
+import com.lee.workrequest.queue.WaitTimePercentiles;
+
+/**
+ * Wait time percentiles in milliseconds of the work requests removed from the queue over the last window and of those
+ * still in it
+ */
+public class WorkRequestWaitTimes {
+
+    private final long windowSeconds;
+    private final WaitTimePercentiles realized;
+    private final WaitTimePercentiles current;
+
+    WorkRequestWaitTimes(final long windowSeconds, final WaitTimePercentiles realized,
+            final WaitTimePercentiles current) {
+        this.windowSeconds = windowSeconds;
+        this.realized = realized;
+        this.current = current;
+    }
+
+    /**
+     * @return seconds of removals the realized wait times cover
+     */
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /**
+     * @return time from enqueue to removal of the work requests removed in the window
+     */
+    public WaitTimePercentiles getRealized() {
+        return realized;
+    }
+
+    /**
+     * @return time waited so far by the work requests in the queue
+     */
+    public WaitTimePercentiles getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,165 @@
+package com.lee.workrequest.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lee.workrequest.model.WorkRequestFactory;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.WorkRequestQueue;
+import com.lee.workrequest.rest.WorkRequestService;
+import com.lee.workrequest.rest.WorkRequestValidation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+public class BinaryProtocolServerTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2017, 2, 19, 12, 0);
+    private static final long TIME_MILLIS = TIME.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    private WorkRequestQueue workRequestQueue;
+    private BinaryProtocolServer server;
+    private BinaryProtocolClient client;
+
+    @Before
+    public void setup() throws IOException {
+        workRequestQueue = new WorkRequestQueue();
+        final WorkRequestService workRequestService =
+            new WorkRequestService(new WorkRequestFactory(Clock.systemUTC()), workRequestQueue);
+        server = new BinaryProtocolServer(new BinaryRequestHandler(workRequestService, new WorkRequestValidation()),
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        client = new BinaryProtocolClient(address());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    private InetSocketAddress address() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @Test(timeout = 10000)
+    public void enqueue_NewThenDuplicate_OkThenExists() throws IOException {
+        client.writeEnqueue(1, TIME_MILLIS);
+        assertEquals(BinaryProtocol.OK, client.call());
+        client.writeEnqueue(1, BinaryProtocol.NOW);
+        assertEquals(BinaryProtocol.EXISTS, client.call());
+        assertTrue(client.getMessage().contains("1"));
+
+        assertEquals(TIME, workRequestQueue.get(1).getEnqueuedTime());
+    }
+
+    @Test(timeout = 10000)
+    public void pipelined_ManyRequests_RespondsToEachInOrder() throws IOException {
+        // Normal ids only, so the queue is in enqueued time order
+        final int count = 20000;
+        final long[] ids = new long[count];
+        for (long id = 1, i = 0; i < count; id++) {
+            if(id % 3 != 0 && id % 5 != 0) {
+                ids[(int) i++] = id;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            client.writeEnqueue(ids[i], TIME_MILLIS + i);
+        }
+        client.writePosition(ids[count - 1]);
+        client.writeDequeueTop();
+        client.writeDequeueTop(3);
+        client.writeDequeue(ids[10]);
+        client.writeDequeue(ids[10]);
+        client.writePositions(new long[] {ids[4], ids[10], ids[11]});
+        client.flush();
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(BinaryProtocol.OK, client.read());
+        }
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(count - 1, client.getInt());
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(ids[0], client.getLong());
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(3, client.getInt());
+        assertEquals(ids[1], client.getLong());
+        assertEquals(ids[2], client.getLong());
+        assertEquals(ids[3], client.getLong());
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(BinaryProtocol.NOT_FOUND, client.read());
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(3, client.getInt());
+        assertEquals(0, client.getInt());
+        assertEquals(-1, client.getInt());
+        assertEquals(6, client.getInt());
+        assertEquals(count - 5, workRequestQueue.size(WorkRequestType.NORMAL));
+    }
+
+    @Test(timeout = 10000)
+    public void enqueueBatch_MixedRecords_ReportsOutcomeOfEach() throws IOException {
+        client.writeEnqueue(2, TIME_MILLIS);
+        client.writeEnqueueBatch(new long[] {1, 2, -5, 3, 4}, new long[] {TIME_MILLIS, TIME_MILLIS, TIME_MILLIS,
+            BinaryProtocol.NOW, Long.MAX_VALUE});
+        client.flush();
+
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(BinaryProtocol.OK, client.read());
+        assertEquals(5, client.getInt());
+        assertEquals(BinaryProtocol.ACCEPTED, client.getByte());
+        assertEquals(BinaryProtocol.DUPLICATE, client.getByte());
+        assertEquals(BinaryProtocol.REJECTED_INVALID, client.getByte());
+        assertEquals(BinaryProtocol.ACCEPTED, client.getByte());
+        assertEquals(BinaryProtocol.REJECTED_INVALID, client.getByte());
+        assertEquals(2, workRequestQueue.size(WorkRequestType.NORMAL));
+        assertEquals(1, workRequestQueue.size(WorkRequestType.PRIORITY));
+    }
+
+    @Test(timeout = 10000)
+    public void errors_EmptyInvalidAndUnknown_AnsweredWithStatusAndConnectionKept() throws IOException {
+        client.writeDequeueTop();
+        assertEquals(BinaryProtocol.EMPTY, client.call());
+        client.writeDequeue(-1);
+        assertEquals(BinaryProtocol.INVALID, client.call());
+        client.writeEnqueue(1, Long.MAX_VALUE);
+        assertEquals(BinaryProtocol.INVALID, client.call());
+        client.writeDequeueTop(BinaryProtocol.MAX_COUNT + 1);
+        assertEquals(BinaryProtocol.INVALID, client.call());
+
+        try (SocketChannel raw = SocketChannel.open(address())) {
+            final ByteBuffer unknown = ByteBuffer.allocate(5).putInt(1).put((byte) 99);
+            unknown.flip();
+            raw.write(unknown);
+            final ByteBuffer response = ByteBuffer.allocate(5);
+            while (response.hasRemaining()) {
+                raw.read(response);
+            }
+            assertEquals(BinaryProtocol.INVALID, response.get(4));
+        }
+
+        client.writeEnqueue(1, BinaryProtocol.NOW);
+        assertEquals(BinaryProtocol.OK, client.call());
+    }
+
+    @Test(timeout = 10000, expected = EOFException.class)
+    public void frame_LengthTooLong_ClosesConnection() throws IOException {
+        try (SocketChannel raw = SocketChannel.open(address())) {
+            final ByteBuffer frame = ByteBuffer.allocate(4).putInt(BinaryProtocol.MAX_FRAME_LENGTH + 1);
+            frame.flip();
+            raw.write(frame);
+            if(raw.read(ByteBuffer.allocate(1)) == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+}
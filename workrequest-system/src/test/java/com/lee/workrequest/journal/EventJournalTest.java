@@ -0,0 +1,168 @@
+package com.lee.workrequest.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class EventJournalTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, 2, 19, 12, 0);
+    private static final long NOW_MILLIS = NOW.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+    private EventJournal journal;
+
+    @Before
+    public void setup(){
+        journal = new EventJournal(4, 16);
+    }
+
+    @After
+    public void tearDown(){
+        journal.close();
+    }
+
+    @Test
+    public void powerOfTwo_Values_RoundsUp(){
+        assertEquals(1, EventJournal.powerOfTwo(1));
+        assertEquals(2, EventJournal.powerOfTwo(2));
+        assertEquals(4, EventJournal.powerOfTwo(3));
+        assertEquals(8192, EventJournal.powerOfTwo(8000));
+    }
+
+    @Test(timeout = 10000)
+    public void subscribe_ManyProducersSmallRing_ReadsEveryEventOnceInStripeOrder() throws Exception {
+        final int producers = 8;
+        final int perProducer = 5000;
+        final List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+        final RecordingConsumer slow = new RecordingConsumer();
+        journal.subscribe("ids", event -> ids.add(event.getId()));
+        journal.subscribe("slow", slow);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(producers);
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            final long first = p * (long) perProducer;
+            futures.add(executor.submit(() -> {
+                for (long id = first; id < first + perProducer; id++) {
+                    journal.enqueued(id, WorkRequestType.NORMAL, NOW_MILLIS);
+                }
+            }));
+        }
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        journal.close();
+
+        assertEquals(producers * perProducer, ids.size());
+        final List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertEquals(i, sorted.get(i).longValue());
+        }
+        assertEquals(producers * perProducer, slow.events.size());
+        assertTrue(slow.batches > 0);
+        assertTrue(slow.closed);
+        assertTrue(journal.getStalls() > 0);
+    }
+
+    @Test(timeout = 10000)
+    public void subscribe_EventsBeforeSubscribing_NotRead(){
+        journal.dequeued(1, WorkRequestType.VIP, NOW_MILLIS, 1000, true);
+        final RecordingConsumer consumer = new RecordingConsumer();
+        final EventJournal.Subscription subscription = journal.subscribe("late", consumer);
+        journal.dequeued(2, WorkRequestType.VIP, NOW_MILLIS, 2000, false);
+        journal.dequeued(3, WorkRequestType.PRIORITY, NOW_MILLIS, 3000, true);
+        subscription.close();
+
+        assertEquals(Arrays.asList(
+            NOW.plusSeconds(2) + " DEQUEUED 2 VIP " + NOW + " 2000",
+            NOW.plusSeconds(3) + " DEQUEUED_TOP 3 PRIORITY " + NOW + " 3000"), consumer.events);
+        assertTrue(consumer.closed);
+    }
+
+    @Test(timeout = 10000)
+    public void subscribe_ConsumerThrows_CarriesOnWithNextEvent(){
+        final RecordingConsumer consumer = new RecordingConsumer();
+        final EventJournal.Subscription subscription = journal.subscribe("failing", event -> {
+            if(event.getId() == 1) {
+                throw new IllegalStateException("failed");
+            }
+            consumer.onEvent(event);
+        });
+        journal.enqueued(1, WorkRequestType.NORMAL, NOW_MILLIS);
+        journal.enqueued(2, WorkRequestType.NORMAL, NOW_MILLIS);
+        subscription.close();
+
+        assertEquals(Collections.singletonList(NOW + " ENQUEUED 2 NORMAL " + NOW + " 0"), consumer.events);
+    }
+
+    @Test(timeout = 10000)
+    public void fileAppender_Events_AppendsLinePerEvent() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("journal.log");
+        Files.write(file, Collections.singletonList("earlier"), StandardCharsets.UTF_8);
+        final EventJournal.Subscription subscription = journal.subscribe("file", new JournalFileAppender(file));
+        journal.enqueued(1, WorkRequestType.MANAGEMENT_OVERRIDE, NOW_MILLIS);
+        journal.dequeued(1, WorkRequestType.MANAGEMENT_OVERRIDE, NOW_MILLIS, 500, false);
+        subscription.close();
+
+        assertEquals(Arrays.asList(
+            "earlier",
+            NOW + " ENQUEUED 1 MANAGEMENT_OVERRIDE " + NOW + " 0",
+            NOW.plusNanos(500_000_000) + " DEQUEUED 1 MANAGEMENT_OVERRIDE " + NOW + " 500"),
+            Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    private static class RecordingConsumer implements JournalConsumer {
+
+        final List<String> events = new ArrayList<>();
+        int batches;
+        boolean closed;
+
+        @Override
+        public void onEvent(final JournalEvent event) {
+            if(events.size() % 1000 == 0) {
+                // Slower than the producers so they fill the ring and wait
+                try {
+                    Thread.sleep(1);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event.toString());
+        }
+
+        @Override
+        public void onBatchEnd() {
+            batches++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.lee.workrequest.metrics;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.method.HandlerMethod;
+
+import com.lee.workrequest.rest.WorkRequestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+public class EndpointMetricsTest {
+
+    private EndpointMetrics endpointMetrics;
+    private HttpServletRequest request;
+    private HttpServletResponse response;
+    private HandlerMethod handler;
+
+    @Before
+    public void setup() throws Exception {
+        endpointMetrics = new EndpointMetrics();
+        request = mock(HttpServletRequest.class);
+        response = mock(HttpServletResponse.class);
+        handler = new HandlerMethod(this, EndpointMetricsTest.class.getMethod("setup"));
+    }
+
+    @Test
+    public void afterCompletion_RequestHandled_TimesItsEndpoint() throws Exception {
+        when(request.getAttribute(EndpointMetrics.class.getName() + ".start")).thenReturn(System.nanoTime());
+
+        endpointMetrics.preHandle(request, response, handler);
+        endpointMetrics.afterCompletion(request, response, handler, null);
+        endpointMetrics.afterCompletion(request, response, handler, null);
+
+        final PrometheusWriter writer = new PrometheusWriter();
+        endpointMetrics.writeTo(writer);
+        assertTrue(writer.toString().contains(
+            "workrequests_http_request_seconds_count{endpoint=\"EndpointMetricsTest.setup\"} 2\n"));
+    }
+
+    @Test
+    public void afterCompletion_OverloadedHandlers_TimedSeparately() throws Exception {
+        when(request.getAttribute(EndpointMetrics.class.getName() + ".start")).thenReturn(System.nanoTime());
+        final WorkRequestController controller = mock(WorkRequestController.class);
+
+        endpointMetrics.afterCompletion(request, response,
+            new HandlerMethod(controller, WorkRequestController.class.getMethod("dequeue", long.class)), null);
+        endpointMetrics.afterCompletion(request, response, new HandlerMethod(controller,
+            WorkRequestController.class.getMethod("dequeue", WorkRequestController.DeleteOperation.class)), null);
+
+        final PrometheusWriter writer = new PrometheusWriter();
+        endpointMetrics.writeTo(writer);
+        assertTrue(writer.toString().contains(
+            "workrequests_http_request_seconds_count{endpoint=\"WorkRequestController.dequeue(long)\"} 1\n"));
+        assertTrue(writer.toString().contains(
+            "workrequests_http_request_seconds_count{endpoint=\"WorkRequestController.dequeue(DeleteOperation)\"} 1\n"));
+    }
+
+    @Test
+    public void afterCompletion_NotStarted_RecordsNothing() throws Exception {
+
+        endpointMetrics.afterCompletion(request, response, handler, null);
+
+        assertTrue(endpointMetrics.metrics().isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package com.lee.workrequest.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.ResponseEntity;
+
+import com.lee.workrequest.model.WorkRequestNormal;
+import com.lee.workrequest.model.WorkRequestVIP;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class PrometheusEndpointTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.now();
+
+    private WorkRequestQueue workRequestQueue;
+    private PrometheusEndpoint prometheusEndpoint;
+
+    @Before
+    public void setup(){
+        workRequestQueue = new WorkRequestQueue();
+        final QueueMetrics queueMetrics = new QueueMetrics(workRequestQueue);
+        final PublicMetrics other = () -> Arrays.<Metric<?>>asList(new Metric<>("mem.free", 42L),
+            new Metric<>("mem-free", 7L), new Metric<>("systemload.average", 0.5));
+        final List<PublicMetrics> publicMetrics = Arrays.asList(queueMetrics, other);
+        prometheusEndpoint = new PrometheusEndpoint(publicMetrics, Collections.singletonList(queueMetrics));
+    }
+
+    @Test
+    public void scrape_QueueChanged_WritesQueueFamilies(){
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+        workRequestQueue.enqueue(new WorkRequestVIP(2, TIME));
+        workRequestQueue.enqueue(new WorkRequestVIP(2, TIME));
+        workRequestQueue.getSortedIds();
+
+        final List<String> lines = Arrays.asList(prometheusEndpoint.write().split("\n"));
+
+        assertTrue(lines.contains("# TYPE workrequests_queue_depth gauge"));
+        assertTrue(lines.contains("workrequests_queue_depth{class=\"NORMAL\"} 1"));
+        assertTrue(lines.contains("workrequests_queue_depth{class=\"VIP\"} 1"));
+        assertTrue(lines.contains("workrequests_queue_depth{class=\"MANAGEMENT_OVERRIDE\"} 0"));
+        assertTrue(lines.contains("workrequests_enqueued_total 2"));
+        assertTrue(lines.contains("workrequests_rejected_total{reason=\"duplicate\"} 1"));
+        assertTrue(lines.contains("# TYPE workrequests_queue_sort_seconds summary"));
+        assertTrue(lines.contains("workrequests_queue_sort_seconds_count 1"));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("workrequests_queue_sort_seconds{quantile=\"0.99\"} ")));
+    }
+
+    @Test
+    public void scrape_OtherPublicMetrics_WritesEachOnceAsGauge(){
+
+        final String text = prometheusEndpoint.write();
+
+        assertTrue(text.contains("# TYPE mem_free gauge\nmem_free 42\n"));
+        assertTrue(text.contains("systemload_average 0.5\n"));
+        assertEquals(text.indexOf("# TYPE mem_free"), text.lastIndexOf("# TYPE mem_free"));
+        // Already written by the queue metrics themselves
+        assertTrue(!text.contains("workrequests_queue_enqueued"));
+    }
+
+    @Test
+    public void scrape_Requested_ReturnsPrometheusContentType(){
+
+        final ResponseEntity<String> response = prometheusEndpoint.scrape();
+
+        assertEquals(PrometheusWriter.CONTENT_TYPE, response.getHeaders().getFirst("Content-Type"));
+    }
+}
@@ -8,7 +8,9 @@ import static org.junit.Assert.assertThat;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 public class WorkRequestFactoryTest {
 
@@ -30,6 +32,17 @@ public class WorkRequestFactoryTest {
         assertNotNull(workRequest.getEnqueuedTime());
     }
 
+    @Test
+    public void getWorkRequest_IdOnlyWithClock_SetsEnqueuedTimeFromClock(){
+
+        final LocalDateTime time = LocalDateTime.of(2017, 2, 19, 14, 27, 16);
+        workRequestFactory = new WorkRequestFactory(Clock.fixed(time.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+        final WorkRequest workRequest = workRequestFactory.getWorkRequest(123);
+
+        assertEquals(time, workRequest.getEnqueuedTime());
+    }
+
     @Test
     public void getWorkRequest_IdAndTime_SetsIdAndEnqueuedTime(){
 
@@ -0,0 +1,266 @@
+package com.lee.workrequest.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestManagementOverride;
+import com.lee.workrequest.model.WorkRequestNormal;
+import com.lee.workrequest.model.WorkRequestPriority;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.model.WorkRequestVIP;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2017, 2, 19, 12, 0);
+    private static final Clock CLOCK = Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+    private Path directory;
+    private WriteAheadLog log;
+    private WorkRequestQueue workRequestQueue;
+
+    @Before
+    public void setup(){
+        directory = folder.getRoot().toPath();
+        reopen();
+    }
+
+    @After
+    public void tearDown(){
+        log.close();
+    }
+
+    @Test
+    public void replay_EveryKindOfChange_RestoresQueue(){
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        workRequestQueue.enqueue(new WorkRequestVIP(2, NOW.minusMinutes(4)));
+        workRequestQueue.enqueue(new WorkRequestPriority(3, NOW.minusMinutes(3)));
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(4, NOW.minusMinutes(2)));
+        workRequestQueue.enqueueAll(Arrays.asList(new WorkRequestNormal(5, NOW.minusSeconds(30)),
+            new WorkRequestVIP(6, NOW.minusSeconds(20)), new WorkRequestNormal(7, NOW.minusSeconds(10))));
+        workRequestQueue.dequeue(3);
+        workRequestQueue.dequeueTop();
+        workRequestQueue.dequeueTop(2);
+        final List<WorkRequest> expected = workRequestQueue.getSortedWorkRequests();
+
+        reopen();
+
+        assertEquals(expected, workRequestQueue.getSortedWorkRequests());
+    }
+
+    @Test
+    public void replay_IdRemovedThenEnqueuedAsOtherType_RestoresLatest(){
+        workRequestQueue.enqueue(new WorkRequestVIP(7, NOW.minusMinutes(5)));
+        workRequestQueue.dequeue(7);
+        workRequestQueue.enqueue(new WorkRequestNormal(7, NOW.minusMinutes(1)));
+
+        reopen();
+
+        assertEquals(new WorkRequestNormal(7, NOW.minusMinutes(1)), workRequestQueue.get(7));
+    }
+
+    @Test
+    public void replay_SeveralRestarts_RestoresFromEverySegment(){
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        reopen();
+        workRequestQueue.enqueue(new WorkRequestNormal(2, NOW.minusMinutes(4)));
+        reopen();
+        workRequestQueue.dequeue(1);
+
+        reopen();
+
+        assertEquals(Arrays.asList(2L), workRequestQueue.getSortedIds());
+    }
+
+    @Test
+    public void replay_SegmentEndsPartWayThroughFrame_IgnoresPartialFrame() throws IOException {
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        workRequestQueue.enqueue(new WorkRequestNormal(2, NOW.minusMinutes(4)));
+        log.close();
+        // Length of a frame longer than what follows, as if the process died while writing it
+        Files.write(lastSegment(), new byte[] {0, 0, 0, 18, 1, 2, 3, 4, 1, 0}, StandardOpenOption.APPEND);
+
+        reopen();
+
+        assertEquals(Arrays.asList(1L, 2L), workRequestQueue.getSortedIds());
+    }
+
+    @Test
+    public void replay_FrameFailsCheck_IgnoresRestOfSegment() throws IOException {
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        log.close();
+        final Path segment = lastSegment();
+        final byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(segment, bytes);
+
+        reopen();
+
+        assertTrue(workRequestQueue.getSortedIds().isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void append_ConcurrentChanges_ShareForces() throws Exception {
+        final int threads = 8;
+        final int perThread = 500;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final List<Future<?>> results = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            final int first = thread * perThread;
+            results.add(executor.submit(() -> {
+                for (int id = first; id < first + perThread; id++) {
+                    workRequestQueue.enqueue(new WorkRequestNormal(id, NOW.minusSeconds(id)));
+                }
+            }));
+        }
+        for (final Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        assertTrue("forces: " + log.getForces(), log.getForces() < threads * perThread);
+        reopen();
+        assertEquals(threads * perThread, workRequestQueue.getSortedIds().size());
+    }
+
+    @Test
+    public void get_RestoredEntry_KeepsTypeAndTime(){
+        workRequestQueue.enqueue(new WorkRequestPriority(3, NOW.minusMinutes(3).plusNanos(123000000)));
+
+        reopen();
+
+        final WorkRequest restored = workRequestQueue.get(3);
+        assertEquals(WorkRequestType.PRIORITY, restored.getType());
+        assertEquals(NOW.minusMinutes(3).plusNanos(123000000), restored.getEnqueuedTime());
+    }
+
+    @Test
+    public void checkpoint_ChangesAfterIt_RestoresCheckpointThenLog(){
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        workRequestQueue.enqueue(new WorkRequestVIP(2, NOW.minusMinutes(4)));
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(3, NOW.minusMinutes(3)));
+        log.checkpoint(workRequestQueue);
+        workRequestQueue.dequeue(1);
+        workRequestQueue.enqueue(new WorkRequestPriority(4, NOW.minusMinutes(2)));
+        final List<WorkRequest> expected = workRequestQueue.getSortedWorkRequests();
+
+        reopen();
+
+        assertEquals(expected, workRequestQueue.getSortedWorkRequests());
+        assertEquals(WorkRequestType.VIP, workRequestQueue.get(2).getType());
+    }
+
+    @Test
+    public void checkpoint_Written_DeletesSegmentsBeforeIt() throws IOException {
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        reopen();
+        workRequestQueue.enqueue(new WorkRequestNormal(2, NOW.minusMinutes(4)));
+
+        log.checkpoint(workRequestQueue);
+
+        // Only the checkpoint and the segment it replays from are left
+        assertEquals(Arrays.asList("checkpoint-0000000000000003.dat", "wal-0000000000000003.log"), fileNames());
+        reopen();
+        assertEquals(Arrays.asList(1L, 2L), workRequestQueue.getSortedIds());
+    }
+
+    @Test(expected = WorkRequestPersistenceException.class)
+    public void replay_CheckpointFailsCheck_Throws() throws IOException {
+        workRequestQueue.enqueue(new WorkRequestNormal(1, NOW.minusMinutes(5)));
+        log.checkpoint(workRequestQueue);
+        log.close();
+        final Path checkpoint = directory.resolve("checkpoint-0000000000000002.dat");
+        final byte[] bytes = Files.readAllBytes(checkpoint);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(checkpoint, bytes);
+
+        reopen();
+    }
+
+    @Test(timeout = 60000)
+    public void checkpoint_ChangesDuringCheckpoint_RestoresEveryChange() throws Exception {
+        final List<WorkRequest> workRequests = new ArrayList<>();
+        for (int id = 0; id < 20000; id++) {
+            workRequests.add(new WorkRequestType[] {WorkRequestType.NORMAL, WorkRequestType.PRIORITY,
+                WorkRequestType.VIP}[id % 3].newWorkRequest(id, NOW.minusSeconds(id)));
+        }
+        workRequestQueue.enqueueAll(workRequests);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<?> changes = executor.submit(() -> {
+            for (int id = 0; id < 4000; id += 2) {
+                workRequestQueue.dequeue(id);
+                // Back as another type, so a copy taken meanwhile can hold it under both
+                workRequestQueue.enqueue(new WorkRequestManagementOverride(id, NOW.minusSeconds(id)));
+                workRequestQueue.enqueue(new WorkRequestNormal(20000 + id, NOW));
+            }
+        });
+        while (!changes.isDone()) {
+            log.checkpoint(workRequestQueue);
+        }
+        changes.get();
+        executor.shutdown();
+        final List<WorkRequest> expected = workRequestQueue.getSortedWorkRequests();
+
+        reopen();
+
+        assertEquals(expected, workRequestQueue.getSortedWorkRequests());
+    }
+
+    private void reopen(){
+        if(log != null) {
+            log.close();
+        }
+        log = new WriteAheadLog(directory);
+        workRequestQueue = new WorkRequestQueue(CLOCK, log);
+    }
+
+    private List<String> fileNames() throws IOException {
+        final List<String> names = new ArrayList<>();
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private Path lastSegment() throws IOException {
+        Path last = null;
+        try (final DirectoryStream<Path> segments = Files.newDirectoryStream(directory)) {
+            for (final Path segment : segments) {
+                if(last == null || segment.getFileName().toString().compareTo(last.getFileName().toString()) > 0) {
+                    last = segment;
+                }
+            }
+        }
+        return last;
+    }
+}
@@ -0,0 +1,143 @@
+package com.lee.workrequest.queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+public class OrderStatisticTreeTest {
+
+    private OrderStatisticTree tree;
+
+    @Before
+    public void setup(){
+        tree = new OrderStatisticTree();
+    }
+
+    @Test
+    public void insert_KeyNotPresent_AddsAndReturnsTrue(){
+
+        assertTrue(tree.insert(100, 1));
+
+        assertTrue(tree.contains(100, 1));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void insert_KeyPresent_ReturnsFalse(){
+        tree.insert(100, 1);
+
+        assertFalse(tree.insert(100, 1));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void remove_KeyNotPresent_ReturnsFalse(){
+        tree.insert(100, 1);
+
+        assertFalse(tree.remove(100, 2));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    public void first_OrdersByTimeThenId(){
+        tree.insert(200, 1);
+        tree.insert(100, 3);
+        tree.insert(100, 2);
+
+        final int first = tree.first();
+
+        assertEquals(100, tree.time(first));
+        assertEquals(2, tree.id(first));
+    }
+
+    @Test
+    public void first_Empty_ReturnsNil(){
+
+        assertEquals(OrderStatisticTree.NIL, tree.first());
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    public void countWhile_RandomInsertsAndRemoves_MatchesTreeSet(){
+        final Random random = new Random(42);
+        final TreeSet<Long> expected = new TreeSet<>();
+
+        for (int i = 0; i < 5000; i++) {
+            final long time = random.nextInt(2000);
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(time), tree.remove(time, time));
+            } else {
+                assertEquals(expected.add(time), tree.insert(time, time));
+            }
+        }
+
+        assertEquals(expected.size(), tree.size());
+        for (long limit = 0; limit <= 2000; limit += 50) {
+            final long bound = limit;
+            assertEquals(expected.headSet(bound).size(), tree.countWhile((time, id) -> time < bound));
+        }
+    }
+
+    @Test
+    public void copyRange_EveryStartAndLength_MatchesTreeSet(){
+        final Random random = new Random(11);
+        final TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 300; i++) {
+            final long time = random.nextInt(1000);
+            expected.add(time);
+            tree.insert(time, time);
+        }
+        final Long[] keys = expected.toArray(new Long[0]);
+
+        for (int from = 0; from <= keys.length; from += 7) {
+            for (final int max : new int[] {1, 10, keys.length}) {
+                final long[] times = new long[max];
+                final long[] ids = new long[max];
+
+                final int copied = tree.copyRange(from, times, ids, max);
+
+                assertEquals(Math.min(max, keys.length - from), copied);
+                for (int i = 0; i < copied; i++) {
+                    assertEquals(keys[from + i].longValue(), times[i]);
+                    assertEquals(keys[from + i].longValue(), ids[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void build_SortedKeysThenInsertsAndRemoves_MatchesTreeSet(){
+        final TreeSet<Long> expected = new TreeSet<>();
+        final long[] times = new long[1000];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = i * 2;
+            expected.add(times[i]);
+        }
+        tree.build(times, times.clone(), times.length);
+        assertEquals(expected.size(), tree.size());
+
+        final Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            final long time = random.nextInt(2500);
+            if(random.nextBoolean()) {
+                assertEquals(expected.remove(time), tree.remove(time, time));
+            } else {
+                assertEquals(expected.add(time), tree.insert(time, time));
+            }
+        }
+
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected.first().longValue(), tree.time(tree.first()));
+        assertEquals(expected.last().longValue(), tree.time(tree.last()));
+        for (long limit = 0; limit <= 2500; limit += 50) {
+            final long bound = limit;
+            assertEquals(expected.headSet(bound).size(), tree.countWhile((time, id) -> time < bound));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.lee.workrequest.queue;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class WindowedTimerTest {
+
+    private final AtomicLong ticker = new AtomicLong();
+    private WindowedTimer timer;
+
+    @Before
+    public void setup(){
+        timer = new WindowedTimer(TimeUnit.MICROSECONDS, TimeUnit.MINUTES.toMicros(10), 60, ticker::get);
+    }
+
+    @Test
+    public void snapshot_DurationsRecorded_GivesQuantilesCountAndTotal(){
+        for (int millis = 1; millis <= 100; millis++) {
+            timer.record(millis, TimeUnit.MILLISECONDS);
+        }
+
+        final WindowedTimer.Snapshot snapshot = timer.snapshot();
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100, snapshot.getWindowCount());
+        assertEquals(5.05, snapshot.getTotalSeconds(), 1e-9);
+        assertEquals(0.050, snapshot.getSeconds(0.5), 0.001);
+        assertEquals(0.099, snapshot.getSeconds(0.99), 0.001);
+        assertEquals(0.100, snapshot.getMaxSeconds(), 0.001);
+    }
+
+    @Test
+    public void snapshot_WindowPassed_DropsOldDurationsButKeepsCount(){
+        timer.record(500, TimeUnit.MILLISECONDS);
+        timer.snapshot();
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        timer.record(1, TimeUnit.MILLISECONDS);
+        timer.snapshot();
+
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(35));
+        final WindowedTimer.Snapshot snapshot = timer.snapshot();
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(1, snapshot.getWindowCount());
+        assertEquals(0.001, snapshot.getMaxSeconds(), 0.0001);
+    }
+
+    @Test
+    public void snapshot_NotReadWhileWindowPassed_DropsDurationsRecordedBeforeIt(){
+        timer.record(500, TimeUnit.MILLISECONDS);
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        timer.record(1, TimeUnit.MILLISECONDS);
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(35));
+
+        final WindowedTimer.Snapshot snapshot = timer.snapshot();
+
+        assertEquals(2, snapshot.getCount());
+        assertEquals(1, snapshot.getWindowCount());
+        assertEquals(0.001, snapshot.getMaxSeconds(), 0.0001);
+
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(60));
+        assertEquals(0, timer.snapshot().getWindowCount());
+    }
+
+    @Test
+    public void record_LongerThanHighest_RecordedAsHighest(){
+
+        timer.record(1, TimeUnit.HOURS);
+
+        assertEquals(600, timer.snapshot().getMaxSeconds(), 6);
+    }
+}
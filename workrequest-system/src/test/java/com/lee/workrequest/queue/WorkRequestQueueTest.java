@@ -1,20 +1,46 @@
 package com.lee.workrequest.queue;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.lee.workrequest.exception.WorkRequestInvalidTimeException;
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
 import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestFactory;
 import com.lee.workrequest.model.WorkRequestManagementOverride;
 import com.lee.workrequest.model.WorkRequestNormal;
 import com.lee.workrequest.model.WorkRequestPriority;
+import com.lee.workrequest.model.WorkRequestType;
 import com.lee.workrequest.model.WorkRequestVIP;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WorkRequestQueueTest {
 
@@ -51,6 +77,39 @@ public class WorkRequestQueueTest {
         assertEquals(workRequest, workRequestQueue.get(ID));
     }
 
+    @Test
+    public void enqueue_TimeAtLimits_StoredAndReadBack(){
+        final WorkRequest earliest = new WorkRequestManagementOverride(15, WorkRequestQueue.MIN_ENQUEUED_TIME);
+        final WorkRequest latest = new WorkRequestVIP(5, WorkRequestQueue.MAX_ENQUEUED_TIME);
+
+        assertNull(workRequestQueue.enqueue(earliest));
+        assertNull(workRequestQueue.enqueue(latest));
+
+        assertEquals(earliest, workRequestQueue.get(15));
+        assertEquals(latest, workRequestQueue.get(5));
+        assertEquals(Arrays.asList(15L, 5L), workRequestQueue.getSortedIds());
+    }
+
+    @Test
+    public void enqueue_TimeOutsideLimits_ThrowsAndQueueUnchanged(){
+        workRequestQueue.enqueue(workRequestNormal);
+
+        try {
+            workRequestQueue.enqueue(new WorkRequestVIP(5, WorkRequestQueue.MAX_ENQUEUED_TIME.plusNanos(1000000)));
+            fail("Expected an invalid time");
+        } catch (final WorkRequestInvalidTimeException e) {
+            assertNull(workRequestQueue.get(5));
+        }
+        try {
+            workRequestQueue.enqueueAll(Arrays.asList(new WorkRequestNormal(7, TIME),
+                new WorkRequestVIP(10, WorkRequestQueue.MIN_ENQUEUED_TIME.minusNanos(1000000))));
+            fail("Expected an invalid time");
+        } catch (final WorkRequestInvalidTimeException e) {
+            assertNull(workRequestQueue.get(7));
+        }
+        assertEquals(Arrays.asList(1L), workRequestQueue.getSortedIds());
+    }
+
     @Test
     public void enqueue_IdExists_DoesNotAddToQueueReturnsPrevious(){
 
@@ -63,6 +122,28 @@ public class WorkRequestQueueTest {
         assertEquals(workRequest, workRequestQueue.get(ID));
     }
 
+    @Test
+    public void get_IdExists_ReturnsSameTypeAndTimeToTheMilli(){
+        final LocalDateTime time = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123456789);
+        workRequestQueue.enqueue(new WorkRequestVIP(ID, time));
+
+        final WorkRequest returnedWorkRequest = workRequestQueue.get(ID);
+
+        assertEquals(WorkRequestType.VIP, returnedWorkRequest.getType());
+        assertEquals(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 123000000), returnedWorkRequest.getEnqueuedTime());
+    }
+
+    @Test
+    public void enqueueAll_SomeIdsExist_AddsNewAndReportsExisting(){
+        workRequestQueue.enqueue(workRequestVIP);
+
+        final boolean[] added = workRequestQueue.enqueueAll(Arrays.asList(workRequestNormal, workRequestVIP,
+            workRequestPriority, workRequestMgmtOver));
+
+        assertTrue(Arrays.equals(new boolean[] {true, false, true, true}, added));
+        assertEquals(Arrays.asList(4L, 2L, 3L, 1L), workRequestQueue.getSortedIds());
+    }
+
     @Test
     public void getSortedWorkRequests_QueuePopulated_ReturnsSortedWorkRequest(){
         populateQueue();
@@ -134,6 +215,142 @@ public class WorkRequestQueueTest {
         assertTrue(sortedIds.isEmpty());
     }
 
+    @Test
+    public void getPage_WalkedWithCursor_MatchesSortedIds(){
+        populateQueueComplex();
+        final List<Long> sortedIds = workRequestQueue.getSortedIds();
+
+        final List<Long> pagedIds = new ArrayList<>();
+        QueueCursor cursor = null;
+        do {
+            final QueuePage page = workRequestQueue.getPage(3, cursor == null ? null : QueueCursor.parse(cursor.toString()));
+            assertTrue(page.getIds().size() <= 3);
+            pagedIds.addAll(page.getIds());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(sortedIds, pagedIds);
+    }
+
+    @Test
+    public void getPage_RanksOvertakeBetweenPages_RanksAtCursorInstant(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        final AdjustableClock clock = new AdjustableClock(now);
+        workRequestQueue = new WorkRequestQueue(clock);
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusSeconds(100)));
+        workRequestQueue.enqueue(new WorkRequestVIP(5, now));
+
+        final QueuePage first = workRequestQueue.getPage(1, null);
+        // VIP now ranks first, but the walk continues in the order it started with
+        clock.advanceSeconds(60);
+        final QueuePage second = workRequestQueue.getPage(1, first.getNextCursor());
+
+        assertEquals(Arrays.asList(1L), first.getIds());
+        assertEquals(Arrays.asList(5L), second.getIds());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    public void getPage_WorkRequests_ReturnsSameEntriesAsIds(){
+        populateQueueComplex();
+
+        final QueuePage page = workRequestQueue.getPage(4, null);
+
+        assertEquals(workRequestQueue.getSortedWorkRequests().subList(0, 4), page.getWorkRequests());
+    }
+
+    @Test
+    public void getSnapshot_QueuePopulated_MatchesSortedQueue(){
+        populateQueueComplex();
+
+        final QueueSnapshot snapshot = workRequestQueue.getSnapshot();
+
+        assertEquals(workRequestQueue.getSortedIds(), snapshot.getIds());
+        assertEquals(workRequestQueue.getSortedWorkRequests(), snapshot.getWorkRequests());
+    }
+
+    @Test
+    public void getSnapshot_PositionOf_MatchesRankOf(){
+        populateQueueComplex();
+
+        final QueueSnapshot snapshot = workRequestQueue.getSnapshot();
+
+        for (final long id : snapshot.getIds()) {
+            assertEquals(workRequestQueue.rankOf(id), snapshot.positionOf(id));
+        }
+        assertEquals(-1, snapshot.positionOf(1000));
+    }
+
+    @Test
+    public void getSnapshot_QueueUnchangedSameSecond_ReturnsSameSnapshot(){
+        populateQueueAtClock(new AdjustableClock(LocalDateTime.of(2017, 2, 19, 12, 0)));
+
+        final QueueSnapshot first = workRequestQueue.getSnapshot();
+        final QueueSnapshot second = workRequestQueue.getSnapshot();
+
+        assertSame(first, second);
+    }
+
+    @Test
+    public void getPosition_RanksCrossWithinSecond_AgreesWithSnapshot(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        final AdjustableClock clock = new AdjustableClock(now);
+        workRequestQueue = new WorkRequestQueue(clock);
+        // Normal ranks 10 against Priority 5 ln 5 at the second, Priority 6 ln 6 overtakes it half a second later
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusNanos(10400000000L)));
+        workRequestQueue.enqueue(new WorkRequestPriority(3, now.minusNanos(5600000000L)));
+        final QueueSnapshot snapshot = workRequestQueue.getSnapshot();
+
+        clock.advanceMillis(500);
+
+        assertEquals(Arrays.asList(1L, 3L), snapshot.getIds());
+        assertEquals(0, workRequestQueue.getPosition(1));
+        assertEquals(1, workRequestQueue.getPosition(3));
+        assertEquals(0, workRequestQueue.getPositions(new long[] {1, 3})[0]);
+        assertEquals(Arrays.asList(1L, 3L), workRequestQueue.getSortedIds());
+        assertSame(snapshot, workRequestQueue.getSnapshot());
+
+        clock.advanceSeconds(2);
+        assertEquals(0, workRequestQueue.getPosition(3));
+        assertEquals(Arrays.asList(3L, 1L), workRequestQueue.getSnapshot().getIds());
+    }
+
+    @Test
+    public void getCurrentSnapshot_UntilQueueChanges_ReturnsLastSnapshot(){
+        populateQueueAtClock(new AdjustableClock(LocalDateTime.of(2017, 2, 19, 12, 0)));
+        assertNull(workRequestQueue.getCurrentSnapshot());
+
+        final QueueSnapshot built = workRequestQueue.getSnapshot();
+        assertSame(built, workRequestQueue.getCurrentSnapshot());
+
+        workRequestQueue.dequeue(2);
+        assertNull(workRequestQueue.getCurrentSnapshot());
+    }
+
+    @Test
+    public void getSnapshot_QueueChanged_ReturnsNewTag(){
+        populateQueueAtClock(new AdjustableClock(LocalDateTime.of(2017, 2, 19, 12, 0)));
+        final String enqueuedTag = workRequestQueue.getSnapshot().getTag();
+
+        workRequestQueue.dequeue(2);
+        final QueueSnapshot dequeued = workRequestQueue.getSnapshot();
+
+        assertNotEquals(enqueuedTag, dequeued.getTag());
+        assertEquals(workRequestQueue.getSortedIds(), dequeued.getIds());
+    }
+
+    @Test
+    public void getSnapshot_ClockPassesSecond_ReturnsNewTag(){
+        final AdjustableClock clock = new AdjustableClock(LocalDateTime.of(2017, 2, 19, 12, 0));
+        populateQueueAtClock(clock);
+        final String firstTag = workRequestQueue.getSnapshot().getTag();
+
+        // Ranks grow with time so the order may change even though the entries have not
+        clock.advanceSeconds(1);
+
+        assertNotEquals(firstTag, workRequestQueue.getSnapshot().getTag());
+    }
+
     @Test
     public void getPosition_ValidIdQueuePopulated_ReturnsPosition(){
         populateQueue();
@@ -152,6 +369,20 @@ public class WorkRequestQueueTest {
         assertEquals(-1, position);
     }
 
+    @Test
+    public void getPositions_QueuePopulated_MatchesRankOfAndMinusOneForMissing(){
+        populateQueueComplex();
+        final long[] ids = {15, 1000, 1, 12, 4, 2000, 10};
+
+        final int[] positions = workRequestQueue.getPositions(ids);
+
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(workRequestQueue.rankOf(ids[i]), positions[i]);
+        }
+        assertEquals(-1, positions[1]);
+        assertEquals(0, positions[0]);
+    }
+
     @Test
     public void getPosition_QueueEmpty_ReturnsMinusOne(){
 
@@ -160,6 +391,48 @@ public class WorkRequestQueueTest {
         assertEquals(-1, position);
     }
 
+    @Test
+    public void rankOf_QueuePopulatedComplex_MatchesSortedIds(){
+        populateQueueComplex();
+
+        final List<Long> sortedIds = workRequestQueue.getSortedIds();
+
+        for (int i = 0; i < sortedIds.size(); i++) {
+            assertEquals(i, workRequestQueue.rankOf(sortedIds.get(i)));
+        }
+    }
+
+    @Test
+    public void rankOf_AfterDequeue_ReturnsMinusOneAndShiftsOthers(){
+        populateQueue();
+
+        workRequestQueue.dequeue(workRequestVIP.getId());
+
+        assertEquals(-1, workRequestQueue.rankOf(workRequestVIP.getId()));
+        assertEquals(1, workRequestQueue.rankOf(workRequestPriority.getId()));
+    }
+
+    @Test
+    public void rankOf_FixedClock_RanksAgainstClockTime(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        workRequestQueue = new WorkRequestQueue(Clock.fixed(now.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        // Normal waiting 60 seconds has rank 60, Priority waiting 10 seconds has rank 23
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusSeconds(60)));
+        workRequestQueue.enqueue(new WorkRequestPriority(3, now.minusSeconds(10)));
+
+        assertEquals(0, workRequestQueue.rankOf(1));
+        assertEquals(1, workRequestQueue.rankOf(3));
+    }
+
+    @Test
+    public void getAverageWaitTime_FixedClock_UsesClockTime(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        workRequestQueue = new WorkRequestQueue(Clock.fixed(now.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusMinutes(2)));
+
+        assertEquals(120, workRequestQueue.getAverageWaitTime());
+    }
+
     @Test
     public void getAverageWaitTime_DurationOneHour_ReturnsAverageWaitTime(){
         populateQueue();
@@ -169,6 +442,27 @@ public class WorkRequestQueueTest {
         assertEquals(3600, averageWaitTime);
     }
 
+    @Test
+    public void getAverageWaitTime_AfterDequeue_ExcludesRemoved(){
+        populateQueue();
+        workRequestQueue.enqueue(new WorkRequestNormal(10, TIME.minusHours(4)));
+        workRequestQueue.dequeue(10);
+        workRequestQueue.dequeueTop();
+
+        final long averageWaitTime = workRequestQueue.getAverageWaitTime(TIME.plusHours(1));
+
+        assertEquals(3600, averageWaitTime);
+    }
+
+    @Test
+    public void getAverageWaitTime_ForType_AveragesOnlyThatType(){
+        populateQueue();
+        workRequestQueue.enqueue(new WorkRequestVIP(10, TIME.minusHours(2)));
+
+        assertEquals(7200, workRequestQueue.getAverageWaitTime(TIME.plusHours(1), WorkRequestType.VIP));
+        assertEquals(3600, workRequestQueue.getAverageWaitTime(TIME.plusHours(1), WorkRequestType.NORMAL));
+    }
+
     @Test
     public void getAverageWaitTime_TimeInPast_ReturnsZero(){
         populateQueue();
@@ -221,6 +515,45 @@ public class WorkRequestQueueTest {
         assertEquals(workRequestMgmtOver, returnedWorkRequest);
     }
 
+    @Test
+    public void dequeueTop_QueuePopulatedComplex_RemovesInSortedOrder(){
+        populateQueueComplex();
+
+        final List<Long> sortedIds = workRequestQueue.getSortedIds();
+
+        for (final Long id : sortedIds) {
+            assertEquals(id.longValue(), workRequestQueue.dequeueTop().getId());
+        }
+        assertNull(workRequestQueue.dequeueTop());
+    }
+
+    @Test
+    public void dequeueTop_AfterDequeue_DoesNotReturnRemovedValue(){
+        populateQueue();
+
+        workRequestQueue.dequeue(workRequestMgmtOver.getId());
+        final WorkRequest returnedWorkRequest = workRequestQueue.dequeueTop();
+
+        assertEquals(workRequestVIP, returnedWorkRequest);
+    }
+
+    @Test
+    public void dequeueTop_YoungerVIPOvertakesOlderNormal_ReturnsVIPAfterCrossover(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        final AdjustableClock clock = new AdjustableClock(now);
+        workRequestQueue = new WorkRequestQueue(clock);
+        // Normal rank 100 against VIP rank 4, after a minute Normal rank 160 against VIP rank 491
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusSeconds(100)));
+        workRequestQueue.enqueue(new WorkRequestVIP(5, now));
+
+        assertEquals(1, workRequestQueue.rankOf(5));
+        clock.advanceSeconds(60);
+
+        assertEquals(0, workRequestQueue.rankOf(5));
+        assertEquals(5, workRequestQueue.dequeueTop().getId());
+        assertEquals(1, workRequestQueue.dequeueTop().getId());
+    }
+
     @Test
     public void dequeueTop_QueueEmpty_ReturnsNull(){
 
@@ -229,6 +562,527 @@ public class WorkRequestQueueTest {
         assertNull(returnedWorkRequest);
     }
 
+    @Test
+    public void dequeueTopCount_QueuePopulatedComplex_RemovesTopInSortedOrder(){
+        populateQueueComplex();
+        final List<Long> sortedIds = workRequestQueue.getSortedIds();
+
+        final LongList removedIds = workRequestQueue.dequeueTop(4);
+
+        assertEquals(sortedIds.subList(0, 4), removedIds);
+        assertEquals(sortedIds.subList(4, sortedIds.size()), workRequestQueue.getSortedIds());
+    }
+
+    @Test
+    public void dequeueTopCount_CountExceedsSize_RemovesAll(){
+        populateQueue();
+
+        final LongList removedIds = workRequestQueue.dequeueTop(10);
+
+        assertEquals(4, removedIds.size());
+        assertNull(workRequestQueue.dequeueTop());
+        assertEquals(0, workRequestQueue.getAverageWaitTime());
+    }
+
+    @Test
+    public void dequeueTopCount_QueueEmpty_ReturnsEmptyList(){
+
+        final LongList removedIds = workRequestQueue.dequeueTop(10);
+
+        assertTrue(removedIds.isEmpty());
+    }
+
+    @Test
+    public void takeTop_QueuePopulated_ReturnsTopWithoutWaiting() throws Exception {
+        populateQueue();
+
+        final WorkRequest returnedWorkRequest = workRequestQueue.takeTop(0, TimeUnit.SECONDS);
+
+        assertEquals(workRequestMgmtOver, returnedWorkRequest);
+    }
+
+    @Test
+    public void takeTop_QueueEmptyUntilTimeout_ReturnsNull() throws Exception {
+
+        final WorkRequest returnedWorkRequest = workRequestQueue.takeTop(10, TimeUnit.MILLISECONDS);
+
+        assertNull(returnedWorkRequest);
+    }
+
+    @Test
+    public void getStatistics_EveryKindOfChange_CountsEach() throws Exception {
+        populateQueue();
+        workRequestQueue.enqueue(new WorkRequestVIP(1, TIME));
+        workRequestQueue.enqueueAll(Arrays.asList(new WorkRequestNormal(5, TIME), new WorkRequestNormal(2, TIME)));
+        workRequestQueue.dequeue(5);
+        workRequestQueue.dequeueTop(2);
+        workRequestQueue.dequeueTop();
+        workRequestQueue.dequeueTop();
+        workRequestQueue.dequeueTop();
+        workRequestQueue.dequeueTop(2);
+        workRequestQueue.takeTop(10, TimeUnit.MILLISECONDS);
+
+        final QueueStatistics statistics = workRequestQueue.getStatistics();
+        assertEquals(5, statistics.getEnqueued());
+        assertEquals(5, statistics.getDequeued());
+        assertEquals(2, statistics.getDuplicates());
+        assertEquals(3, statistics.getEmptyDequeues());
+    }
+
+    @Test
+    public void getStatistics_QueueRankedAndPositionsLookedUp_TimesEach(){
+        populateQueue();
+
+        workRequestQueue.getSortedIds();
+        workRequestQueue.getPage(2, null);
+        workRequestQueue.getPosition(1);
+        workRequestQueue.getPositions(new long[] {1, 2});
+
+        assertEquals(2, workRequestQueue.getStatistics().getSortTimer().snapshot().getCount());
+        assertEquals(2, workRequestQueue.getStatistics().getRankTimer().snapshot().getCount());
+    }
+
+    @Test
+    public void getCurrentWaitTimes_RandomAges_MatchesNearestRankOfSortedAges(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        workRequestQueue = new WorkRequestQueue(new AdjustableClock(now));
+        final Random random = new Random(7);
+        final List<Long> ages = new ArrayList<>();
+        final List<Long> normalAges = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            final long age = random.nextInt(100000);
+            final WorkRequestType type = WorkRequestType.values()[id % 4];
+            workRequestQueue.enqueue(type.newWorkRequest(id, now.minusNanos(age * 1000000)));
+            ages.add(age);
+            if(type == WorkRequestType.NORMAL) {
+                normalAges.add(age);
+            }
+        }
+
+        final WaitTimePercentiles all = workRequestQueue.getCurrentWaitTimes();
+        final WaitTimePercentiles normal = workRequestQueue.getCurrentWaitTimes(WorkRequestType.NORMAL);
+
+        assertEquals(1000, all.getCount());
+        assertEquals(nearestRank(ages, 0.5), all.getP50());
+        assertEquals(nearestRank(ages, 0.99), all.getP99());
+        assertEquals(nearestRank(ages, 0.999), all.getP999());
+        assertEquals(nearestRank(ages, 1), all.getMax());
+        assertEquals(250, normal.getCount());
+        assertEquals(nearestRank(normalAges, 0.9), normal.getP90());
+        assertEquals(nearestRank(normalAges, 0.95), normal.getP95());
+    }
+
+    @Test
+    public void getCurrentWaitTimes_QueueEmpty_ReturnsZeros(){
+
+        final WaitTimePercentiles waitTimes = workRequestQueue.getCurrentWaitTimes(TIME);
+
+        assertEquals(0, waitTimes.getCount());
+        assertEquals(0, waitTimes.getP99());
+        assertEquals(0, waitTimes.getMax());
+    }
+
+    @Test
+    public void getRealizedWaitTimes_Removed_RecordsTimeFromEnqueueToRemoval(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        workRequestQueue = new WorkRequestQueue(new AdjustableClock(now));
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusSeconds(10)));
+        workRequestQueue.enqueue(new WorkRequestVIP(2, now.minusSeconds(20)));
+        workRequestQueue.enqueue(new WorkRequestNormal(3, now.minusSeconds(30)));
+        workRequestQueue.enqueue(new WorkRequestPriority(4, now.minusSeconds(40)));
+        workRequestQueue.dequeue(1);
+        workRequestQueue.dequeueTop();
+        workRequestQueue.dequeueTop(2);
+
+        final WaitTimePercentiles all = workRequestQueue.getRealizedWaitTimes();
+        final WaitTimePercentiles normal = workRequestQueue.getRealizedWaitTimes(WorkRequestType.NORMAL);
+
+        assertEquals(4, all.getCount());
+        assertEquals(20000, all.getP50(), 200);
+        assertEquals(40000, all.getMax(), 400);
+        assertEquals(2, normal.getCount());
+        assertEquals(30000, normal.getMax(), 300);
+    }
+
+    @Test
+    public void events_EveryKindOfChange_ToldOnceDurableWithWait(){
+        final LocalDateTime now = LocalDateTime.of(2017, 2, 19, 12, 0);
+        final long nowMillis = now.toInstant(ZoneOffset.UTC).toEpochMilli();
+        final List<String> told = new ArrayList<>();
+        workRequestQueue = new WorkRequestQueue(new AdjustableClock(now), QueueLog.NONE, new QueueEvents() {
+            @Override
+            public void enqueued(final long id, final WorkRequestType type, final long enqueuedMillis) {
+                told.add("enqueued " + id + " " + type + " " + (nowMillis - enqueuedMillis));
+            }
+
+            @Override
+            public void dequeued(final long id, final WorkRequestType type, final long enqueuedMillis,
+                    final long waitMillis, final boolean top) {
+                told.add("dequeued " + id + " " + type + " " + (nowMillis - enqueuedMillis) + " " + waitMillis + " "
+                    + top);
+            }
+        });
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusSeconds(10)));
+        workRequestQueue.enqueue(new WorkRequestNormal(1, now.minusSeconds(10)));
+        workRequestQueue.enqueueAll(Arrays.asList(new WorkRequestVIP(2, now.minusSeconds(20)),
+            new WorkRequestNormal(1, now), new WorkRequestNormal(3, now.minusSeconds(30))));
+        workRequestQueue.dequeue(1);
+        workRequestQueue.dequeueTop();
+        workRequestQueue.dequeueTop(2);
+
+        assertEquals(Arrays.asList(
+            "enqueued 1 NORMAL 10000",
+            "enqueued 2 VIP 20000",
+            "enqueued 3 NORMAL 30000",
+            "dequeued 1 NORMAL 10000 10000 false",
+            "dequeued 2 VIP 20000 20000 true",
+            "dequeued 3 NORMAL 30000 30000 true"), told);
+    }
+
+    @Test
+    public void putBack_RemovedTop_RestoredWithoutCountingOrTelling(){
+        final List<String> told = new ArrayList<>();
+        workRequestQueue = new WorkRequestQueue(Clock.systemUTC(), QueueLog.NONE, new QueueEvents() {
+            @Override
+            public void enqueued(final long id, final WorkRequestType type, final long enqueuedMillis) {
+                told.add("enqueued " + id);
+            }
+
+            @Override
+            public void dequeued(final long id, final WorkRequestType type, final long enqueuedMillis,
+                    final long waitMillis, final boolean top) {
+                told.add("dequeued " + id);
+            }
+        });
+        populateQueueComplex();
+        final List<Long> before = workRequestQueue.getSortedIds();
+        final QueueStatistics statistics = workRequestQueue.getStatistics();
+        final WorkRequest top = workRequestQueue.dequeueTop();
+        told.clear();
+        final long enqueued = statistics.getEnqueued();
+        final long dequeued = statistics.getDequeued();
+        final long waited = statistics.getWaitTimer().snapshot().getCount();
+
+        assertTrue(workRequestQueue.putBack(top));
+
+        assertEquals(before, workRequestQueue.getSortedIds());
+        assertEquals(enqueued, statistics.getEnqueued());
+        assertEquals(dequeued, statistics.getDequeued());
+        assertEquals(waited, statistics.getWaitTimer().snapshot().getCount());
+        assertTrue(told.isEmpty());
+    }
+
+    @Test
+    public void putBack_IdEnqueuedAgain_ReturnsFalseAndKeepsNewEntry(){
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+        final WorkRequest top = workRequestQueue.dequeueTop();
+        workRequestQueue.enqueue(new WorkRequestVIP(1, TIME.plusSeconds(1)));
+
+        assertFalse(workRequestQueue.putBack(top));
+        assertEquals(WorkRequestType.VIP, workRequestQueue.get(1).getType());
+    }
+
+    @Test
+    public void logFails_EveryKindOfChange_QueueUnchanged(){
+        final FailingLog log = new FailingLog();
+        workRequestQueue = new WorkRequestQueue(Clock.systemUTC(), log);
+        populateQueueComplex();
+        final List<Long> before = workRequestQueue.getSortedIds();
+        final long averageBefore = workRequestQueue.getAverageWaitTime(TIME);
+
+        log.failing = true;
+        assertFails(() -> workRequestQueue.enqueue(new WorkRequestNormal(1000, TIME)));
+        assertFails(() -> workRequestQueue.enqueueAll(Arrays.asList(new WorkRequestNormal(1001, TIME))));
+        assertFails(() -> workRequestQueue.dequeue(before.get(1)));
+        assertFails(() -> workRequestQueue.dequeueTop());
+        assertFails(() -> workRequestQueue.dequeueTop(2));
+
+        assertEquals(before, workRequestQueue.getSortedIds());
+        assertEquals(averageBefore, workRequestQueue.getAverageWaitTime(TIME));
+        assertNull(workRequestQueue.get(1000));
+        assertNull(workRequestQueue.get(1001));
+
+        // Store and index still agree, so each entry is removed exactly once
+        log.failing = false;
+        assertEquals((long) before.get(1), workRequestQueue.dequeue(before.get(1)).getId());
+        assertEquals(before.size() - 1, workRequestQueue.dequeueTop(before.size()).size());
+        assertNull(workRequestQueue.dequeueTop());
+        for (final WorkRequestType type : WorkRequestType.values()) {
+            assertEquals(0, workRequestQueue.size(type));
+        }
+        workRequestQueue.enqueue(new WorkRequestNormal(1000, TIME));
+        assertEquals(10, workRequestQueue.getAverageWaitTime(TIME.plusSeconds(10)));
+    }
+
+    @Test
+    public void dequeueTop_LogFailsPartWayThroughBatch_QueueUnchanged(){
+        final FailingLog log = new FailingLog();
+        workRequestQueue = new WorkRequestQueue(Clock.systemUTC(), log);
+        populateQueueComplex();
+        final List<Long> before = workRequestQueue.getSortedIds();
+
+        log.appendsLeft = 2;
+        assertFails(() -> workRequestQueue.dequeueTop(4));
+        assertEquals(before, workRequestQueue.getSortedIds());
+
+        log.appendsLeft = Integer.MAX_VALUE;
+        assertEquals(before.subList(0, 4), workRequestQueue.dequeueTop(4));
+        assertEquals(before.subList(4, before.size()), workRequestQueue.getSortedIds());
+    }
+
+    @Test
+    public void logForceFails_AfterChangeApplied_RefusesEveryLaterChange(){
+        final FailingLog log = new FailingLog();
+        workRequestQueue = new WorkRequestQueue(Clock.systemUTC(), log);
+        populateQueueComplex();
+        final List<Long> before = workRequestQueue.getSortedIds();
+
+        log.forceFailing = true;
+        assertFails(() -> workRequestQueue.dequeueTop());
+
+        // The log may have recovered, but the queue no longer matches it so stays closed
+        log.forceFailing = false;
+        assertFails(() -> workRequestQueue.enqueue(new WorkRequestNormal(1000, TIME)));
+        assertFails(() -> workRequestQueue.enqueueAll(Arrays.asList(new WorkRequestNormal(1001, TIME))));
+        assertFails(() -> workRequestQueue.dequeue(before.get(1)));
+        assertFails(() -> workRequestQueue.dequeueTop());
+        assertFails(() -> workRequestQueue.dequeueTop(2));
+
+        assertEquals(before.subList(1, before.size()), workRequestQueue.getSortedIds());
+        assertNull(workRequestQueue.get(1000));
+    }
+
+    private static void assertFails(final Runnable change) {
+        try {
+            change.run();
+        } catch (final WorkRequestPersistenceException e) {
+            return;
+        }
+        fail("Expected the log to fail");
+    }
+
+    @Test
+    public void size_EntriesOfEachType_CountsPerType(){
+        populateQueueComplex();
+        workRequestQueue.dequeue(10);
+
+        assertEquals(2, workRequestQueue.size(WorkRequestType.NORMAL));
+        assertEquals(2, workRequestQueue.size(WorkRequestType.PRIORITY));
+        assertEquals(2, workRequestQueue.size(WorkRequestType.VIP));
+        assertEquals(2, workRequestQueue.size(WorkRequestType.MANAGEMENT_OVERRIDE));
+    }
+
+    @Test(timeout = 10000)
+    public void takeTop_WaitersParked_WokenInArrivalOrderAsEnqueued() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2, task -> new Thread(task, "take-top"));
+        final Future<WorkRequest> first = executor.submit(() -> workRequestQueue.takeTop(10, TimeUnit.SECONDS));
+        awaitTimedWaitingThreads(1);
+        final Future<WorkRequest> second = executor.submit(() -> workRequestQueue.takeTop(10, TimeUnit.SECONDS));
+        awaitTimedWaitingThreads(2);
+
+        workRequestQueue.enqueue(workRequestNormal);
+        assertEquals(workRequestNormal, first.get());
+        workRequestQueue.enqueue(workRequestVIP);
+        assertEquals(workRequestVIP, second.get());
+        executor.shutdown();
+    }
+
+    @Test(timeout = 30000)
+    public void dequeueTop_ConcurrentConsumers_NeverEmptyWhileEntriesRemainAndEachReturnedOnce() throws Exception {
+        final int consumers = 32;
+        final int perConsumer = 2000;
+        final int total = consumers * perConsumer;
+        for (int id = 0; id < total; id++) {
+            workRequestQueue.enqueue(new WorkRequestFactory().getWorkRequest(id, TIME.minusSeconds(id % 500)));
+        }
+
+        // Exactly as many calls as entries, so every call starts while an entry remains and must claim one
+        final List<Future<List<Long>>> results = runConcurrently(consumers, () -> {
+            final List<Long> ids = new ArrayList<>(perConsumer);
+            for (int i = 0; i < perConsumer; i++) {
+                final WorkRequest top = workRequestQueue.dequeueTop();
+                assertNotNull(top);
+                ids.add(top.getId());
+            }
+            return ids;
+        });
+
+        final Set<Long> dequeued = new HashSet<>();
+        for (final Future<List<Long>> result : results) {
+            dequeued.addAll(result.get());
+        }
+        assertEquals(total, dequeued.size());
+        assertNull(workRequestQueue.dequeueTop());
+    }
+
+    @Test(timeout = 30000)
+    public void dequeueTop_ConcurrentProducersAndConsumers_EachEnqueuedReturnedOnce() throws Exception {
+        final int threads = 16;
+        final int perProducer = 2000;
+        final AtomicInteger produced = new AtomicInteger();
+        final Set<Long> dequeued = ConcurrentHashMap.newKeySet();
+
+        final List<Future<List<Long>>> results = runConcurrently(threads, () -> {
+            final int thread = produced.getAndIncrement();
+            if(thread % 2 == 0) {
+                for (int i = 0; i < perProducer; i++) {
+                    final long id = (long) thread * perProducer + i;
+                    assertNull(workRequestQueue.enqueue(new WorkRequestFactory().getWorkRequest(id, TIME.minusSeconds(i))));
+                }
+            } else {
+                while (dequeued.size() < threads / 2 * perProducer) {
+                    final WorkRequest top = workRequestQueue.dequeueTop();
+                    if(top != null) {
+                        assertTrue(dequeued.add(top.getId()));
+                    }
+                }
+            }
+            return null;
+        });
+
+        for (final Future<List<Long>> result : results) {
+            result.get();
+        }
+        assertEquals(threads / 2 * perProducer, dequeued.size());
+        assertNull(workRequestQueue.dequeueTop());
+    }
+
+    /**
+     * Wait until the supplied number of take-top threads are parked with a timeout, as they are in takeTop
+     */
+    private static void awaitTimedWaitingThreads(final int count) throws InterruptedException {
+        while (Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("take-top") && thread.getState() == Thread.State.TIMED_WAITING)
+                .count() < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Run the task on the supplied number of threads, released together
+     */
+    private static <T> List<Future<T>> runConcurrently(final int threads, final Callable<T> task) {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<T>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+        return results;
+    }
+
+    /**
+     * Log that throws on append while failing, as the write ahead log does once closed or broken, and on waiting for
+     * durability while forces fail, as it does when a write or force of its segment fails
+     */
+    private static class FailingLog implements QueueLog {
+        boolean failing;
+        boolean forceFailing;
+        /** Appends to accept before failing */
+        int appendsLeft = Integer.MAX_VALUE;
+
+        @Override
+        public void replay(final Target target) {
+        }
+
+        @Override
+        public long appendEnqueue(final long id, final WorkRequestType type, final long enqueuedMillis) {
+            return append();
+        }
+
+        @Override
+        public long appendRemove(final long id) {
+            return append();
+        }
+
+        private long append() {
+            if(failing || appendsLeft-- <= 0) {
+                throw new WorkRequestPersistenceException("closed", null);
+            }
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(final long sequence) {
+            if(forceFailing) {
+                throw new WorkRequestPersistenceException("record " + sequence + " not written", null);
+            }
+        }
+
+        @Override
+        public long roll() {
+            return 0;
+        }
+
+        @Override
+        public void checkpoint(final WorkRequestQueue queue) {
+        }
+    }
+
+    private static class AdjustableClock extends Clock {
+
+        private Instant instant;
+
+        AdjustableClock(final LocalDateTime time) {
+            instant = time.toInstant(ZoneOffset.UTC);
+        }
+
+        void advanceSeconds(final long seconds) {
+            instant = instant.plusSeconds(seconds);
+        }
+
+        void advanceMillis(final long millis) {
+            instant = instant.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+    /**
+     * Value with that fraction of the values at or below it
+     */
+    private static long nearestRank(final List<Long> values, final double quantile){
+        final List<Long> sorted = new ArrayList<>(values);
+        sorted.sort(null);
+        return sorted.get((int) Math.ceil(quantile * sorted.size()) - 1);
+    }
+
+    private void populateQueueComplex(){
+        populateQueue();
+        workRequestQueue.enqueue(new WorkRequestNormal(10, TIME.plusHours(1)));
+        workRequestQueue.enqueue(new WorkRequestNormal(11, TIME.minusHours(3)));
+        workRequestQueue.enqueue(new WorkRequestVIP(12, TIME.minusMinutes(1)));
+        workRequestQueue.enqueue(new WorkRequestPriority(13, TIME.plusMinutes(4)));
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(15, TIME.minusHours(10)));
+    }
+
+    private void populateQueueAtClock(final AdjustableClock clock){
+        workRequestQueue = new WorkRequestQueue(clock);
+        final LocalDateTime time = LocalDateTime.ofInstant(clock.instant(), ZoneOffset.UTC).minusMinutes(1);
+        workRequestQueue.enqueue(new WorkRequestNormal(1, time));
+        workRequestQueue.enqueue(new WorkRequestVIP(2, time));
+        workRequestQueue.enqueue(new WorkRequestPriority(3, time));
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(4, time));
+    }
+
     private void populateQueue(){
         workRequestQueue.enqueue(workRequestNormal);
         workRequestQueue.enqueue(workRequestVIP);
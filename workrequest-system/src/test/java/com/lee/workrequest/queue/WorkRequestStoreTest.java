@@ -0,0 +1,105 @@
+package com.lee.workrequest.queue;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lee.workrequest.model.WorkRequestType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class WorkRequestStoreTest {
+
+    private WorkRequestStore store;
+
+    @Before
+    public void setup(){
+        store = new WorkRequestStore();
+    }
+
+    @Test
+    public void entry_TypeAndTime_Unpacked(){
+        for (final WorkRequestType type : WorkRequestType.values()) {
+            for (final long time : new long[] {0, 1, -1, 1488000000000L, -62135596800000L,
+                    WorkRequestStore.MIN_ENQUEUED_MILLIS, WorkRequestStore.MAX_ENQUEUED_MILLIS}) {
+                final long entry = WorkRequestStore.entry(type, time);
+
+                assertEquals(type, WorkRequestStore.type(entry));
+                assertEquals(time, WorkRequestStore.enqueuedMillis(entry));
+            }
+        }
+    }
+
+    @Test
+    public void putIfAbsent_IdNotStored_AddsAndReturnsNone(){
+        final long entry = WorkRequestStore.entry(WorkRequestType.VIP, 1000);
+
+        assertEquals(WorkRequestStore.NONE, store.putIfAbsent(123, entry));
+
+        assertEquals(entry, store.get(123));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void putIfAbsent_IdStored_ReturnsExistingAndDoesNotReplace(){
+        final long entry = WorkRequestStore.entry(WorkRequestType.VIP, 1000);
+        store.putIfAbsent(123, entry);
+
+        assertEquals(entry, store.putIfAbsent(123, WorkRequestStore.entry(WorkRequestType.NORMAL, 2000)));
+        assertEquals(entry, store.get(123));
+    }
+
+    @Test
+    public void putAllIfAbsent_SomeIdsStored_StoresOnlyTheRest(){
+        final long existing = WorkRequestStore.entry(WorkRequestType.VIP, 1000);
+        store.putIfAbsent(7, existing);
+        final long[] ids = new long[5000];
+        final long[] times = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+            times[i] = 2000 + i;
+        }
+
+        final boolean[] stored = store.putAllIfAbsent(WorkRequestType.NORMAL, times, ids, ids.length);
+
+        assertEquals(ids.length, store.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i != 7, stored[i]);
+            assertEquals(i == 7 ? existing : WorkRequestStore.entry(WorkRequestType.NORMAL, 2000 + i), store.get(i));
+        }
+    }
+
+    @Test
+    public void remove_IdNotStored_ReturnsNone(){
+
+        assertEquals(WorkRequestStore.NONE, store.remove(123));
+    }
+
+    @Test
+    public void operations_RandomMix_MatchHashMap(){
+        final WorkRequestType[] types = WorkRequestType.values();
+        final Random random = new Random(7);
+        final Map<Long, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 200000; i++) {
+            // Narrow id range forces long probe runs and removals from the middle of them
+            final long id = random.nextInt(5000) - 2500;
+            if(random.nextBoolean()) {
+                final long entry = WorkRequestStore.entry(types[random.nextInt(types.length)], i);
+                final Long previous = expected.putIfAbsent(id, entry);
+                assertEquals(previous == null ? WorkRequestStore.NONE : previous, store.putIfAbsent(id, entry));
+            } else {
+                final Long removed = expected.remove(id);
+                assertEquals(removed == null ? WorkRequestStore.NONE : removed, store.remove(id));
+            }
+        }
+
+        assertEquals(expected.size(), store.size());
+        for (long id = -2500; id < 2500; id++) {
+            assertEquals((long) expected.getOrDefault(id, WorkRequestStore.NONE), store.get(id));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.lee.workrequest.queue.LongList;
+
+public class LongListSerializerTest {
+
+    private ObjectMapper objectMapper;
+
+    @Before
+    public void setup(){
+        objectMapper = new ObjectMapper().registerModule(new SimpleModule().addSerializer(new LongListSerializer()));
+    }
+
+    @Test
+    public void serialize_Populated_WritesJsonArray() throws Exception {
+        final LongList longList = new LongList(1);
+        longList.addLong(123);
+        longList.addLong(456);
+
+        assertEquals("[123,456]", objectMapper.writeValueAsString(longList));
+    }
+
+    @Test
+    public void serialize_Empty_WritesEmptyJsonArray() throws Exception {
+
+        assertEquals("[]", objectMapper.writeValueAsString(new LongList()));
+    }
+}
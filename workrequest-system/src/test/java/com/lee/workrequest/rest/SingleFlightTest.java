@@ -0,0 +1,116 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown(){
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void get_CallsNotConcurrent_RunsForEachCall(){
+        final AtomicInteger runs = new AtomicInteger();
+        final SingleFlight<Integer> flight = new SingleFlight<>("runs", runs::incrementAndGet);
+
+        assertEquals(1, (int) flight.get());
+        assertEquals(2, (int) flight.get());
+
+        assertEquals(2, flight.getCalls());
+        assertEquals(0, flight.getCoalesced());
+    }
+
+    @Test(timeout = 10000)
+    public void get_CallsWhileRunInProgress_ShareOneRunStartedAfterThem() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch firstRunStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        final SingleFlight<Integer> flight = new SingleFlight<>("runs", () -> {
+            final int run = runs.incrementAndGet();
+            if(run == 1) {
+                firstRunStarted.countDown();
+                awaitUninterruptibly(releaseFirstRun);
+            }
+            return run;
+        });
+
+        final Future<Integer> first = executor.submit(flight::get);
+        firstRunStarted.await();
+        final List<Future<Integer>> later = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            later.add(executor.submit(flight::get));
+        }
+        // One of the later callers leads the next run, the rest join it
+        while (flight.getCoalesced() < 7) {
+            Thread.sleep(1);
+        }
+        releaseFirstRun.countDown();
+
+        assertEquals(1, (int) first.get());
+        for (final Future<Integer> result : later) {
+            assertEquals(2, (int) result.get());
+        }
+        assertEquals(2, runs.get());
+        assertEquals(9, flight.getCalls());
+    }
+
+    @Test(timeout = 10000)
+    public void get_ComputationThrows_ThrowsToEveryCallerOfTheRun() throws Exception {
+        final CountDownLatch firstRunStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstRun = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final SingleFlight<Integer> flight = new SingleFlight<>("runs", () -> {
+            if(runs.incrementAndGet() == 1) {
+                firstRunStarted.countDown();
+                awaitUninterruptibly(releaseFirstRun);
+                return 1;
+            }
+            throw new IllegalStateException("failed");
+        });
+
+        executor.submit(flight::get);
+        firstRunStarted.await();
+        final Future<Integer> leader = executor.submit(flight::get);
+        final Future<Integer> joined = executor.submit(flight::get);
+        while (flight.getCoalesced() < 1) {
+            Thread.sleep(1);
+        }
+        releaseFirstRun.countDown();
+
+        assertThrowsIllegalState(leader);
+        assertThrowsIllegalState(joined);
+    }
+
+    private static void assertThrowsIllegalState(final Future<Integer> result) throws InterruptedException {
+        try {
+            result.get();
+            fail("Expected the computation's exception");
+        } catch (final ExecutionException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+    }
+
+    private static void awaitUninterruptibly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
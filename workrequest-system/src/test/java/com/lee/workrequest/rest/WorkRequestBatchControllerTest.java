@@ -0,0 +1,62 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lee.workrequest.exception.WorkRequestInvalidBatchException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+@RunWith(MockitoJUnitRunner.class)
+public class WorkRequestBatchControllerTest {
+
+    private WorkRequestBatchController workRequestBatchController;
+
+    @Mock
+    private WorkRequestService mockWorkRequestService;
+
+    @Before
+    public void setup(){
+        workRequestBatchController = new WorkRequestBatchController(mockWorkRequestService, new WorkRequestValidation(),
+            new ObjectMapper());
+    }
+
+    @Test
+    public void enqueueBatch_ValidBody_ReturnsServiceResult() throws IOException {
+
+        final WorkRequestBatchResult result = new WorkRequestBatchResult();
+        when(mockWorkRequestService.enqueueBatch(any(WorkRequestBatchReader.class))).thenReturn(result);
+
+        final WorkRequestBatchResult returnedResult = workRequestBatchController.enqueueBatch(body("[{\"id\": 1}]"));
+
+        assertEquals(result, returnedResult);
+    }
+
+    @Test(expected = WorkRequestInvalidBatchException.class)
+    public void enqueueBatch_MalformedBody_ThrowsException() throws IOException {
+
+        when(mockWorkRequestService.enqueueBatch(any(WorkRequestBatchReader.class))).thenAnswer(invocation -> {
+            final WorkRequestBatchReader reader = invocation.getArgument(0);
+            while (reader.next()) {
+                // Read until the fault
+            }
+            return new WorkRequestBatchResult();
+        });
+
+        workRequestBatchController.enqueueBatch(body("[{\"id\": 1},"));
+    }
+
+    private static ByteArrayInputStream body(final String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,74 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+public class WorkRequestBatchReaderTest {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    public void next_JsonArray_ReadsEachRecord() throws IOException {
+        final WorkRequestBatchReader reader = reader("[{\"id\": 5, \"time\": \"2017-02-19T14:27:16.024\"}, {\"id\": 7}]");
+
+        assertTrue(reader.next());
+        assertTrue(reader.isValid());
+        assertEquals(5, reader.getId());
+        assertEquals(LocalDateTime.of(2017, 2, 19, 14, 27, 16, 24000000), reader.getTime());
+        assertTrue(reader.next());
+        assertTrue(reader.isValid());
+        assertEquals(7, reader.getId());
+        assertNull(reader.getTime());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void next_NewlineDelimited_ReadsEachRecord() throws IOException {
+        final WorkRequestBatchReader reader = reader("{\"id\": 5}\n{\"id\": 7, \"other\": [1, {\"id\": 3}]}\n");
+
+        assertTrue(reader.next());
+        assertEquals(5, reader.getId());
+        assertTrue(reader.next());
+        assertEquals(7, reader.getId());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void next_InvalidRecords_ReadAsInvalidAndContinues() throws IOException {
+        final WorkRequestBatchReader reader = reader("[{\"id\": 0}, {\"id\": \"5\"}, {\"time\": \"2017-02-19T14:27:16\"}, "
+                + "{\"id\": 5, \"time\": \"yesterday\"}, 12, [1], {\"id\": 99999999999999999999}, "
+                + "{\"id\": 5, \"time\": \"+2000000-01-01T00:00:00\"}, {\"id\": 6}]");
+
+        for (int i = 0; i < 8; i++) {
+            assertTrue(reader.next());
+            assertFalse(reader.isValid());
+        }
+        assertTrue(reader.next());
+        assertTrue(reader.isValid());
+        assertEquals(6, reader.getId());
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void next_MalformedJson_ThrowsException() throws IOException {
+        final WorkRequestBatchReader reader = reader("{\"id\": 5}\n{\"id\": ");
+
+        while (reader.next()) {
+            // Read until the fault
+        }
+    }
+
+    private static WorkRequestBatchReader reader(final String body) throws IOException {
+        return new WorkRequestBatchReader(JSON_FACTORY.createParser(body), new WorkRequestValidation());
+    }
+}
@@ -2,6 +2,7 @@ package com.lee.workrequest.rest;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -13,8 +14,16 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.LongList;
+import com.lee.workrequest.queue.QueueCursor;
+import com.lee.workrequest.queue.QueuePage;
+import com.lee.workrequest.queue.QueueSnapshot;
+import com.lee.workrequest.rest.WorkRequestController.Consistency;
 import com.lee.workrequest.rest.WorkRequestController.DeleteOperation;
 import com.lee.workrequest.rest.WorkRequestController.GetIdOperation;
 import com.lee.workrequest.rest.WorkRequestController.GetOperation;
@@ -35,8 +44,18 @@ public class WorkRequestControllerTest {
     @Mock
     private WorkRequestValidation mockWorkRequestValidation;
 
+    @Mock
+    private WorkRequestDispatcher mockWorkRequestDispatcher;
+
+    @Mock
+    private WorkRequestSnapshotRefresher mockWorkRequestSnapshotRefresher;
+
+    @Mock
+    private WorkRequestPositionStreams mockWorkRequestPositionStreams;
+
     private static final long ID = 123;
     private static final LocalDateTime TIME = LocalDateTime.now();
+    private static final String TAG = "5-ka3b2c";
 
     @Test
     public void enqueue_ValidParams_ValidatesAndServices(){
@@ -53,86 +72,235 @@ public class WorkRequestControllerTest {
         final long averageWaitTime = 500;
         when(mockWorkRequestService.getAverageWaitTime(TIME)).thenReturn(averageWaitTime);
 
-        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.AVERAGE_WAIT_TIME, TIME);
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.AVERAGE_WAIT_TIME, TIME, null, null, null, null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(averageWaitTime, response.getBody());
+    }
+
+    @Test
+    public void getWorkRequests_OperationAverageWaitTimeWithType_ReturnsOKAndAverageWaitTimeForType(){
+
+        final long averageWaitTime = 600;
+        when(mockWorkRequestService.getAverageWaitTime(TIME, WorkRequestType.VIP)).thenReturn(averageWaitTime);
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.AVERAGE_WAIT_TIME, TIME, WorkRequestType.VIP, null, null, null, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(averageWaitTime, response.getBody());
     }
 
     @Test
-    public void getWorkRequests_OperationIds_ReturnsOKAndListOfIds(){
+    public void getWorkRequests_OperationWaitTimePercentiles_ReturnsOKAndWaitTimes(){
+
+        final WorkRequestWaitTimes waitTimes = new WorkRequestWaitTimes(300, null, null);
+        when(mockWorkRequestService.getWaitTimes(TIME, WorkRequestType.VIP)).thenReturn(waitTimes);
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.WAIT_TIME_PERCENTILES, TIME, WorkRequestType.VIP, null, null, null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(waitTimes, response.getBody());
+    }
+
+    @Test
+    public void getWorkRequests_OperationIds_ReturnsOKListOfIdsAndETag(){
 
-        final List<Long> sortedIds = new ArrayList<>();
-        sortedIds.add(123L);
-        sortedIds.add(456L);
-        when(mockWorkRequestService.getSortedIds()).thenReturn(sortedIds);
+        final LongList sortedIds = new LongList();
+        sortedIds.addLong(123L);
+        sortedIds.addLong(456L);
+        final QueueSnapshot mockSnapshot = mockSnapshot();
+        when(mockSnapshot.getIds()).thenReturn(sortedIds);
 
-        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null);
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null, null, null, null, null, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(sortedIds, response.getBody());
+        assertEquals("\"" + TAG + "-ids\"", response.getHeaders().getETag());
     }
 
     @Test
     public void getWorkRequests_OperationIdsListEmpty_ReturnsNoContent(){
 
-        when(mockWorkRequestService.getSortedIds()).thenReturn(new ArrayList<>());
+        final QueueSnapshot mockSnapshot = mockSnapshot();
+        when(mockSnapshot.getIds()).thenReturn(new LongList());
 
-        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null);
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null, null, null, null, null, null);
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertNull(response.getBody());
     }
 
     @Test
-    public void getWorkRequests_NoOperation_ReturnsOKAndListOfWorkRequests(){
+    public void getWorkRequests_NoOperation_ReturnsOKListOfWorkRequestsAndETag(){
 
         final List<WorkRequest> sortedWorkRequests = new ArrayList<>();
         sortedWorkRequests.add(mock(WorkRequest.class));
         sortedWorkRequests.add(mock(WorkRequest.class));
-        when(mockWorkRequestService.getSortedWorkRequests()).thenReturn(sortedWorkRequests);
+        final QueueSnapshot mockSnapshot = mockSnapshot();
+        when(mockSnapshot.getWorkRequests()).thenReturn(sortedWorkRequests);
 
-        final ResponseEntity<?> response = workRequestController.getWorkRequests(null, null);
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(null, null, null, null, null, null, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(sortedWorkRequests, response.getBody());
+        assertEquals("\"" + TAG + "\"", response.getHeaders().getETag());
     }
 
     @Test
     public void getWorkRequests_NoOperationListEmpty_ReturnsNoContent(){
 
-        when(mockWorkRequestService.getSortedWorkRequests()).thenReturn(new ArrayList<>());
+        final QueueSnapshot mockSnapshot = mockSnapshot();
+        when(mockSnapshot.getWorkRequests()).thenReturn(new ArrayList<>());
 
-        final ResponseEntity<?> response = workRequestController.getWorkRequests(null, null);
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(null, null, null, null, null, null, null);
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
         assertNull(response.getBody());
     }
 
+    @Test
+    public void getWorkRequests_IfNoneMatchesETag_ReturnsNotModifiedWithoutBody(){
+
+        mockSnapshot();
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(null, null, null, null, null, null,
+                "\"old\", \"" + TAG + "\"");
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+        assertEquals("\"" + TAG + "\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    public void getWorkRequests_OperationIdsIfNoneMatchesWorkRequestsETag_ReturnsOK(){
+
+        final LongList sortedIds = new LongList();
+        sortedIds.addLong(123L);
+        final QueueSnapshot mockSnapshot = mockSnapshot();
+        when(mockSnapshot.getIds()).thenReturn(sortedIds);
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null, null, null, null, null,
+                "\"" + TAG + "\"");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(sortedIds, response.getBody());
+    }
+
+    @Test
+    public void getWorkRequests_OperationIdsBounded_ReturnsIdsETagAndAgeFromPublishedSnapshot(){
+
+        final LongList sortedIds = new LongList(new long[] {123L});
+        final QueueSnapshot mockSnapshot = mock(QueueSnapshot.class);
+        when(mockSnapshot.getTag()).thenReturn(TAG);
+        when(mockSnapshot.getIds()).thenReturn(sortedIds);
+        when(mockPublished().getSnapshot()).thenReturn(mockSnapshot);
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null, null, null, null,
+                Consistency.BOUNDED, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(sortedIds, response.getBody());
+        assertEquals("\"" + TAG + "-ids\"", response.getHeaders().getETag());
+        assertEquals("150", response.getHeaders().getFirst(WorkRequestController.SNAPSHOT_AGE_HEADER));
+    }
+
     @Test
     public void getForId_OperationPosition_ReturnsOKAndPosition(){
 
         final int position = 1;
         when(mockWorkRequestService.getPosition(ID)).thenReturn(position);
 
-        final ResponseEntity<?> response = workRequestController.getForId(ID, GetIdOperation.POSITION);
+        final ResponseEntity<?> response = workRequestController.getForId(ID, GetIdOperation.POSITION, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(position, response.getBody());
     }
 
+    @Test
+    public void getPositions_SomeIdsMissing_ValidatesAndReturnsNullPositionForMissing(){
+
+        final long[] ids = {ID, 456};
+        when(mockWorkRequestService.getPositions(ids)).thenReturn(new int[] {3, -1});
+
+        final List<WorkRequestPosition> positions = workRequestController.getPositions(ids);
+
+        verify(mockWorkRequestValidation).countInRange(2);
+        assertEquals(2, positions.size());
+        assertEquals(ID, positions.get(0).getId());
+        assertEquals(Integer.valueOf(3), positions.get(0).getPosition());
+        assertEquals(456, positions.get(1).getId());
+        assertNull(positions.get(1).getPosition());
+    }
+
+    @Test
+    public void getPositionStream_ValidId_ValidatesAndOpensStream(){
+
+        final SseEmitter emitter = new SseEmitter();
+        when(mockWorkRequestPositionStreams.open(ID)).thenReturn(emitter);
+
+        assertSame(emitter, workRequestController.getPositionStream(ID));
+        verify(mockWorkRequestValidation).idInRange(ID);
+    }
+
+    @Test
+    public void getForId_OperationPositionBounded_ReturnsPositionAndAgeFromPublishedSnapshot(){
+
+        final WorkRequestSnapshotRefresher.Published mockPublished = mockPublished();
+        when(mockPublished.getPosition(ID)).thenReturn(7);
+
+        final ResponseEntity<?> response = workRequestController.getForId(ID, GetIdOperation.POSITION, Consistency.BOUNDED);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(7, response.getBody());
+        assertEquals("150", response.getHeaders().getFirst(WorkRequestController.SNAPSHOT_AGE_HEADER));
+    }
+
     @Test
     public void getForId_NoOperation_ReturnsOKAndWorkRequest(){
 
         final WorkRequest mockWorkRequest = mock(WorkRequest.class);
         when(mockWorkRequestService.getWorkRequest(ID)).thenReturn(mockWorkRequest);
 
-        final ResponseEntity<?> response = workRequestController.getForId(ID, null);
+        final ResponseEntity<?> response = workRequestController.getForId(ID, null, null);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(mockWorkRequest, response.getBody());
     }
 
+    @Test
+    public void getWorkRequests_OperationIdsWithLimit_ReturnsOKPageAndNextCursor(){
+
+        final QueuePage mockPage = mock(QueuePage.class);
+        final LongList ids = new LongList(new long[] {ID, 456});
+        final QueueCursor next = QueueCursor.parse("1.0.2.3");
+        when(mockWorkRequestService.getPage(2, null)).thenReturn(mockPage);
+        when(mockPage.getIds()).thenReturn(ids);
+        when(mockPage.getNextCursor()).thenReturn(next);
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(GetOperation.IDS, null, null, 2, null, null, null);
+
+        verify(mockWorkRequestValidation).limitInRange(2);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(ids, response.getBody());
+        assertEquals("1.0.2.3", response.getHeaders().getFirst(WorkRequestController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void getWorkRequests_CursorWithoutLimitLastPage_ReturnsDefaultLimitPageWithoutNextCursor(){
+
+        final QueuePage mockPage = mock(QueuePage.class);
+        final List<WorkRequest> workRequests = new ArrayList<>();
+        workRequests.add(mock(WorkRequest.class));
+        when(mockWorkRequestService.getPage(WorkRequestController.DEFAULT_LIMIT, "1.0.2.3")).thenReturn(mockPage);
+        when(mockPage.getWorkRequests()).thenReturn(workRequests);
+
+        final ResponseEntity<?> response = workRequestController.getWorkRequests(null, null, null, null, "1.0.2.3", null, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(workRequests, response.getBody());
+        assertNull(response.getHeaders().getFirst(WorkRequestController.NEXT_CURSOR_HEADER));
+    }
+
     @Test
     public void dequeue_ValidParams_ValidatesAndServices(){
 
@@ -151,4 +319,42 @@ public class WorkRequestControllerTest {
 
         assertEquals(ID, returnedID);
     }
+
+    @Test
+    public void dequeueTop_OperationTopWithCount_ValidatesAndReturnsIds(){
+
+        final LongList ids = new LongList(new long[] {ID, 456});
+        when(mockWorkRequestService.dequeueTop(2)).thenReturn(ids);
+
+        final LongList returnedIds = workRequestController.dequeueTop(DeleteOperation.TOP, 2);
+
+        verify(mockWorkRequestValidation).countInRange(2);
+        assertEquals(ids, returnedIds);
+    }
+
+    @Test
+    public void takeTop_OperationTopWithTimeout_ValidatesAndReturnsDispatcherResult(){
+
+        final DeferredResult<Long> result = new DeferredResult<>();
+        when(mockWorkRequestDispatcher.takeTop(10)).thenReturn(result);
+
+        final DeferredResult<Long> returnedResult = workRequestController.takeTop(DeleteOperation.TOP, 10);
+
+        verify(mockWorkRequestValidation).timeoutInRange(10);
+        assertEquals(result, returnedResult);
+    }
+
+    private WorkRequestSnapshotRefresher.Published mockPublished(){
+        final WorkRequestSnapshotRefresher.Published mockPublished = mock(WorkRequestSnapshotRefresher.Published.class);
+        when(mockPublished.getAgeMillis()).thenReturn(150L);
+        when(mockWorkRequestSnapshotRefresher.getPublished()).thenReturn(mockPublished);
+        return mockPublished;
+    }
+
+    private QueueSnapshot mockSnapshot(){
+        final QueueSnapshot mockSnapshot = mock(QueueSnapshot.class);
+        when(mockSnapshot.getTag()).thenReturn(TAG);
+        when(mockWorkRequestService.getSnapshot()).thenReturn(mockSnapshot);
+        return mockSnapshot;
+    }
 }
@@ -0,0 +1,132 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import com.lee.workrequest.exception.WorkRequestPersistenceException;
+import com.lee.workrequest.exception.WorkRequestQueueEmptyException;
+import com.lee.workrequest.model.WorkRequest;
+import com.lee.workrequest.model.WorkRequestNormal;
+import com.lee.workrequest.model.WorkRequestVIP;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class WorkRequestDispatcherTest {
+
+    private WorkRequestQueue workRequestQueue;
+    private WorkRequestDispatcher workRequestDispatcher;
+
+    private static final LocalDateTime TIME = LocalDateTime.now();
+
+    @Before
+    public void setup(){
+        workRequestQueue = new WorkRequestQueue();
+        workRequestDispatcher = new WorkRequestDispatcher(workRequestQueue);
+    }
+
+    @After
+    public void tearDown(){
+        workRequestDispatcher.shutdown();
+    }
+
+    @Test(timeout = 10000)
+    public void takeTop_QueuePopulated_SetsTopId() throws Exception {
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+        workRequestQueue.enqueue(new WorkRequestVIP(5, TIME));
+
+        final DeferredResult<Long> result = workRequestDispatcher.takeTop(10);
+
+        awaitResult(result);
+        assertEquals(5L, result.getResult());
+    }
+
+    @Test(timeout = 10000)
+    public void takeTop_EnqueuedWhileWaiting_SetsIdsInArrivalOrder() throws Exception {
+
+        final DeferredResult<Long> first = workRequestDispatcher.takeTop(10);
+        final DeferredResult<Long> second = workRequestDispatcher.takeTop(10);
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+        awaitResult(first);
+        workRequestQueue.enqueue(new WorkRequestNormal(2, TIME));
+        awaitResult(second);
+
+        assertEquals(1L, first.getResult());
+        assertEquals(2L, second.getResult());
+    }
+
+    @Test(timeout = 10000)
+    public void takeTop_QueueEmptyUntilTimeout_SetsQueueEmptyException() throws Exception {
+
+        final DeferredResult<Long> result = workRequestDispatcher.takeTop(1);
+
+        awaitResult(result);
+        assertTrue(result.getResult() instanceof WorkRequestQueueEmptyException);
+    }
+
+    @Test(timeout = 10000)
+    public void takeTop_QueueThrows_SetsErrorAndServesNextWaiter() throws Exception {
+        workRequestDispatcher.shutdown();
+        final AtomicBoolean failing = new AtomicBoolean(true);
+        workRequestQueue = new WorkRequestQueue() {
+            @Override
+            public WorkRequest takeTop(final long timeout, final TimeUnit unit) throws InterruptedException {
+                if(failing.getAndSet(false)) {
+                    throw new WorkRequestPersistenceException("closed", null);
+                }
+                return super.takeTop(timeout, unit);
+            }
+        };
+        workRequestDispatcher = new WorkRequestDispatcher(workRequestQueue);
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+
+        final DeferredResult<Long> failed = workRequestDispatcher.takeTop(10);
+        final DeferredResult<Long> served = workRequestDispatcher.takeTop(10);
+
+        awaitResult(failed);
+        awaitResult(served);
+        assertTrue(failed.getResult() instanceof WorkRequestPersistenceException);
+        assertEquals(1L, served.getResult());
+    }
+
+    @Test(timeout = 10000)
+    public void takeTop_ResultSetBeforeServed_PutsTopBackUncounted() throws Exception {
+        workRequestDispatcher.shutdown();
+        final CountDownLatch taking = new CountDownLatch(1);
+        final CountDownLatch expired = new CountDownLatch(1);
+        workRequestQueue = new WorkRequestQueue() {
+            @Override
+            public WorkRequest takeTop(final long timeout, final TimeUnit unit) throws InterruptedException {
+                taking.countDown();
+                expired.await();
+                return super.takeTop(timeout, unit);
+            }
+        };
+        workRequestDispatcher = new WorkRequestDispatcher(workRequestQueue);
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+
+        final DeferredResult<Long> result = workRequestDispatcher.takeTop(10);
+        taking.await();
+        result.setErrorResult(new WorkRequestQueueEmptyException());
+        expired.countDown();
+
+        while (workRequestQueue.getStatistics().getDequeued() == 0 || workRequestQueue.get(1) == null) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, workRequestQueue.getStatistics().getEnqueued());
+    }
+
+    private static void awaitResult(final DeferredResult<Long> result) throws InterruptedException {
+        while (!result.hasResult()) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
+import com.lee.workrequest.journal.EventJournal;
+import com.lee.workrequest.model.WorkRequestManagementOverride;
+import com.lee.workrequest.model.WorkRequestNormal;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class WorkRequestPositionStreamsTest {
+
+    private WorkRequestQueue workRequestQueue;
+    private EventJournal eventJournal;
+    private WorkRequestPositionStreams workRequestPositionStreams;
+
+    private static final LocalDateTime TIME = LocalDateTime.now();
+
+    @Before
+    public void setup(){
+        workRequestQueue = new WorkRequestQueue();
+        eventJournal = new EventJournal(1, 64);
+        // Refreshed by the tests rather than the schedule, and sent on the refreshing thread
+        workRequestPositionStreams = new WorkRequestPositionStreams(workRequestQueue, eventJournal,
+            TimeUnit.HOURS.toMillis(1), 300, Runnable::run);
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME.minusMinutes(2)));
+        workRequestQueue.enqueue(new WorkRequestNormal(2, TIME.minusMinutes(1)));
+    }
+
+    @After
+    public void tearDown(){
+        workRequestPositionStreams.shutdown();
+        eventJournal.close();
+    }
+
+    @Test(expected = WorkRequestDoesNotExistException.class)
+    public void open_IdNotQueued_ThrowsDoesNotExist(){
+        workRequestPositionStreams.open(3, new RecordingEmitter());
+    }
+
+    @Test
+    public void refresh_QueueChanges_SendsPositionOnlyWhenItChangesThenDequeued(){
+        final RecordingEmitter emitter = new RecordingEmitter();
+        workRequestPositionStreams.open(2, emitter);
+
+        workRequestPositionStreams.refresh();
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+        workRequestQueue.dequeue(1);
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+        workRequestQueue.dequeue(2);
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+
+        assertEquals(Arrays.asList("position 1", "position 0", "dequeued 2"), emitter.events);
+        assertTrue(emitter.completed);
+        assertEquals(0, workRequestPositionStreams.size());
+    }
+
+    @Test
+    public void refresh_ManyStreams_RanksOnceAndSendsEach(){
+        final RecordingEmitter first = new RecordingEmitter();
+        final RecordingEmitter second = new RecordingEmitter();
+        final RecordingEmitter other = new RecordingEmitter();
+        workRequestPositionStreams.open(2, first);
+        workRequestPositionStreams.open(2, second);
+        workRequestPositionStreams.open(1, other);
+        final long ranked = workRequestQueue.getStatistics().getRankTimer().snapshot().getCount();
+
+        workRequestPositionStreams.refresh();
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(5, TIME));
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+
+        assertEquals(3, workRequestPositionStreams.size());
+        assertEquals(ranked + 2, workRequestQueue.getStatistics().getRankTimer().snapshot().getCount());
+        assertEquals(Arrays.asList("position 1", "position 2"), first.events);
+        assertEquals(Arrays.asList("position 1", "position 2"), second.events);
+        assertEquals(Arrays.asList("position 0", "position 1"), other.events);
+    }
+
+    @Test
+    public void refresh_SendFails_ClosesStream(){
+        final RecordingEmitter emitter = new RecordingEmitter();
+        emitter.failing = true;
+        workRequestPositionStreams.open(2, emitter);
+
+        workRequestPositionStreams.refresh();
+
+        assertEquals(Collections.emptyList(), emitter.events);
+        assertEquals(0, workRequestPositionStreams.size());
+    }
+
+    @Test
+    public void open_FirstAndLastStream_SubscribesOnlyWhileOpen(){
+        assertFalse(workRequestPositionStreams.isSubscribed());
+
+        final RecordingEmitter first = new RecordingEmitter();
+        final RecordingEmitter second = new RecordingEmitter();
+        workRequestPositionStreams.open(1, first);
+        workRequestPositionStreams.open(2, second);
+        assertTrue(workRequestPositionStreams.isSubscribed());
+
+        workRequestQueue.dequeue(1);
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+        assertTrue(workRequestPositionStreams.isSubscribed());
+        workRequestQueue.dequeue(2);
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+
+        assertEquals(0, workRequestPositionStreams.size());
+        assertFalse(workRequestPositionStreams.isSubscribed());
+    }
+
+    @Test(timeout = 10000)
+    public void refresh_SendBlocked_KeepsRankingAndSendsLatest() throws Exception {
+        workRequestPositionStreams.shutdown();
+        final ExecutorService sender = Executors.newSingleThreadExecutor();
+        workRequestPositionStreams = new WorkRequestPositionStreams(workRequestQueue, eventJournal,
+            TimeUnit.HOURS.toMillis(1), 300, sender);
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch unblocked = new CountDownLatch(1);
+        final RecordingEmitter emitter = new RecordingEmitter() {
+            @Override
+            public void send(final SseEventBuilder builder) throws IOException {
+                sending.countDown();
+                try {
+                    unblocked.await();
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.send(builder);
+            }
+        };
+        workRequestPositionStreams.open(2, emitter);
+
+        workRequestPositionStreams.refresh();
+        sending.await();
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(5, TIME));
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+        workRequestQueue.enqueue(new WorkRequestManagementOverride(10, TIME));
+        workRequestPositionStreams.onBatchEnd();
+        workRequestPositionStreams.refresh();
+        unblocked.countDown();
+        sender.shutdown();
+        sender.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(Arrays.asList("position 1", "position 3"), emitter.events);
+    }
+
+    private static class RecordingEmitter extends SseEmitter {
+
+        final List<String> events = new ArrayList<>();
+        boolean failing;
+        boolean completed;
+
+        @Override
+        public void send(final SseEventBuilder builder) throws IOException {
+            if(failing) {
+                throw new IOException("Broken pipe");
+            }
+            final StringBuilder event = new StringBuilder();
+            for (final DataWithMediaType data : builder.build()) {
+                event.append(data.getData());
+            }
+            // event:name\ndata:value\n\n
+            events.add(event.toString().trim().replace("event:", "").replace("\ndata:", " "));
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.lee.workrequest.rest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -10,15 +15,26 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
 import com.lee.workrequest.exception.WorkRequestExistsException;
+import com.lee.workrequest.exception.WorkRequestInvalidCursorException;
 import com.lee.workrequest.exception.WorkRequestQueueEmptyException;
 import com.lee.workrequest.model.WorkRequest;
 import com.lee.workrequest.model.WorkRequestFactory;
+import com.lee.workrequest.model.WorkRequestType;
+import com.lee.workrequest.queue.LongList;
+import com.lee.workrequest.queue.QueueCursor;
+import com.lee.workrequest.queue.QueuePage;
+import com.lee.workrequest.queue.QueueSnapshot;
+import com.lee.workrequest.queue.WaitTimePercentiles;
 import com.lee.workrequest.queue.WorkRequestQueue;
+import com.lee.workrequest.rest.WorkRequestBatchResult.Outcome;
 
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -59,6 +75,18 @@ public class WorkRequestServiceTest {
         verify(mockWorkRequestQueue).enqueue(mockWorkRequest);
     }
 
+    @Test
+    public void enqueueAll_TimeOptional_CreatesEachAndQueuesAsOne(){
+
+        final WorkRequest another = mock(WorkRequest.class);
+        when(mockWorkRequestFactory.getWorkRequest(ID, TIME)).thenReturn(mockWorkRequest);
+        when(mockWorkRequestFactory.getWorkRequest(456)).thenReturn(another);
+        final boolean[] added = {true, false};
+        when(mockWorkRequestQueue.enqueueAll(Arrays.asList(mockWorkRequest, another))).thenReturn(added);
+
+        assertSame(added, workRequestService.enqueueAll(new long[] {ID, 456}, new LocalDateTime[] {TIME, null}));
+    }
+
     @Test(expected = WorkRequestExistsException.class)
     public void enqueue_IdAlreadyExists_ThrowsException(){
 
@@ -102,14 +130,76 @@ public class WorkRequestServiceTest {
         assertEquals(averageWaitTime, returnedAverageTime);
     }
 
+    @Test
+    public void getAverageWaitTime_WithTimeAndType_ReturnsAverageWaitTimeForTypeFromQueue(){
+
+        final long averageWaitTime = 600;
+        when(mockWorkRequestQueue.getAverageWaitTime(TIME, WorkRequestType.PRIORITY)).thenReturn(averageWaitTime);
+
+        final long returnedAverageTime= workRequestService.getAverageWaitTime(TIME, WorkRequestType.PRIORITY);
+
+        assertEquals(averageWaitTime, returnedAverageTime);
+    }
+
+    @Test
+    public void getWaitTimes_NoTimeOrType_ReturnsRealizedAndCurrentFromQueue(){
+
+        final WaitTimePercentiles realized = mock(WaitTimePercentiles.class);
+        final WaitTimePercentiles current = mock(WaitTimePercentiles.class);
+        when(mockWorkRequestQueue.getRealizedWaitTimes()).thenReturn(realized);
+        when(mockWorkRequestQueue.getCurrentWaitTimes()).thenReturn(current);
+
+        final WorkRequestWaitTimes waitTimes = workRequestService.getWaitTimes(null, null);
+
+        assertSame(realized, waitTimes.getRealized());
+        assertSame(current, waitTimes.getCurrent());
+    }
+
+    @Test
+    public void getWaitTimes_WithTimeAndType_ReturnsWaitTimesForTypeFromQueue(){
+
+        final WaitTimePercentiles realized = mock(WaitTimePercentiles.class);
+        final WaitTimePercentiles current = mock(WaitTimePercentiles.class);
+        when(mockWorkRequestQueue.getRealizedWaitTimes(WorkRequestType.VIP)).thenReturn(realized);
+        when(mockWorkRequestQueue.getCurrentWaitTimes(TIME, WorkRequestType.VIP)).thenReturn(current);
+
+        final WorkRequestWaitTimes waitTimes = workRequestService.getWaitTimes(TIME, WorkRequestType.VIP);
+
+        assertSame(realized, waitTimes.getRealized());
+        assertSame(current, waitTimes.getCurrent());
+    }
+
+    @Test
+    public void getSnapshot_ReturnsSnapshotFromQueue(){
+
+        final QueueSnapshot mockSnapshot = mock(QueueSnapshot.class);
+        when(mockWorkRequestQueue.getSnapshot()).thenReturn(mockSnapshot);
+
+        final QueueSnapshot returnedSnapshot = workRequestService.getSnapshot();
+
+        assertEquals(mockSnapshot, returnedSnapshot);
+    }
+
+    @Test
+    public void getSnapshot_QueueHasCurrentSnapshot_ReturnedWithoutRanking(){
+
+        final QueueSnapshot mockSnapshot = mock(QueueSnapshot.class);
+        when(mockWorkRequestQueue.getCurrentSnapshot()).thenReturn(mockSnapshot);
+
+        final QueueSnapshot returnedSnapshot = workRequestService.getSnapshot();
+
+        assertSame(mockSnapshot, returnedSnapshot);
+        verify(mockWorkRequestQueue, never()).getSnapshot();
+    }
+
     @Test
     public void getSortedIds_ReturnsSortedListFromQueue(){
 
-        final List<Long> sortedIds = new ArrayList<>();
-        sortedIds.add(123L);
+        final LongList sortedIds = new LongList();
+        sortedIds.addLong(123L);
         when(mockWorkRequestQueue.getSortedIds()).thenReturn(sortedIds);
 
-        final List<Long> returnedSortedIds= workRequestService.getSortedIds();
+        final LongList returnedSortedIds= workRequestService.getSortedIds();
 
         assertEquals(sortedIds, returnedSortedIds);
     }
@@ -136,7 +226,7 @@ public class WorkRequestServiceTest {
     public void getPosition_ExistsForId_ReturnsPosition(){
 
         final int position = 1;
-        when(mockWorkRequestQueue.getPosition(ID)).thenReturn(position);
+        when(mockWorkRequestQueue.rankOf(ID)).thenReturn(position);
 
         final int returnedPosition= workRequestService.getPosition(ID);
 
@@ -146,11 +236,23 @@ public class WorkRequestServiceTest {
     @Test(expected = WorkRequestDoesNotExistException.class)
     public void getPosition_DoesntExistForId_ThrowsException(){
 
-        when(mockWorkRequestQueue.getPosition(ID)).thenReturn(-1);
+        when(mockWorkRequestQueue.rankOf(ID)).thenReturn(-1);
 
         workRequestService.getPosition(ID);
     }
 
+    @Test
+    public void getPositions_ReturnsPositionsFromQueue(){
+
+        final long[] ids = {ID, 456};
+        final int[] positions = {1, -1};
+        when(mockWorkRequestQueue.getPositions(ids)).thenReturn(positions);
+
+        final int[] returnedPositions = workRequestService.getPositions(ids);
+
+        assertEquals(positions, returnedPositions);
+    }
+
     @Test
     public void dequeue_ExistsForId_Dequeues(){
 
@@ -187,4 +289,63 @@ public class WorkRequestServiceTest {
 
         workRequestService.dequeueTop();
     }
+
+    @Test
+    public void getPage_ValidCursor_ReturnsQueuePage(){
+
+        final QueuePage mockPage = mock(QueuePage.class);
+        when(mockWorkRequestQueue.getPage(eq(10), any(QueueCursor.class))).thenReturn(mockPage);
+
+        final QueuePage page = workRequestService.getPage(10, "1.0.2.3");
+
+        assertEquals(mockPage, page);
+    }
+
+    @Test(expected = WorkRequestInvalidCursorException.class)
+    public void getPage_InvalidCursor_ThrowsException(){
+
+        workRequestService.getPage(10, "not-a-cursor");
+    }
+
+    @Test
+    public void dequeueTopCount_QueueHasElements_ReturnsIds(){
+
+        final LongList ids = new LongList(new long[] {ID, 456});
+        when(mockWorkRequestQueue.dequeueTop(5)).thenReturn(ids);
+
+        final LongList removedIds = workRequestService.dequeueTop(5);
+
+        assertEquals(ids, removedIds);
+    }
+
+    @Test(expected = WorkRequestQueueEmptyException.class)
+    public void dequeueTopCount_QueueEmpty_ThrowsException(){
+
+        when(mockWorkRequestQueue.dequeueTop(5)).thenReturn(new LongList());
+
+        workRequestService.dequeueTop(5);
+    }
+
+    @Test
+    public void enqueueBatch_MixedRecords_EnqueuesValidAndReportsRejectedInBatchOrder() throws IOException {
+        final WorkRequest mockDuplicate = mock(WorkRequest.class);
+        when(mockWorkRequestFactory.getWorkRequest(1)).thenReturn(mockWorkRequest);
+        when(mockWorkRequestFactory.getWorkRequest(2, LocalDateTime.of(2017, 2, 19, 14, 27))).thenReturn(mockDuplicate);
+        when(mockDuplicate.getId()).thenReturn(2L);
+        when(mockWorkRequestQueue.enqueueAll(Arrays.asList(mockWorkRequest, mockDuplicate))).thenReturn(new boolean[] {true, false});
+        final WorkRequestBatchReader reader = new WorkRequestBatchReader(
+                new JsonFactory().createParser("{\"id\": 1}\n{\"id\": 0}\n{\"id\": 2, \"time\": \"2017-02-19T14:27\"}\n"),
+                new WorkRequestValidation());
+
+        final WorkRequestBatchResult result = workRequestService.enqueueBatch(reader);
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, result.getDuplicate());
+        assertEquals(1, result.getInvalid());
+        assertEquals(1, result.getRejected().get(0).getIndex());
+        assertEquals(Outcome.INVALID, result.getRejected().get(0).getOutcome());
+        assertEquals(2, result.getRejected().get(1).getIndex());
+        assertEquals(Long.valueOf(2), result.getRejected().get(1).getId());
+        assertEquals(Outcome.DUPLICATE, result.getRejected().get(1).getOutcome());
+    }
 }
@@ -0,0 +1,94 @@
+package com.lee.workrequest.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.lee.workrequest.exception.WorkRequestDoesNotExistException;
+import com.lee.workrequest.model.WorkRequestNormal;
+import com.lee.workrequest.model.WorkRequestVIP;
+import com.lee.workrequest.queue.QueueSnapshot;
+import com.lee.workrequest.queue.WorkRequestQueue;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkRequestSnapshotRefresherTest {
+
+    private WorkRequestQueue workRequestQueue;
+    private WorkRequestSnapshotRefresher workRequestSnapshotRefresher;
+
+    private static final LocalDateTime TIME = LocalDateTime.now();
+
+    /** Snapshots taken of the queue */
+    private final AtomicInteger snapshots = new AtomicInteger();
+
+    @Before
+    public void setup(){
+        workRequestQueue = new WorkRequestQueue() {
+            @Override
+            public QueueSnapshot getSnapshot() {
+                snapshots.incrementAndGet();
+                return super.getSnapshot();
+            }
+        };
+        workRequestQueue.enqueue(new WorkRequestNormal(1, TIME));
+        workRequestSnapshotRefresher = new WorkRequestSnapshotRefresher(workRequestQueue, 20);
+    }
+
+    @After
+    public void tearDown(){
+        workRequestSnapshotRefresher.shutdown();
+    }
+
+    @Test
+    public void getPublished_FirstRead_PublishesCurrentQueue(){
+
+        final WorkRequestSnapshotRefresher.Published published = workRequestSnapshotRefresher.getPublished();
+
+        assertEquals(Arrays.asList(1L), published.getSnapshot().getIds());
+        assertEquals(0, published.getPosition(1));
+        assertTrue(published.getAgeMillis() >= 0);
+    }
+
+    @Test(timeout = 10000)
+    public void getPublished_QueueChanged_PublishesChangeWithinInterval() throws Exception {
+        workRequestQueue.enqueue(new WorkRequestVIP(5, TIME));
+
+        while (workRequestSnapshotRefresher.getPublished().getSnapshot().getIds().size() != 2) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(1, workRequestSnapshotRefresher.getPublished().getPosition(1));
+    }
+
+    @Test(timeout = 10000)
+    public void getPublished_NotRead_TakesNoSnapshotsUntilRead() throws Exception {
+        Thread.sleep(200);
+        final int whileIdle = snapshots.get();
+        Thread.sleep(200);
+        assertEquals(whileIdle, snapshots.get());
+
+        // Served the last snapshot with its age rather than taking one on the request thread
+        workRequestQueue.enqueue(new WorkRequestVIP(5, TIME));
+        final WorkRequestSnapshotRefresher.Published stale = workRequestSnapshotRefresher.getPublished();
+        assertEquals(Arrays.asList(1L), stale.getSnapshot().getIds());
+        assertTrue(stale.getAgeMillis() >= 400);
+
+        while (workRequestSnapshotRefresher.getPublished().getSnapshot().getIds().size() != 2) {
+            Thread.sleep(5);
+        }
+        assertTrue(snapshots.get() > whileIdle);
+        assertEquals(Arrays.asList(5L, 1L), workRequestSnapshotRefresher.getPublished().getSnapshot().getIds());
+    }
+
+    @Test(expected = WorkRequestDoesNotExistException.class)
+    public void getPosition_IdNotInSnapshot_ThrowsDoesNotExistException(){
+
+        workRequestSnapshotRefresher.getPublished().getPosition(5);
+    }
+}
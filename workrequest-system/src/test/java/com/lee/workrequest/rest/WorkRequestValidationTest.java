@@ -3,7 +3,12 @@ package com.lee.workrequest.rest;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.lee.workrequest.exception.WorkRequestInvalidCountException;
 import com.lee.workrequest.exception.WorkRequestInvalidIdException;
+import com.lee.workrequest.exception.WorkRequestInvalidLimitException;
+import com.lee.workrequest.exception.WorkRequestInvalidTimeException;
+import com.lee.workrequest.exception.WorkRequestInvalidTimeoutException;
+import com.lee.workrequest.queue.WorkRequestQueue;
 
 public class WorkRequestValidationTest {
 
@@ -31,4 +36,60 @@ public class WorkRequestValidationTest {
 
         workRequestValidation.idInRange(0);
     }
+
+    @Test
+    public void countInRange_CountIsMax_NoException(){
+
+        workRequestValidation.countInRange(WorkRequestValidation.MAX_COUNT);
+    }
+
+    @Test(expected = WorkRequestInvalidCountException.class)
+    public void countInRange_CountLessThan1_ThrowsException(){
+
+        workRequestValidation.countInRange(0);
+    }
+
+    @Test(expected = WorkRequestInvalidLimitException.class)
+    public void limitInRange_LimitGreaterThanMax_ThrowsException(){
+
+        workRequestValidation.limitInRange(WorkRequestValidation.MAX_LIMIT + 1);
+    }
+
+    @Test
+    public void timeoutInRange_TimeoutIsMax_NoException(){
+
+        workRequestValidation.timeoutInRange(WorkRequestValidation.MAX_TIMEOUT_SECONDS);
+    }
+
+    @Test(expected = WorkRequestInvalidTimeoutException.class)
+    public void timeoutInRange_TimeoutLessThan1_ThrowsException(){
+
+        workRequestValidation.timeoutInRange(0);
+    }
+
+    @Test(expected = WorkRequestInvalidTimeoutException.class)
+    public void timeoutInRange_TimeoutGreaterThanMax_ThrowsException(){
+
+        workRequestValidation.timeoutInRange(WorkRequestValidation.MAX_TIMEOUT_SECONDS + 1);
+    }
+
+    @Test
+    public void timeInRange_TimeIsNullOrAtLimits_NoException(){
+
+        workRequestValidation.timeInRange(null);
+        workRequestValidation.timeInRange(WorkRequestQueue.MIN_ENQUEUED_TIME);
+        workRequestValidation.timeInRange(WorkRequestQueue.MAX_ENQUEUED_TIME);
+    }
+
+    @Test(expected = WorkRequestInvalidTimeException.class)
+    public void timeInRange_TimeAfterMax_ThrowsException(){
+
+        workRequestValidation.timeInRange(WorkRequestQueue.MAX_ENQUEUED_TIME.plusNanos(1000000));
+    }
+
+    @Test(expected = WorkRequestInvalidTimeException.class)
+    public void timeInRange_TimeBeforeMin_ThrowsException(){
+
+        workRequestValidation.timeInRange(WorkRequestQueue.MIN_ENQUEUED_TIME.minusNanos(1000000));
+    }
 }